@@ -0,0 +1,166 @@
+package biz.k11i.matcher;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static biz.k11i.matcher.IsEquivalentTo.isEquivalentTo;
+
+/**
+ * {@link IsEquivalentTo#matches(Object)} のベンチマークです。
+ * 入れ子の深いオブジェクトと、要素数の多いオブジェクトの照合を計測します。
+ * 要素数の多いオブジェクトは、{@link IsEquivalentTo#parallel(int)} で並列に照合した場合も計測します。
+ * 照合とは別に、複数のスレッドから {@link PropertyFieldAccessor} のキャッシュを参照する場合も計測します。
+ * プリミティブ型の配列は、100 万要素の byte[] と double[] の照合を計測します。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsEquivalentToBenchmark {
+    public static class Node {
+        public String name;
+        public int value;
+        public Node child;
+    }
+
+    public static class Item {
+        public String name;
+        public int quantity;
+        public double price;
+    }
+
+    public static class Wide {
+        public List<Item> items;
+        public Map<String, Integer> counts;
+        public int[] values;
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeepState {
+        @Param({"10", "100"})
+        public int depth;
+
+        Node expected;
+        Node actual;
+
+        @Setup
+        public void setUp() {
+            expected = newDeep(depth);
+            actual = newDeep(depth);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WideState {
+        @Param({"100", "10000"})
+        public int width;
+
+        Wide expected;
+        Wide actual;
+
+        @Setup
+        public void setUp() {
+            expected = newWide(width);
+            actual = newWide(width);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PrimitiveArrayState {
+        @Param({"1000000"})
+        public int length;
+
+        byte[] expectedBytes;
+        byte[] actualBytes;
+        double[] expectedDoubles;
+        double[] actualDoubles;
+
+        @Setup
+        public void setUp() {
+            expectedBytes = new byte[length];
+            actualBytes = new byte[length];
+            expectedDoubles = new double[length];
+            actualDoubles = new double[length];
+
+            for (int i = 0; i < length; i++) {
+                expectedBytes[i] = actualBytes[i] = (byte) i;
+                expectedDoubles[i] = actualDoubles[i] = i * 0.5;
+            }
+        }
+    }
+
+    static Node newDeep(int depth) {
+        Node root = null;
+        for (int i = 0; i < depth; i++) {
+            Node node = new Node();
+            node.name = "node" + i;
+            node.value = i;
+            node.child = root;
+            root = node;
+        }
+        return root;
+    }
+
+    static Wide newWide(int width) {
+        Wide wide = new Wide();
+        wide.items = new ArrayList<>();
+        wide.counts = new LinkedHashMap<>();
+        wide.values = new int[width];
+
+        for (int i = 0; i < width; i++) {
+            Item item = new Item();
+            item.name = "item" + i;
+            item.quantity = i;
+            item.price = i * 1.5;
+
+            wide.items.add(item);
+            wide.counts.put("key" + i, i);
+            wide.values[i] = i;
+        }
+        return wide;
+    }
+
+    @Benchmark
+    public boolean matchesDeep(DeepState state) {
+        return isEquivalentTo(state.expected).matches(state.actual);
+    }
+
+    @Benchmark
+    public boolean matchesWide(WideState state) {
+        return isEquivalentTo(state.expected).matches(state.actual);
+    }
+
+    @Benchmark
+    public boolean matchesWideParallel(WideState state) {
+        return isEquivalentTo(state.expected).parallel(1000).matches(state.actual);
+    }
+
+    /**
+     * 複数のスレッドから同じクラスの {@link PropertyFieldAccessor} を取得します。
+     * キャッシュにあった場合の処理が共有の変数に書き込まず、スレッド数を増やしても遅くならないことを確認します。
+     */
+    @Benchmark
+    @Threads(4)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public PropertyFieldAccessor newInstanceConcurrently() {
+        return PropertyFieldAccessor.newInstance(Item.class);
+    }
+
+    @Benchmark
+    public boolean matchesBytes(PrimitiveArrayState state) {
+        return isEquivalentTo(state.expectedBytes).matches(state.actualBytes);
+    }
+
+    @Benchmark
+    public boolean matchesDoubles(PrimitiveArrayState state) {
+        return isEquivalentTo(state.expectedDoubles).matches(state.actualDoubles);
+    }
+}
@@ -0,0 +1,619 @@
+package biz.k11i.matcher;
+
+/**
+ * プロパティの数が多い JavaBeans のベンチマーク用のクラスです。
+ * プリミティブ型と {@link String} 型のプロパティを合わせて 60 個持ちます。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class LargeBean {
+    private int int0;
+    private int int1;
+    private int int2;
+    private int int3;
+    private int int4;
+    private int int5;
+    private int int6;
+    private int int7;
+    private int int8;
+    private int int9;
+    private int int10;
+    private int int11;
+    private int int12;
+    private int int13;
+    private int int14;
+    private int int15;
+    private int int16;
+    private int int17;
+    private int int18;
+    private int int19;
+    private long long0;
+    private long long1;
+    private long long2;
+    private long long3;
+    private long long4;
+    private long long5;
+    private long long6;
+    private long long7;
+    private long long8;
+    private long long9;
+    private double double0;
+    private double double1;
+    private double double2;
+    private double double3;
+    private double double4;
+    private double double5;
+    private double double6;
+    private double double7;
+    private double double8;
+    private double double9;
+    private boolean boolean0;
+    private boolean boolean1;
+    private boolean boolean2;
+    private boolean boolean3;
+    private boolean boolean4;
+    private boolean boolean5;
+    private boolean boolean6;
+    private boolean boolean7;
+    private boolean boolean8;
+    private boolean boolean9;
+    private String string0;
+    private String string1;
+    private String string2;
+    private String string3;
+    private String string4;
+    private String string5;
+    private String string6;
+    private String string7;
+    private String string8;
+    private String string9;
+
+    /**
+     * @param seed 各プロパティの値のもと
+     * @return 各プロパティに値を設定した LargeBean
+     */
+    public static LargeBean newInstance(int seed) {
+        LargeBean bean = new LargeBean();
+        bean.int0 = seed + 0;
+        bean.int1 = seed + 1;
+        bean.int2 = seed + 2;
+        bean.int3 = seed + 3;
+        bean.int4 = seed + 4;
+        bean.int5 = seed + 5;
+        bean.int6 = seed + 6;
+        bean.int7 = seed + 7;
+        bean.int8 = seed + 8;
+        bean.int9 = seed + 9;
+        bean.int10 = seed + 10;
+        bean.int11 = seed + 11;
+        bean.int12 = seed + 12;
+        bean.int13 = seed + 13;
+        bean.int14 = seed + 14;
+        bean.int15 = seed + 15;
+        bean.int16 = seed + 16;
+        bean.int17 = seed + 17;
+        bean.int18 = seed + 18;
+        bean.int19 = seed + 19;
+        bean.long0 = (long) seed << 20;
+        bean.long1 = (long) seed << 21;
+        bean.long2 = (long) seed << 22;
+        bean.long3 = (long) seed << 23;
+        bean.long4 = (long) seed << 24;
+        bean.long5 = (long) seed << 25;
+        bean.long6 = (long) seed << 26;
+        bean.long7 = (long) seed << 27;
+        bean.long8 = (long) seed << 28;
+        bean.long9 = (long) seed << 29;
+        bean.double0 = seed * 30.5;
+        bean.double1 = seed * 31.5;
+        bean.double2 = seed * 32.5;
+        bean.double3 = seed * 33.5;
+        bean.double4 = seed * 34.5;
+        bean.double5 = seed * 35.5;
+        bean.double6 = seed * 36.5;
+        bean.double7 = seed * 37.5;
+        bean.double8 = seed * 38.5;
+        bean.double9 = seed * 39.5;
+        bean.boolean0 = (seed + 40) % 2 == 0;
+        bean.boolean1 = (seed + 41) % 2 == 0;
+        bean.boolean2 = (seed + 42) % 2 == 0;
+        bean.boolean3 = (seed + 43) % 2 == 0;
+        bean.boolean4 = (seed + 44) % 2 == 0;
+        bean.boolean5 = (seed + 45) % 2 == 0;
+        bean.boolean6 = (seed + 46) % 2 == 0;
+        bean.boolean7 = (seed + 47) % 2 == 0;
+        bean.boolean8 = (seed + 48) % 2 == 0;
+        bean.boolean9 = (seed + 49) % 2 == 0;
+        bean.string0 = "value" + (seed + 50);
+        bean.string1 = "value" + (seed + 51);
+        bean.string2 = "value" + (seed + 52);
+        bean.string3 = "value" + (seed + 53);
+        bean.string4 = "value" + (seed + 54);
+        bean.string5 = "value" + (seed + 55);
+        bean.string6 = "value" + (seed + 56);
+        bean.string7 = "value" + (seed + 57);
+        bean.string8 = "value" + (seed + 58);
+        bean.string9 = "value" + (seed + 59);
+        return bean;
+    }
+
+    public int getInt0() {
+        return int0;
+    }
+
+    public void setInt0(int int0) {
+        this.int0 = int0;
+    }
+
+    public int getInt1() {
+        return int1;
+    }
+
+    public void setInt1(int int1) {
+        this.int1 = int1;
+    }
+
+    public int getInt2() {
+        return int2;
+    }
+
+    public void setInt2(int int2) {
+        this.int2 = int2;
+    }
+
+    public int getInt3() {
+        return int3;
+    }
+
+    public void setInt3(int int3) {
+        this.int3 = int3;
+    }
+
+    public int getInt4() {
+        return int4;
+    }
+
+    public void setInt4(int int4) {
+        this.int4 = int4;
+    }
+
+    public int getInt5() {
+        return int5;
+    }
+
+    public void setInt5(int int5) {
+        this.int5 = int5;
+    }
+
+    public int getInt6() {
+        return int6;
+    }
+
+    public void setInt6(int int6) {
+        this.int6 = int6;
+    }
+
+    public int getInt7() {
+        return int7;
+    }
+
+    public void setInt7(int int7) {
+        this.int7 = int7;
+    }
+
+    public int getInt8() {
+        return int8;
+    }
+
+    public void setInt8(int int8) {
+        this.int8 = int8;
+    }
+
+    public int getInt9() {
+        return int9;
+    }
+
+    public void setInt9(int int9) {
+        this.int9 = int9;
+    }
+
+    public int getInt10() {
+        return int10;
+    }
+
+    public void setInt10(int int10) {
+        this.int10 = int10;
+    }
+
+    public int getInt11() {
+        return int11;
+    }
+
+    public void setInt11(int int11) {
+        this.int11 = int11;
+    }
+
+    public int getInt12() {
+        return int12;
+    }
+
+    public void setInt12(int int12) {
+        this.int12 = int12;
+    }
+
+    public int getInt13() {
+        return int13;
+    }
+
+    public void setInt13(int int13) {
+        this.int13 = int13;
+    }
+
+    public int getInt14() {
+        return int14;
+    }
+
+    public void setInt14(int int14) {
+        this.int14 = int14;
+    }
+
+    public int getInt15() {
+        return int15;
+    }
+
+    public void setInt15(int int15) {
+        this.int15 = int15;
+    }
+
+    public int getInt16() {
+        return int16;
+    }
+
+    public void setInt16(int int16) {
+        this.int16 = int16;
+    }
+
+    public int getInt17() {
+        return int17;
+    }
+
+    public void setInt17(int int17) {
+        this.int17 = int17;
+    }
+
+    public int getInt18() {
+        return int18;
+    }
+
+    public void setInt18(int int18) {
+        this.int18 = int18;
+    }
+
+    public int getInt19() {
+        return int19;
+    }
+
+    public void setInt19(int int19) {
+        this.int19 = int19;
+    }
+
+    public long getLong0() {
+        return long0;
+    }
+
+    public void setLong0(long long0) {
+        this.long0 = long0;
+    }
+
+    public long getLong1() {
+        return long1;
+    }
+
+    public void setLong1(long long1) {
+        this.long1 = long1;
+    }
+
+    public long getLong2() {
+        return long2;
+    }
+
+    public void setLong2(long long2) {
+        this.long2 = long2;
+    }
+
+    public long getLong3() {
+        return long3;
+    }
+
+    public void setLong3(long long3) {
+        this.long3 = long3;
+    }
+
+    public long getLong4() {
+        return long4;
+    }
+
+    public void setLong4(long long4) {
+        this.long4 = long4;
+    }
+
+    public long getLong5() {
+        return long5;
+    }
+
+    public void setLong5(long long5) {
+        this.long5 = long5;
+    }
+
+    public long getLong6() {
+        return long6;
+    }
+
+    public void setLong6(long long6) {
+        this.long6 = long6;
+    }
+
+    public long getLong7() {
+        return long7;
+    }
+
+    public void setLong7(long long7) {
+        this.long7 = long7;
+    }
+
+    public long getLong8() {
+        return long8;
+    }
+
+    public void setLong8(long long8) {
+        this.long8 = long8;
+    }
+
+    public long getLong9() {
+        return long9;
+    }
+
+    public void setLong9(long long9) {
+        this.long9 = long9;
+    }
+
+    public double getDouble0() {
+        return double0;
+    }
+
+    public void setDouble0(double double0) {
+        this.double0 = double0;
+    }
+
+    public double getDouble1() {
+        return double1;
+    }
+
+    public void setDouble1(double double1) {
+        this.double1 = double1;
+    }
+
+    public double getDouble2() {
+        return double2;
+    }
+
+    public void setDouble2(double double2) {
+        this.double2 = double2;
+    }
+
+    public double getDouble3() {
+        return double3;
+    }
+
+    public void setDouble3(double double3) {
+        this.double3 = double3;
+    }
+
+    public double getDouble4() {
+        return double4;
+    }
+
+    public void setDouble4(double double4) {
+        this.double4 = double4;
+    }
+
+    public double getDouble5() {
+        return double5;
+    }
+
+    public void setDouble5(double double5) {
+        this.double5 = double5;
+    }
+
+    public double getDouble6() {
+        return double6;
+    }
+
+    public void setDouble6(double double6) {
+        this.double6 = double6;
+    }
+
+    public double getDouble7() {
+        return double7;
+    }
+
+    public void setDouble7(double double7) {
+        this.double7 = double7;
+    }
+
+    public double getDouble8() {
+        return double8;
+    }
+
+    public void setDouble8(double double8) {
+        this.double8 = double8;
+    }
+
+    public double getDouble9() {
+        return double9;
+    }
+
+    public void setDouble9(double double9) {
+        this.double9 = double9;
+    }
+
+    public boolean isBoolean0() {
+        return boolean0;
+    }
+
+    public void setBoolean0(boolean boolean0) {
+        this.boolean0 = boolean0;
+    }
+
+    public boolean isBoolean1() {
+        return boolean1;
+    }
+
+    public void setBoolean1(boolean boolean1) {
+        this.boolean1 = boolean1;
+    }
+
+    public boolean isBoolean2() {
+        return boolean2;
+    }
+
+    public void setBoolean2(boolean boolean2) {
+        this.boolean2 = boolean2;
+    }
+
+    public boolean isBoolean3() {
+        return boolean3;
+    }
+
+    public void setBoolean3(boolean boolean3) {
+        this.boolean3 = boolean3;
+    }
+
+    public boolean isBoolean4() {
+        return boolean4;
+    }
+
+    public void setBoolean4(boolean boolean4) {
+        this.boolean4 = boolean4;
+    }
+
+    public boolean isBoolean5() {
+        return boolean5;
+    }
+
+    public void setBoolean5(boolean boolean5) {
+        this.boolean5 = boolean5;
+    }
+
+    public boolean isBoolean6() {
+        return boolean6;
+    }
+
+    public void setBoolean6(boolean boolean6) {
+        this.boolean6 = boolean6;
+    }
+
+    public boolean isBoolean7() {
+        return boolean7;
+    }
+
+    public void setBoolean7(boolean boolean7) {
+        this.boolean7 = boolean7;
+    }
+
+    public boolean isBoolean8() {
+        return boolean8;
+    }
+
+    public void setBoolean8(boolean boolean8) {
+        this.boolean8 = boolean8;
+    }
+
+    public boolean isBoolean9() {
+        return boolean9;
+    }
+
+    public void setBoolean9(boolean boolean9) {
+        this.boolean9 = boolean9;
+    }
+
+    public String getString0() {
+        return string0;
+    }
+
+    public void setString0(String string0) {
+        this.string0 = string0;
+    }
+
+    public String getString1() {
+        return string1;
+    }
+
+    public void setString1(String string1) {
+        this.string1 = string1;
+    }
+
+    public String getString2() {
+        return string2;
+    }
+
+    public void setString2(String string2) {
+        this.string2 = string2;
+    }
+
+    public String getString3() {
+        return string3;
+    }
+
+    public void setString3(String string3) {
+        this.string3 = string3;
+    }
+
+    public String getString4() {
+        return string4;
+    }
+
+    public void setString4(String string4) {
+        this.string4 = string4;
+    }
+
+    public String getString5() {
+        return string5;
+    }
+
+    public void setString5(String string5) {
+        this.string5 = string5;
+    }
+
+    public String getString6() {
+        return string6;
+    }
+
+    public void setString6(String string6) {
+        this.string6 = string6;
+    }
+
+    public String getString7() {
+        return string7;
+    }
+
+    public void setString7(String string7) {
+        this.string7 = string7;
+    }
+
+    public String getString8() {
+        return string8;
+    }
+
+    public void setString8(String string8) {
+        this.string8 = string8;
+    }
+
+    public String getString9() {
+        return string9;
+    }
+
+    public void setString9(String string9) {
+        this.string9 = string9;
+    }
+}
@@ -0,0 +1,75 @@
+package biz.k11i.matcher;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static biz.k11i.matcher.IsEquivalentTo.isEquivalentTo;
+
+/**
+ * {@link PropertyFieldAccessor} で生成した Accessor と、リフレクションによる Accessor のベンチマークです。
+ * プロパティを 60 個持つ {@link LargeBean} の二つのオブジェクトについて、全てのプロパティの値を比較します。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PropertyFieldAccessorBenchmark {
+    @Param({"reflection", "generated"})
+    public String accessors;
+
+    private PropertyFieldAccessor.Accessor[] prepared;
+    private PropertyFieldAccessor.PrimitiveAccessor[] primitives;
+
+    private LargeBean expected;
+    private LargeBean actual;
+
+    @Setup
+    public void setUp() {
+        Map<String, PropertyFieldAccessor.Accessor> map = "reflection".equals(accessors)
+                ? PropertyFieldAccessor.prepareReflectiveAccessors(LargeBean.class)
+                : PropertyFieldAccessor.prepareAccessors(LargeBean.class);
+
+        prepared = map.values().toArray(new PropertyFieldAccessor.Accessor[map.size()]);
+        primitives = new PropertyFieldAccessor.PrimitiveAccessor[prepared.length];
+        for (int i = 0; i < prepared.length; i++) {
+            if (prepared[i] instanceof PropertyFieldAccessor.PrimitiveAccessor) {
+                primitives[i] = (PropertyFieldAccessor.PrimitiveAccessor) prepared[i];
+            }
+        }
+
+        expected = LargeBean.newInstance(1);
+        actual = LargeBean.newInstance(1);
+    }
+
+    @Benchmark
+    public int compareAllProperties() {
+        int equal = 0;
+        for (int i = 0; i < prepared.length; i++) {
+            if (primitives[i] != null) {
+                if (primitives[i].valueEquals(expected, actual)) {
+                    equal++;
+                }
+                continue;
+            }
+
+            Object e = prepared[i].get(expected);
+            Object a = prepared[i].get(actual);
+            if (e == null ? a == null : e.equals(a)) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+
+    @Benchmark
+    public boolean matchesLargeBean() {
+        // IsEquivalentTo は常に生成した Accessor を使う (accessors パラメーターによらない)
+        return isEquivalentTo(expected).matches(actual);
+    }
+}
@@ -0,0 +1,78 @@
+package biz.k11i.shibuyajava;
+
+import java.util.Random;
+
+/**
+ * ベンチマークで使う文章を生成します。
+ *
+ * @author KOMIYA Atsushi
+ */
+public final class BenchmarkTexts {
+    /**
+     * 単語の出現頻度の分布を表します。
+     */
+    public enum Distribution {
+        /** 出現頻度が順位に反比例する、自然言語に近い分布 */
+        ZIPF {
+            @Override
+            int nextRank(Random random, int vocabulary, int index) {
+                return (int) Math.pow(vocabulary, random.nextDouble());
+            }
+        },
+
+        /** 全ての単語が同じ確率で現れる分布 */
+        UNIFORM {
+            @Override
+            int nextRank(Random random, int vocabulary, int index) {
+                return random.nextInt(vocabulary);
+            }
+        },
+
+        /** 全ての単語が一度ずつ現れる分布 */
+        UNIQUE {
+            @Override
+            int nextRank(Random random, int vocabulary, int index) {
+                return index;
+            }
+        };
+
+        abstract int nextRank(Random random, int vocabulary, int index);
+    }
+
+    private BenchmarkTexts() {
+    }
+
+    /**
+     * @param distribution 単語の出現頻度の分布
+     * @param words        単語の数
+     * @param vocabulary   語彙数 ({@link Distribution#UNIQUE} の場合は無視されます)
+     * @param seed         乱数の種
+     * @return 生成した文章
+     */
+    public static String generate(Distribution distribution, int words, int vocabulary, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(words * 8);
+
+        for (int i = 0; i < words; i++) {
+            appendWord(sb, distribution.nextRank(random, vocabulary, i), random);
+            sb.append(random.nextInt(10) == 0 ? '\n' : ' ');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * 順位を 26 進数で表した単語を追記します。一部の単語は先頭を大文字にします。
+     */
+    private static void appendWord(StringBuilder sb, int rank, Random random) {
+        int begin = sb.length();
+        do {
+            sb.append((char) ('a' + rank % 26));
+            rank /= 26;
+        } while (rank > 0);
+
+        if (random.nextInt(8) == 0) {
+            sb.setCharAt(begin, Character.toUpperCase(sb.charAt(begin)));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package biz.k11i.shibuyajava;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 複数のスレッドから {@link ConcurrentWordCounter} に加算するときの競合を計測するベンチマークです。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentWordCounterBenchmark {
+    private static final int DOCUMENTS = 1024;
+
+    private ConcurrentWordCounter counter;
+    private String[] documents;
+
+    @Setup
+    public void setUp() {
+        counter = new ConcurrentWordCounter();
+        documents = new String[DOCUMENTS];
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents[i] = BenchmarkTexts.generate(BenchmarkTexts.Distribution.ZIPF, 20, 10000, i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+
+    private void add(ThreadState state) {
+        counter.add(documents[state.next++ & (DOCUMENTS - 1)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void add_1thread(ThreadState state) {
+        add(state);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void add_4threads(ThreadState state) {
+        add(state);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void add_16threads(ThreadState state) {
+        add(state);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void add_64threads(ThreadState state) {
+        add(state);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public WordCount snapshotWhileAdding_16threads(ThreadState state) {
+        add(state);
+        return (state.next & 1023) == 0 ? counter.snapshot() : null;
+    }
+}
@@ -0,0 +1,109 @@
+package biz.k11i.shibuyajava;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 約 100 文字の短い文書を大量にワードカウントする場合のベンチマークです。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountAllBenchmark {
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    private static final int DOCUMENT_LENGTH = 100;
+
+    @Param({"10000"})
+    public int documents;
+
+    private List<String> texts;
+
+    @Setup
+    public void setUp() {
+        String text = BenchmarkTexts.generate(BenchmarkTexts.Distribution.ZIPF, documents * 50, 10000, 1);
+
+        texts = new ArrayList<>(documents);
+        int begin = 0;
+        while (texts.size() < documents) {
+            int end = text.indexOf(' ', begin + DOCUMENT_LENGTH);
+            texts.add(text.substring(begin, end));
+            begin = end + 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10000)
+    public List<WordCount> countAll() {
+        return WordCount.countAll(texts);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10000)
+    public List<WordCount> countWordsEach() {
+        List<WordCount> results = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            results.add(WordCount.countWords(text));
+        }
+        return results;
+    }
+
+    /** 従来の実装でのワードカウント結果 */
+    public static class BaselineResult {
+        public Map<String, Integer> wordCounts;
+        public List<String> top3Words;
+        public String text;
+    }
+
+    /**
+     * 比較のため、正規表現による分割と {@link HashMap}、全件のソートを使う従来の実装で計測します。
+     */
+    @Benchmark
+    @OperationsPerInvocation(10000)
+    public List<BaselineResult> regexSplitBaseline() {
+        List<BaselineResult> results = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            Map<String, Integer> wordCounts = new HashMap<>();
+            for (String word : WHITESPACES.split(text)) {
+                word = word.toLowerCase();
+
+                Integer count = wordCounts.get(word);
+                wordCounts.put(word, count == null ? 1 : count + 1);
+            }
+
+            List<Map.Entry<String, Integer>> entries = new ArrayList<>(wordCounts.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+                @Override
+                public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+                    int c = o2.getValue().compareTo(o1.getValue());
+                    return c != 0 ? c : o1.getKey().compareTo(o2.getKey());
+                }
+            });
+
+            List<String> top3Words = new ArrayList<>();
+            for (int i = 0; i < 3 && i < entries.size(); i++) {
+                top3Words.add(entries.get(i).getKey());
+            }
+
+            BaselineResult result = new BaselineResult();
+            result.wordCounts = wordCounts;
+            result.top3Words = top3Words;
+            result.text = text;
+            results.add(result);
+        }
+        return results;
+    }
+}
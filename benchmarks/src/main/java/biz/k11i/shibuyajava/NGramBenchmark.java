@@ -0,0 +1,63 @@
+package biz.k11i.shibuyajava;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 長さ 1 から maxOrder までの n-gram を数える場合のベンチマークです。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NGramBenchmark {
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    @Param({"3"})
+    public int maxOrder;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = BenchmarkTexts.generate(BenchmarkTexts.Distribution.ZIPF, 1000000, 10000, 1);
+    }
+
+    @Benchmark
+    public NGramCounts nGramCounter() {
+        return NGramCounts.countNGrams(text, maxOrder);
+    }
+
+    /**
+     * 比較のため、長さごとに文章を分割し直し、単語を連結した {@link String} で数える場合を計測します。
+     */
+    @Benchmark
+    public Map<String, Integer>[] separatePasses() {
+        @SuppressWarnings("unchecked")
+        Map<String, Integer>[] result = new Map[maxOrder];
+        for (int order = 1; order <= maxOrder; order++) {
+            String[] words = WHITESPACES.split(text);
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i + order <= words.length; i++) {
+                StringBuilder sb = new StringBuilder(words[i].toLowerCase());
+                for (int j = 1; j < order; j++) {
+                    sb.append(' ').append(words[i + j].toLowerCase());
+                }
+
+                String nGram = sb.toString();
+                Integer count = counts.get(nGram);
+                counts.put(nGram, count == null ? 1 : count + 1);
+            }
+            result[order - 1] = counts;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package biz.k11i.shibuyajava;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ワードカウント結果から上位の単語を選ぶ処理のベンチマークです。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TopWordsBenchmark {
+    @Param({"10000", "1000000"})
+    public int vocabulary;
+
+    private Map<String, Integer> wordCounts;
+    private Map<String, Integer> hashMap;
+
+    @Setup
+    public void setUp() {
+        String text = BenchmarkTexts.generate(BenchmarkTexts.Distribution.ZIPF, vocabulary * 5, vocabulary, 1);
+        wordCounts = WordCount.countWords(text).wordCounts;
+        hashMap = new HashMap<>(wordCounts);
+    }
+
+    @Benchmark
+    public List<String> selectTop3() {
+        return WordCount.selectTopWords(wordCounts, 3);
+    }
+
+    @Benchmark
+    public List<String> selectTop3FromHashMap() {
+        return WordCount.selectTopWords(hashMap, 3);
+    }
+
+    /**
+     * 比較のため、全てのエントリを整列する従来の実装で計測します。
+     */
+    @Benchmark
+    public List<String> sortAllBaseline() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(hashMap.entrySet());
+        Collections.sort(entries, WordCount.RANKING);
+
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < 3 && i < entries.size(); i++) {
+            result.add(entries.get(i).getKey());
+        }
+        return result;
+    }
+}
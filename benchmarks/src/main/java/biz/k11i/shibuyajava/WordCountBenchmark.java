@@ -0,0 +1,73 @@
+package biz.k11i.shibuyajava;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * {@link WordCount#countWords(String)} のベンチマークです。
+ * 文章の大きさと単語の出現頻度の分布を変えて計測します。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WordCountBenchmark {
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    @Param({"1000", "100000", "1000000"})
+    public int words;
+
+    @Param({"ZIPF", "UNIFORM", "UNIQUE"})
+    public BenchmarkTexts.Distribution distribution;
+
+    private String text;
+
+    private final WordNormalizer normalizer = WordNormalizer.DEFAULT
+            .caseFolding(WordNormalizer.CaseFolding.LOCALE_INDEPENDENT)
+            .stripPunctuation(true)
+            .stopWords(Arrays.asList("a", "the", "of"));
+
+    @Setup
+    public void setUp() {
+        text = BenchmarkTexts.generate(distribution, words, Math.max(words / 10, 100), 1);
+    }
+
+    @Benchmark
+    public WordCount countWords() {
+        return WordCount.countWords(text);
+    }
+
+    @Benchmark
+    public WordCount countWordsNormalized() {
+        return WordCount.countWords(text, normalizer);
+    }
+
+    @Benchmark
+    public WordCount countWordsParallel() {
+        return WordCount.countWordsParallel(text, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 比較のため、正規表現による分割と {@link HashMap} を使う従来の実装で計測します。
+     */
+    @Benchmark
+    public Map<String, Integer> regexSplitBaseline() {
+        Map<String, Integer> wordCounts = new HashMap<>();
+        for (String word : WHITESPACES.split(text)) {
+            word = word.toLowerCase();
+
+            Integer count = wordCounts.get(word);
+            wordCounts.put(word, count == null ? 1 : count + 1);
+        }
+        return wordCounts;
+    }
+}
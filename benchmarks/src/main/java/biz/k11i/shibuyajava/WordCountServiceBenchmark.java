@@ -0,0 +1,94 @@
+package biz.k11i.shibuyajava;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WordCountService} に約 100 文字の短い文書を投入し、結果を受け取るまでのスループットを計測するベンチマークです。
+ * 要求一件ごとの処理時間の分布 (p50、p99、p99.9 など) は {@link #submitAndJoinOne()} の SampleTime モードで計測します。
+ *
+ * @author KOMIYA Atsushi
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WordCountServiceBenchmark {
+    private static final int DOCUMENT_LENGTH = 100;
+
+    /** 結果を待たずに投入する要求の数 */
+    private static final int BATCH = 1000;
+
+    @Param({"1024"})
+    public int queueCapacity;
+
+    private List<String> texts;
+    private WordCountService service;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String text = BenchmarkTexts.generate(BenchmarkTexts.Distribution.ZIPF, BATCH * 50, 10000, 1);
+
+        texts = new ArrayList<>(BATCH);
+        int begin = 0;
+        while (texts.size() < BATCH) {
+            int end = text.indexOf(' ', begin + DOCUMENT_LENGTH);
+            texts.add(text.substring(begin, end));
+            begin = end + 1;
+        }
+
+        service = new WordCountService(queueCapacity, WordCountService.OverflowPolicy.BLOCK);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public WordCount submitAndJoin() throws InterruptedException {
+        List<CompletableFuture<WordCount>> futures = new ArrayList<>(BATCH);
+        for (String text : texts) {
+            futures.add(service.submit(text));
+        }
+
+        WordCount last = null;
+        for (CompletableFuture<WordCount> future : futures) {
+            last = future.join();
+        }
+        return last;
+    }
+
+    /**
+     * 文書を一件ずつ投入し、結果を受け取るまでの時間を計測します。
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public WordCount submitAndJoinOne() throws InterruptedException {
+        String text = texts.get(next);
+        next = (next + 1) % BATCH;
+        return service.submit(text).join();
+    }
+
+    /**
+     * 比較のため、呼び出し元のスレッドで順にワードカウントした場合を計測します。
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public WordCount countWordsInline() {
+        WordCount last = null;
+        for (String text : texts) {
+            last = WordCount.countWords(text);
+        }
+        return last;
+    }
+}
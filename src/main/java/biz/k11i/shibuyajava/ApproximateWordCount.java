@@ -0,0 +1,373 @@
+package biz.k11i.shibuyajava;
+
+import java.util.*;
+
+/**
+ * {@link ApproximateWordCounter} による近似的なワードカウント結果を保持します。
+ * <p>
+ * {@link #wordCounts} には頻出する単語だけが含まれ、その値は真の出現頻度以上の推定値です。
+ * 各単語について、真の出現頻度は「推定値 - {@link #wordErrors} の値」以上であることが保証されます。
+ * また {@link #wordCounts} に含まれない単語も含め、{@link #estimateCount(String)} の推定値は
+ * 確率 {@link #confidence} 以上で「真の出現頻度 + {@link #errorBound}」以下となります。
+ * </p>
+ * <p>
+ * 推定値が int の範囲を超える単語は、{@link #wordCounts} と {@link #wordErrors} の値がともに
+ * {@link Integer#MAX_VALUE} となります。このような単語の推定値は {@link #estimateCount(String)} で取得してください。
+ * </p>
+ * <p>
+ * {@link #merge(WordCount)} / {@link #subtract(WordCount)} では、Count-Min Sketch のカウンタ表と
+ * 頻出する単語の推定値の範囲をそれぞれ合算・減算します。合算後も上記の保証は保たれます。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public class ApproximateWordCount extends WordCount {
+    /** ワードカウントした単語の総数を保持します */
+    public long tokenCount;
+
+    /** {@link #estimateCount(String)} の推定値が、確率 {@link #confidence} 以上で超えない誤差の上限を保持します */
+    public long errorBound;
+
+    /** {@link #errorBound} が成り立つ確率を保持します */
+    public double confidence;
+
+    /** {@link #wordCounts} に含まれる各単語について、推定値が真の出現頻度を上回っている可能性のある量を保持します */
+    public Map<String, Integer> wordErrors;
+
+    private CountMinSketch sketch;
+
+    /** 追跡している各単語の真の出現頻度の上限 */
+    private Map<String, Long> upperBounds;
+
+    /** 追跡している各単語の真の出現頻度の下限 */
+    private Map<String, Long> lowerBounds;
+
+    /** 追跡していない単語の真の出現頻度の上限 */
+    private long untrackedBound;
+
+    /** 追跡する単語の数。0 の場合は上限を設けない */
+    private int capacity;
+
+    /** YAML からのデシリアライズでデフォルトコンストラクタが必要となります。 */
+    public ApproximateWordCount() {
+    }
+
+    private ApproximateWordCount(WordCountTimer timer, Map<String, Long> upperBounds, Map<String, Long> lowerBounds,
+                                 long untrackedBound, int capacity, CountMinSketch sketch, double delta) {
+        super(timer, null, saturatedCounts(upperBounds));
+
+        this.sketch = sketch;
+        this.upperBounds = upperBounds;
+        this.lowerBounds = lowerBounds;
+        this.untrackedBound = untrackedBound;
+        this.capacity = capacity;
+        this.tokenCount = sketch.totalCount();
+        this.errorBound = sketch.errorBound();
+        this.confidence = 1 - delta;
+        this.wordErrors = saturatedErrors(upperBounds, lowerBounds);
+    }
+
+    /**
+     * 追跡している頻出単語について、Space-Saving と Count-Min Sketch のうち小さい方の値を推定値とします。
+     * どちらの値も真の出現頻度の上限なので、小さい方を選んでも上限であることに変わりはありません。
+     */
+    static ApproximateWordCount of(WordCountTimer timer, CountMinSketch sketch, SpaceSaving heavyHitters, double delta) {
+        Map<String, Long> upperBounds = new HashMap<>();
+        Map<String, Long> lowerBounds = new HashMap<>();
+
+        Map<String, Long> spaceSavingErrors = heavyHitters.errors();
+        for (Map.Entry<String, Long> entry : heavyHitters.counts().entrySet()) {
+            String word = entry.getKey();
+            upperBounds.put(word, Math.min(entry.getValue(), sketch.estimate(word)));
+            lowerBounds.put(word, entry.getValue() - spaceSavingErrors.get(word));
+        }
+
+        return new ApproximateWordCount(timer, upperBounds, lowerBounds, heavyHitters.minCount(),
+                heavyHitters.capacity(), sketch, delta);
+    }
+
+    /**
+     * 指定された単語の出現頻度を、Count-Min Sketch で推定します。
+     * {@link #wordCounts} に含まれない単語についても推定できます。
+     *
+     * @param word 単語
+     * @return 出現頻度の推定値
+     */
+    public synchronized long estimateCount(String word) {
+        prepareBounds();
+
+        Long upperBound = upperBounds.get(word);
+        if (sketch == null) {
+            return upperBound == null ? 0 : upperBound;
+        }
+
+        long estimate = sketch.estimate(word);
+        return upperBound == null ? estimate : Math.min(upperBound, estimate);
+    }
+
+    /**
+     * 指定されたワードカウント結果の出現頻度を、このワードカウント結果に加算します。
+     * <p>
+     * 近似的なワードカウント結果を加算する場合、Count-Min Sketch のカウンタ表同士を加算し、
+     * 頻出する単語はそれぞれの推定値の範囲を足し合わせたうえで、推定値の大きい順に追跡する単語の数だけ残します。
+     * 正確なワードカウント結果を加算する場合は、その全ての単語を数えた場合と同じカウンタ表になります。
+     * </p>
+     *
+     * @param other 加算するワードカウント結果
+     * @return このワードカウント結果
+     * @throws IllegalArgumentException Count-Min Sketch の幅または深さが異なる場合
+     */
+    @Override
+    public WordCount merge(WordCount other) {
+        Bounds bounds = Bounds.of(other);
+
+        synchronized (this) {
+            prepareBounds();
+            updateSketch(bounds, 1);
+
+            List<Map.Entry<String, Long>> candidates = new ArrayList<>();
+            Map<String, Long> mergedLowerBounds = new HashMap<>();
+            Set<String> words = new HashSet<>(upperBounds.keySet());
+            words.addAll(bounds.upperBounds.keySet());
+            for (String word : words) {
+                long upperBound = upperBoundOf(word) + bounds.upperBoundOf(word);
+                if (sketch != null) {
+                    upperBound = Math.min(upperBound, sketch.estimate(word));
+                }
+                candidates.add(new AbstractMap.SimpleImmutableEntry<>(word, upperBound));
+                mergedLowerBounds.put(word, lowerBoundOf(word) + bounds.lowerBoundOf(word));
+            }
+
+            // 推定値の大きい順に追跡する単語の数だけ残し、残さなかった単語の推定値は追跡しない単語の上限に含める
+            Collections.sort(candidates, BY_UPPER_BOUND);
+            capacity = Math.max(capacity, bounds.capacity);
+            int retained = capacity > 0 ? capacity : candidates.size();
+            long mergedUntrackedBound = untrackedBound + bounds.untrackedBound;
+            upperBounds = new HashMap<>();
+            lowerBounds = new HashMap<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                Map.Entry<String, Long> candidate = candidates.get(i);
+                if (i < retained) {
+                    upperBounds.put(candidate.getKey(), candidate.getValue());
+                    lowerBounds.put(candidate.getKey(), mergedLowerBounds.get(candidate.getKey()));
+
+                } else {
+                    mergedUntrackedBound = Math.max(mergedUntrackedBound, candidate.getValue());
+                }
+            }
+            untrackedBound = mergedUntrackedBound;
+
+            if (sketch == null) {
+                tokenCount += bounds.tokenCount;
+                errorBound += bounds.errorBound;
+            }
+            elapsedMillis += bounds.elapsedMillis;
+            publish();
+        }
+
+        return this;
+    }
+
+    /**
+     * 指定されたワードカウント結果の出現頻度を、このワードカウント結果から減算します。
+     * 指定されたワードカウント結果は、このワードカウント結果の一部の文章を数えたものである必要があります。
+     * <p>
+     * Count-Min Sketch のカウンタ表同士を減算し、頻出する単語については
+     * 推定値の上限から相手の下限を、下限から相手の上限を引いて推定値の範囲を更新します。
+     * 推定値が 0 になった単語は {@link #wordCounts} から取り除かれます。
+     * </p>
+     *
+     * @param other 減算するワードカウント結果
+     * @return このワードカウント結果
+     * @throws IllegalArgumentException 減算すると出現頻度が負になる単語がある場合、
+     *                                  または Count-Min Sketch の幅または深さが異なる場合
+     */
+    @Override
+    public WordCount subtract(WordCount other) {
+        Bounds bounds = Bounds.of(other);
+
+        synchronized (this) {
+            prepareBounds();
+            for (String word : bounds.upperBounds.keySet()) {
+                if (upperBoundOf(word) < bounds.lowerBoundOf(word)) {
+                    throw new IllegalArgumentException(
+                            String.format("単語 '%s' の出現頻度が負になるため減算できません", word));
+                }
+            }
+
+            updateSketch(bounds, -1);
+
+            Map<String, Long> newUpperBounds = new HashMap<>();
+            Map<String, Long> newLowerBounds = new HashMap<>();
+            for (Map.Entry<String, Long> entry : upperBounds.entrySet()) {
+                String word = entry.getKey();
+                long upperBound = entry.getValue() - bounds.lowerBoundOf(word);
+                if (sketch != null) {
+                    upperBound = Math.min(upperBound, sketch.estimate(word));
+                }
+                if (upperBound <= 0) {
+                    continue;
+                }
+
+                newUpperBounds.put(word, upperBound);
+                newLowerBounds.put(word, Math.max(0, lowerBoundOf(word) - bounds.upperBoundOf(word)));
+            }
+            upperBounds = newUpperBounds;
+            lowerBounds = newLowerBounds;
+
+            if (sketch == null) {
+                tokenCount -= bounds.tokenCount;
+            }
+            elapsedMillis -= bounds.elapsedMillis;
+            publish();
+        }
+
+        return this;
+    }
+
+    private void updateSketch(Bounds bounds, int sign) {
+        if (sketch == null) {
+            return;
+        }
+
+        if (bounds.sketch != null) {
+            sketch.add(bounds.sketch, sign);
+
+        } else if (bounds.exact) {
+            for (Map.Entry<String, Long> entry : bounds.upperBounds.entrySet()) {
+                sketch.add(entry.getKey(), sign * entry.getValue());
+            }
+
+        } else {
+            // カウンタ表を持たない結果とは合算できないので、以降は追跡している単語の範囲だけで推定する
+            sketch = null;
+            return;
+        }
+
+        tokenCount = sketch.totalCount();
+        errorBound = sketch.errorBound();
+    }
+
+    private long upperBoundOf(String word) {
+        Long upperBound = upperBounds.get(word);
+        return upperBound != null ? upperBound : untrackedBound;
+    }
+
+    private long lowerBoundOf(String word) {
+        Long lowerBound = lowerBounds.get(word);
+        return lowerBound != null ? lowerBound : 0;
+    }
+
+    /**
+     * YAML からデシリアライズした場合は、公開されているフィールドから推定値の範囲を復元します。
+     */
+    private void prepareBounds() {
+        if (upperBounds != null) {
+            return;
+        }
+
+        upperBounds = new HashMap<>();
+        lowerBounds = new HashMap<>();
+        if (wordCounts != null) {
+            for (Map.Entry<String, Integer> entry : wordCounts.entrySet()) {
+                Integer error = wordErrors == null ? null : wordErrors.get(entry.getKey());
+                upperBounds.put(entry.getKey(), (long) entry.getValue());
+                lowerBounds.put(entry.getKey(), (long) entry.getValue() - (error == null ? 0 : error));
+            }
+        }
+        capacity = upperBounds.size();
+    }
+
+    private void publish() {
+        wordCounts = saturatedCounts(upperBounds);
+        wordErrors = saturatedErrors(upperBounds, lowerBounds);
+        top3Words = selectTopWords(wordCounts, 3);
+        topWords = null;
+        text = null;
+    }
+
+    private static Map<String, Integer> saturatedCounts(Map<String, Long> upperBounds) {
+        Map<String, Integer> wordCounts = new WordCountMap(upperBounds.size());
+        for (Map.Entry<String, Long> entry : upperBounds.entrySet()) {
+            wordCounts.put(entry.getKey(), (int) Math.min(entry.getValue(), Integer.MAX_VALUE));
+        }
+        return wordCounts;
+    }
+
+    private static Map<String, Integer> saturatedErrors(Map<String, Long> upperBounds, Map<String, Long> lowerBounds) {
+        Map<String, Integer> wordErrors = new HashMap<>();
+        for (Map.Entry<String, Long> entry : upperBounds.entrySet()) {
+            long upperBound = entry.getValue();
+            wordErrors.put(entry.getKey(), upperBound > Integer.MAX_VALUE
+                    ? Integer.MAX_VALUE
+                    : (int) (upperBound - lowerBounds.get(entry.getKey())));
+        }
+        return wordErrors;
+    }
+
+    /** 推定値の降順、推定値が同じ場合は単語の昇順に並べます */
+    private static final Comparator<Map.Entry<String, Long>> BY_UPPER_BOUND = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+            int result = Long.compare(o2.getValue(), o1.getValue());
+            return result != 0 ? result : o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    /**
+     * 合算・減算の相手となるワードカウント結果の、各単語の出現頻度の範囲とカウンタ表の複製を保持します。
+     */
+    private static final class Bounds {
+        final Map<String, Long> upperBounds = new HashMap<>();
+        final Map<String, Long> lowerBounds = new HashMap<>();
+        long untrackedBound;
+        long tokenCount;
+        long errorBound;
+        long elapsedMillis;
+        int capacity;
+        CountMinSketch sketch;
+
+        /** 全ての単語の出現頻度を正確に保持しているかどうか */
+        boolean exact;
+
+        static Bounds of(WordCount other) {
+            Bounds bounds = new Bounds();
+
+            if (other instanceof ApproximateWordCount) {
+                ApproximateWordCount approximate = (ApproximateWordCount) other;
+                synchronized (approximate) {
+                    approximate.prepareBounds();
+                    bounds.upperBounds.putAll(approximate.upperBounds);
+                    bounds.lowerBounds.putAll(approximate.lowerBounds);
+                    bounds.untrackedBound = approximate.untrackedBound;
+                    bounds.tokenCount = approximate.tokenCount;
+                    bounds.errorBound = approximate.errorBound;
+                    bounds.elapsedMillis = approximate.elapsedMillis;
+                    bounds.capacity = approximate.capacity;
+                    bounds.sketch = approximate.sketch == null ? null : approximate.sketch.copy();
+                }
+                return bounds;
+            }
+
+            for (Map.Entry<String, Integer> entry : other.copyWordCounts().entrySet()) {
+                long count = entry.getValue();
+                bounds.upperBounds.put(entry.getKey(), count);
+                bounds.lowerBounds.put(entry.getKey(), count);
+                bounds.tokenCount += count;
+            }
+            bounds.elapsedMillis = other.elapsedMillis;
+            bounds.exact = true;
+            return bounds;
+        }
+
+        long upperBoundOf(String word) {
+            Long upperBound = upperBounds.get(word);
+            return upperBound != null ? upperBound : untrackedBound;
+        }
+
+        long lowerBoundOf(String word) {
+            Long lowerBound = lowerBounds.get(word);
+            return lowerBound != null ? lowerBound : 0;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 語彙数に上限のない文章に対して、固定のメモリで近似的なワードカウントを行います。
+ * <p>
+ * 各単語の出現頻度を {@link CountMinSketch} で推定しつつ、頻出する単語を {@link SpaceSaving} で追跡します。
+ * 使用するメモリは指定された ε、δ、追跡する単語の数だけで決まり、文章の語彙数には依存しません。
+ * </p>
+ * <pre>
+ * ApproximateWordCounter counter = new ApproximateWordCounter(0.0001, 0.01, 1000);
+ * counter.feed(reader);
+ * ApproximateWordCount wordCount = counter.finish();
+ * </pre>
+ * <p>
+ * このクラスはスレッドセーフではありません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ * @see ApproximateWordCount
+ */
+public class ApproximateWordCounter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final double epsilon;
+    private final double delta;
+    private final int capacity;
+
+    private CountMinSketch sketch;
+    private SpaceSaving heavyHitters;
+    private WordScanner scanner;
+    private WordCountMetrics.Listener metricsListener;
+    private WordCountTimer timer;
+
+    /**
+     * @param epsilon  推定値の誤差の上限を、総単語数に対する割合で指定します (Count-Min Sketch の幅が e / ε となります)
+     * @param delta    推定値の誤差が上限を超える確率を指定します (Count-Min Sketch の深さが ln(1 / δ) となります)
+     * @param capacity 追跡する頻出単語の数
+     */
+    public ApproximateWordCounter(double epsilon, double delta, int capacity) {
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.capacity = capacity;
+        reset();
+    }
+
+    /**
+     * ワードカウントが完了するたびに、各処理段階の所要時間と処理量を通知するリスナを指定します。
+     * デフォルトでは通知しません。最初の {@code feed} より前に指定してください。
+     *
+     * @param listener 計測結果を通知するリスナ。null を指定すると通知しない
+     * @return この ApproximateWordCounter オブジェクト
+     */
+    public ApproximateWordCounter metricsListener(WordCountMetrics.Listener listener) {
+        this.metricsListener = listener;
+        return this;
+    }
+
+    /**
+     * 文章の続きを受け取り、ワードカウントします。
+     *
+     * @param chars 文章の続き
+     * @return この ApproximateWordCounter オブジェクト
+     */
+    public ApproximateWordCounter feed(CharSequence chars) {
+        markBegin();
+        scanner.feed(chars);
+        timer.charsProcessed(chars.length());
+        return this;
+    }
+
+    /**
+     * 指定された {@link Reader} から文章を最後まで読み込み、ワードカウントします。
+     * {@link Reader} はクローズしません。
+     *
+     * @param reader 文章の読み込み元
+     * @return この ApproximateWordCounter オブジェクト
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public ApproximateWordCounter feed(Reader reader) throws IOException {
+        markBegin();
+        char[] buffer = new char[BUFFER_SIZE];
+        for (int n; (n = reader.read(buffer)) >= 0; ) {
+            scanner.feed(buffer, 0, n);
+            timer.charsProcessed(n);
+        }
+        return this;
+    }
+
+    /**
+     * これまでに受け取った文章の近似的なワードカウント結果を返します。
+     * 呼び出し後、この ApproximateWordCounter オブジェクトは新たな文章のワードカウントを始められる状態に戻ります。
+     *
+     * @return 近似的なワードカウント結果
+     */
+    public ApproximateWordCount finish() {
+        markBegin();
+        scanner.finish();
+        timer.scanned();
+        timer.tokens(sketch.totalCount());
+
+        ApproximateWordCount result = ApproximateWordCount.of(timer, sketch, heavyHitters, delta);
+        reset();
+        return result;
+    }
+
+    private void markBegin() {
+        if (timer == null) {
+            timer = new WordCountTimer(metricsListener);
+        }
+    }
+
+    private void reset() {
+        sketch = new CountMinSketch(epsilon, delta);
+        heavyHitters = new SpaceSaving(capacity);
+        scanner = new WordScanner(new WordSink() {
+            @Override
+            public void accept(char[] chars, int length, int hash) {
+                sketch.increment(chars, length);
+                heavyHitters.increment(chars, length, hash);
+            }
+
+            @Override
+            public void accept(String word) {
+                sketch.increment(word);
+                heavyHitters.increment(word);
+            }
+        });
+        timer = null;
+    }
+}
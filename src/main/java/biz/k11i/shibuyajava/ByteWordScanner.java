@@ -0,0 +1,156 @@
+package biz.k11i.shibuyajava;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ASCII 互換の文字コードでエンコードされたバイト列を直接走査し、
+ * {@link WordScanner} と同じ規則で単語を {@link WordCountMap} に登録します。
+ * <p>
+ * ASCII 文字だけからなる単語はバイト列のまま小文字化して数えるため、
+ * {@link String} を生成するのは新しい単語を登録するときだけです。
+ * ASCII 以外のバイトを含む単語は、デコード前のバイト列のまま別のテーブルで数えておき、
+ * {@link #finish()} で異なるバイト列ごとに一度だけデコードと小文字化を行ってから合算します。
+ * </p>
+ * <p>
+ * UTF-8 や ISO-8859-1 ではホワイトスペースや英大文字のバイトがマルチバイト文字の一部として
+ * 現れることはないため、デコードせずに単語の区切りを判定できます。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class ByteWordScanner {
+    private final WordCountMap table;
+    private final Charset charset;
+
+    /** ASCII 以外のバイトを含む単語を、デコード前のバイト列のまま数えるテーブル */
+    private final WordCountMap rawTable = new WordCountMap();
+
+    /** デフォルトロケールで ASCII の大文字を単純に小文字化してよいかどうか */
+    private final boolean asciiFoldable;
+
+    private byte[] token = new byte[32];
+    private int tokenLength;
+    private int tokenHash;
+    private boolean needsStringFolding;
+
+    private boolean started;
+    private boolean leadingEmptyPending;
+
+    ByteWordScanner(WordCountMap table, Charset charset) {
+        if (!supports(charset)) {
+            throw new IllegalArgumentException("バイト列を直接走査できない文字コードです: " + charset);
+        }
+
+        this.table = table;
+        this.charset = charset;
+
+        String language = Locale.getDefault().getLanguage();
+        this.asciiFoldable = !"tr".equals(language) && !"az".equals(language);
+    }
+
+    /**
+     * @param charset 文字コード
+     * @return 指定された文字コードのバイト列を直接走査できる場合は true
+     */
+    static boolean supports(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset)
+                || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * 指定されたバッファの position から limit までを走査します。
+     * バッファの position は変更しません。
+     *
+     * @param buffer 走査対象のバイト列
+     */
+    void feed(ByteBuffer buffer) {
+        int begin = buffer.position();
+        int end = buffer.limit();
+        if (begin >= end) {
+            return;
+        }
+
+        if (!started) {
+            started = true;
+            leadingEmptyPending = isWhitespace(buffer.get(begin));
+        }
+
+        for (int i = begin; i < end; i++) {
+            byte b = buffer.get(i);
+
+            if (isWhitespace(b)) {
+                if (tokenLength > 0) {
+                    flushToken();
+                }
+                continue;
+            }
+
+            if (b >= 'A' && b <= 'Z') {
+                if (asciiFoldable) {
+                    b += 'a' - 'A';
+                } else {
+                    needsStringFolding = true;
+                }
+
+            } else if (b < 0) {
+                needsStringFolding = true;
+            }
+
+            if (tokenLength == token.length) {
+                byte[] newToken = new byte[token.length * 2];
+                System.arraycopy(token, 0, newToken, 0, tokenLength);
+                token = newToken;
+            }
+
+            token[tokenLength++] = b;
+            tokenHash = 31 * tokenHash + (b & 0xff);
+        }
+    }
+
+    /**
+     * 走査途中の単語を確定させ、デコード前のバイト列のまま数えていた単語を合算します。
+     * 全てのバイト列を走査し終えた後に呼び出してください。
+     */
+    void finish() {
+        if (!started) {
+            table.increment("");
+            started = true;
+
+        } else if (tokenLength > 0) {
+            flushToken();
+        }
+
+        for (Map.Entry<String, Integer> entry : rawTable.entrySet()) {
+            byte[] bytes = entry.getKey().getBytes(StandardCharsets.ISO_8859_1);
+            table.add(new String(bytes, charset).toLowerCase(), entry.getValue());
+        }
+        rawTable.clear();
+    }
+
+    private void flushToken() {
+        if (leadingEmptyPending) {
+            table.increment("");
+            leadingEmptyPending = false;
+        }
+
+        if (needsStringFolding) {
+            rawTable.increment(token, tokenLength, tokenHash);
+            needsStringFolding = false;
+
+        } else {
+            table.increment(token, tokenLength, tokenHash);
+        }
+
+        tokenLength = 0;
+        tokenHash = 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+}
@@ -0,0 +1,100 @@
+package biz.k11i.shibuyajava;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 複数のスレッドから共有の語彙に対してワードカウントを行います。
+ * <p>
+ * 単語ごとの出現頻度は {@link ConcurrentHashMap} 上の {@link LongAdder} で保持するため、
+ * 同じ単語を複数のスレッドが同時に数えても一つのカウンタに更新が集中しません。
+ * {@link #add(CharSequence)} は渡された文章をまずスレッド固有の {@link WordCountMap} で数え、
+ * 異なる単語ごとに一度だけ共有の語彙へ反映します。
+ * </p>
+ * <p>
+ * {@link #snapshot()} は {@link #add(CharSequence)} の途中の状態を含まない、一貫した結果を返します。
+ * このためにストライプ化した読み書きロックを使っており、{@link #add(CharSequence)} 同士は
+ * スレッドごとに異なるロックの読み込みロックを取るので互いに競合しません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public class ConcurrentWordCounter {
+    private final ConcurrentHashMap<String, LongAdder> wordCounts = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock[] locks;
+
+    public ConcurrentWordCounter() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+
+        locks = new ReentrantReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * 指定された文章を {@link WordCount#countWords(String)} と同じ規則でワードカウントし、共有の語彙に加算します。
+     * 任意のスレッドから呼び出すことができます。
+     *
+     * @param text ワードカウント対象の文章
+     */
+    public void add(CharSequence text) {
+        WordCountMap localCounts = new WordCountMap();
+        WordScanner scanner = new WordScanner(localCounts);
+        scanner.feed(text);
+        scanner.finish();
+
+        ReentrantReadWriteLock.ReadLock lock = locks[(int) Thread.currentThread().getId() & (locks.length - 1)].readLock();
+        lock.lock();
+        try {
+            for (Map.Entry<String, Integer> entry : localCounts.entrySet()) {
+                LongAdder counter = wordCounts.get(entry.getKey());
+                if (counter == null) {
+                    LongAdder newCounter = new LongAdder();
+                    counter = wordCounts.putIfAbsent(entry.getKey(), newCounter);
+                    if (counter == null) {
+                        counter = newCounter;
+                    }
+                }
+                counter.add(entry.getValue());
+            }
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * これまでに加算された出現頻度のスナップショットを返します。
+     * 結果には、呼び出し時点で完了している {@link #add(CharSequence)} の内容だけが全て含まれます。
+     *
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     * @throws ArithmeticException 出現頻度が int の範囲を超えた単語がある場合
+     */
+    public WordCount snapshot() {
+        WordCountTimer timer = new WordCountTimer();
+        WordCountMap snapshot;
+
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+        try {
+            snapshot = new WordCountMap(wordCounts.size());
+            for (Map.Entry<String, LongAdder> entry : wordCounts.entrySet()) {
+                snapshot.add(entry.getKey(), Math.toIntExact(entry.getValue().sum()));
+            }
+
+        } finally {
+            for (ReentrantReadWriteLock lock : locks) {
+                lock.writeLock().unlock();
+            }
+        }
+
+        return new WordCount(timer, null, snapshot);
+    }
+}
@@ -0,0 +1,201 @@
+package biz.k11i.shibuyajava;
+
+/**
+ * Count-Min Sketch により、固定のメモリで各単語の出現頻度を推定します。
+ * <p>
+ * 幅 w = e / ε、深さ d = ln(1 / δ) のカウンタ表を使い、推定値は真の出現頻度以上かつ、
+ * 確率 1 - δ 以上で「真の出現頻度 + ε × 総単語数」以下となります。
+ * 各行のカウンタの位置は、単語の文字列から計算した 64 ビットのハッシュ値の上位と下位の 32 ビットを組み合わせて決めます
+ * (h1 + 行番号 × h2)。{@link String#hashCode()} の値が一致する単語同士でも、全ての行で同じカウンタを共有することはありません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class CountMinSketch {
+    /** 幅の上限 */
+    static final int MAX_WIDTH = 1 << 30;
+
+    /** カウンタ表の要素数の上限 (配列の長さの上限) */
+    static final long MAX_COUNTERS = Integer.MAX_VALUE - 8;
+
+    /** 単語のハッシュ値の初期値 */
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+
+    private long totalCount;
+
+    private CountMinSketch(CountMinSketch original) {
+        this.width = original.width;
+        this.depth = original.depth;
+        this.counters = original.counters.clone();
+        this.totalCount = original.totalCount;
+    }
+
+    /**
+     * @param epsilon 許容する誤差の、総単語数に対する割合
+     * @param delta   誤差が許容範囲を超える確率
+     */
+    CountMinSketch(double epsilon, double delta) {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("epsilon には 0 より大きく 1 より小さい値を指定してください: " + epsilon);
+        }
+        if (!(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("delta には 0 より大きく 1 より小さい値を指定してください: " + delta);
+        }
+
+        if (Math.E / epsilon > MAX_WIDTH) {
+            throw new IllegalArgumentException("epsilon が小さすぎます。幅 e / ε が " + MAX_WIDTH + " を超えます: " + epsilon);
+        }
+
+        int w = 1;
+        while (w < Math.E / epsilon) {
+            w <<= 1;
+        }
+
+        this.width = w;
+        this.depth = Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+
+        long size = Math.multiplyExact((long) width, (long) depth);
+        if (size > MAX_COUNTERS) {
+            throw new IllegalArgumentException("カウンタ表が大きすぎます (幅 " + width + " × 深さ " + depth + ")。"
+                    + "epsilon または delta を大きくしてください: epsilon=" + epsilon + ", delta=" + delta);
+        }
+        this.counters = new long[(int) size];
+    }
+
+    /**
+     * 文字配列上の単語の出現頻度を 1 加算します。
+     *
+     * @param chars  単語を含む文字配列
+     * @param length 単語の長さ
+     */
+    void increment(char[] chars, int length) {
+        increment(hash(chars, length));
+    }
+
+    /**
+     * 単語の出現頻度を 1 加算します。
+     *
+     * @param word 単語
+     */
+    void increment(CharSequence word) {
+        increment(hash(word));
+    }
+
+    private void increment(long hash) {
+        add(hash, 1);
+    }
+
+    /**
+     * 単語の出現頻度に指定された値を加算します。負の値を指定すると減算します。
+     *
+     * @param word  単語
+     * @param count 加算する値
+     */
+    void add(CharSequence word, long count) {
+        add(hash(word), count);
+    }
+
+    private void add(long hash, long count) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+
+        for (int row = 0, h = h1; row < depth; row++, h += h2) {
+            counters[row * width + (h & (width - 1))] += count;
+        }
+        totalCount += count;
+    }
+
+    /**
+     * 指定された Count-Min Sketch のカウンタを、このカウンタ表に加算します。
+     * 各単語のハッシュ値は幅と深さだけで決まるため、幅と深さが同じであれば
+     * 双方の文章をまとめて数えた場合と同じカウンタ表になります。
+     *
+     * @param other 加算する Count-Min Sketch
+     * @param sign  加算する場合は 1、減算する場合は -1
+     * @throws IllegalArgumentException 幅または深さが異なる場合
+     */
+    void add(CountMinSketch other, int sign) {
+        if (width != other.width || depth != other.depth) {
+            throw new IllegalArgumentException("幅と深さの異なる Count-Min Sketch は合算できません (幅 " + width
+                    + " × 深さ " + depth + " と 幅 " + other.width + " × 深さ " + other.depth + ")");
+        }
+
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += sign * other.counters[i];
+        }
+        totalCount += sign * other.totalCount;
+    }
+
+    /**
+     * @return このカウンタ表の複製
+     */
+    CountMinSketch copy() {
+        return new CountMinSketch(this);
+    }
+
+    /**
+     * @param word 単語
+     * @return 出現頻度の推定値
+     */
+    long estimate(CharSequence word) {
+        long hash = hash(word);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+
+        long min = Long.MAX_VALUE;
+        for (int row = 0, h = h1; row < depth; row++, h += h2) {
+            min = Math.min(min, counters[row * width + (h & (width - 1))]);
+        }
+        return min;
+    }
+
+    /**
+     * @return これまでに加算した単語の総数
+     */
+    long totalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 幅 w を 2 のべき乗に切り上げているため、指定された ε ではなく e / w を使って誤差の上限を計算します。
+     *
+     * @return 確率 1 - δ 以上で成り立つ、推定値の誤差の上限
+     */
+    long errorBound() {
+        return (long) Math.ceil(Math.E / width * totalCount);
+    }
+
+    /**
+     * 単語の 64 ビットのハッシュ値を計算します。
+     * 文字ごとに FNV-1a と同じ方法で混ぜ合わせ、最後に MurmurHash3 の fmix64 で全てのビットに行き渡らせます。
+     */
+    static long hash(char[] chars, int length) {
+        long h = SEED;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ chars[i]) * 0x100000001b3L;
+        }
+        return fmix(h ^ length);
+    }
+
+    static long hash(CharSequence word) {
+        long h = SEED;
+        int length = word.length();
+        for (int i = 0; i < length; i++) {
+            h = (h ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return fmix(h ^ length);
+    }
+
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53a185ec4cbL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,94 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ExternalWordCounter} によるワードカウント結果です。
+ * <p>
+ * 各単語の出現頻度は {@link WordCountFile} の形式でファイルに書き出されており、{@link #file()} で
+ * メモリマップしたファイルから検索できます。上位の単語はマージの際に選んだものを保持します。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public final class ExternalWordCount {
+    private final WordCountFile file;
+    private final List<String> topWords;
+    private final long tokens;
+    private final int spilledRuns;
+
+    ExternalWordCount(WordCountFile file, List<String> topWords, long tokens, int spilledRuns) {
+        this.file = file;
+        this.topWords = Collections.unmodifiableList(topWords);
+        this.tokens = tokens;
+        this.spilledRuns = spilledRuns;
+    }
+
+    /**
+     * メモリ上のテーブルの語彙数を制限しながら {@link WordCount#countWords(Reader)} と同じワードカウントを行い、
+     * 結果を {@link WordCountFile} の形式で書き出します。ランの一時ファイルは書き出し先と同じディレクトリに作成します。
+     * Reader は閉じません。
+     *
+     * @param reader           ワードカウント対象の文章を読み込む Reader
+     * @param output           ワードカウント結果の書き出し先のファイルのパス
+     * @param maxWordsInMemory メモリ上のテーブルで数える語彙数の上限
+     * @return ワードカウント結果
+     * @throws IOException 読み込み、または一時ファイルや結果の読み書きに失敗した場合
+     */
+    public static ExternalWordCount countWords(Reader reader, Path output, int maxWordsInMemory) throws IOException {
+        Path workDirectory = output.toAbsolutePath().getParent();
+        return new ExternalWordCounter(workDirectory, maxWordsInMemory).feed(reader).finish(output);
+    }
+
+    /**
+     * @return 各単語の出現頻度を書き出したファイル
+     */
+    public WordCountFile file() {
+        return file;
+    }
+
+    /**
+     * @return 最頻出する単語の上位 k 個 ({@link ExternalWordCounter#topK(int)} で指定した数)。変更はできません
+     */
+    public List<String> topWords() {
+        return topWords;
+    }
+
+    /**
+     * @return 語彙数
+     */
+    public int size() {
+        return file.size();
+    }
+
+    /**
+     * @return ワードカウントした単語の総数
+     */
+    public long tokens() {
+        return tokens;
+    }
+
+    /**
+     * @return メモリ上のテーブルから一時ファイルに書き出したランの数
+     */
+    public int spilledRuns() {
+        return spilledRuns;
+    }
+
+    /**
+     * @return ワードカウントの処理に要した時間 (ミリ秒)
+     */
+    public long elapsedMillis() {
+        return file.elapsedMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "ExternalWordCount{size=" + size() + ", tokens=" + tokens + ", spilledRuns=" + spilledRuns
+                + ", elapsedMillis=" + elapsedMillis() + "}";
+    }
+}
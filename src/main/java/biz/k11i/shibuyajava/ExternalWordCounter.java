@@ -0,0 +1,541 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * メモリに収まらない語彙の文章を、一時ファイルに書き出しながらワードカウントします。
+ * <p>
+ * 単語はまずメモリ上のテーブルで数え、テーブルの語彙数が指定された上限に達するたびに、
+ * 単語を UTF-8 のバイト列の辞書順に並べた「ラン」として一時ファイルに書き出してテーブルを空にします。
+ * {@link #finish(Path)} では全てのランを先頭から順に読みながら k-way マージして出現頻度を合計し、
+ * 結果を {@link WordCountFile} の形式で書き出すとともに、上位の単語を選びます。
+ * ランの数が多い場合は、{@value #MAX_FAN_IN} 個ずつマージした中間のランを作ってから最終的なマージを行います。
+ * </p>
+ * <p>
+ * Java ヒープの使用量は、語彙数の上限までのテーブルと、ランを書き出す際に並べ替える単語のバイト列、
+ * マージ中の各ランの読み込みバッファ (64KB × 最大 {@value #MAX_FAN_IN} 個) で決まり、文章の大きさや語彙数には依存しません。
+ * 一時ファイルとランの読み書きはいずれも {@link FileChannel} による先頭からの順次アクセスです。
+ * </p>
+ * <p>
+ * 結果の形式は {@link WordCountFile} のものなので、次の二つの上限があります。
+ * </p>
+ * <ul>
+ * <li>単語ごとの出現頻度は int の範囲まで。
+ * 中間のランを作るマージで超えた時点で、最終的なマージを待たずに {@link IOException} を投げます。</li>
+ * <li>結果のファイルの大きさは 2GB まで。語彙数の目安は、前方一致の圧縮後に 1 単語あたり 5 バイト程度の語彙で 4 億語ほどです。
+ * 最終的なマージの途中で書き出した大きさが超えた時点で {@link IOException} を投げます。</li>
+ * </ul>
+ * <p>
+ * どちらの場合も、書き出し途中の結果のファイルは残しません。
+ * </p>
+ * <pre>
+ * ExternalWordCounter counter = new ExternalWordCounter(workDirectory, 1000000);
+ * counter.feed(reader);
+ * ExternalWordCount wordCount = counter.finish(output);
+ * wordCount.file().countOf("hello");
+ * </pre>
+ * <p>
+ * このクラスはスレッドセーフではありません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ * @see ExternalWordCount
+ */
+public class ExternalWordCounter {
+    /** 一度にマージするランの数の上限 */
+    static final int MAX_FAN_IN = 64;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** UTF-8 のバイト列を符号なしの値として辞書順に比較します */
+    private static final Comparator<SpilledWord> UNSIGNED_LEXICOGRAPHICAL = new Comparator<SpilledWord>() {
+        @Override
+        public int compare(SpilledWord o1, SpilledWord o2) {
+            return compareBytes(o1.word, o1.word.length, o2.word, o2.word.length);
+        }
+    };
+
+    private final Path workDirectory;
+    private final int maxWordsInMemory;
+    private WordNormalizer normalizer = WordNormalizer.DEFAULT;
+    private int topK = 3;
+
+    private WordCountMap wordCounts;
+    private WordScanner scanner;
+    private List<Path> runs;
+    private int spilledRuns;
+    private long tokens;
+    private WordCountMetrics.Listener metricsListener;
+    private WordCountTimer timer;
+
+    /**
+     * @param workDirectory    ランを書き出す一時ファイルを作成するディレクトリ
+     * @param maxWordsInMemory メモリ上のテーブルで数える語彙数の上限
+     */
+    public ExternalWordCounter(Path workDirectory, int maxWordsInMemory) {
+        if (maxWordsInMemory < 1) {
+            throw new IllegalArgumentException("maxWordsInMemory には 1 以上の値を指定してください: " + maxWordsInMemory);
+        }
+
+        this.workDirectory = workDirectory;
+        this.maxWordsInMemory = maxWordsInMemory;
+        reset();
+    }
+
+    /**
+     * 各単語の正規化の方法を指定します。
+     * デフォルトでは {@link WordNormalizer#DEFAULT} を使います。最初の {@code feed} より前に指定してください。
+     *
+     * @param normalizer 各単語の正規化の方法
+     * @return この ExternalWordCounter オブジェクト
+     */
+    public ExternalWordCounter normalizer(WordNormalizer normalizer) {
+        if (normalizer == null) {
+            throw new NullPointerException("normalizer");
+        }
+        this.normalizer = normalizer;
+        scanner = new WordScanner(new Spilling(), normalizer);
+        return this;
+    }
+
+    /**
+     * {@link ExternalWordCount#topWords()} として選ぶ上位の単語の数を指定します。デフォルトは 3 です。
+     *
+     * @param k 単語の数
+     * @return この ExternalWordCounter オブジェクト
+     */
+    public ExternalWordCounter topK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k には 0 以上の値を指定してください: " + k);
+        }
+        this.topK = k;
+        return this;
+    }
+
+    /**
+     * ワードカウントが完了するたびに、各処理段階の所要時間と処理量を通知するリスナを指定します。
+     * デフォルトでは通知しません。最初の {@code feed} より前に指定してください。
+     *
+     * @param listener 計測結果を通知するリスナ。null を指定すると通知しない
+     * @return この ExternalWordCounter オブジェクト
+     */
+    public ExternalWordCounter metricsListener(WordCountMetrics.Listener listener) {
+        this.metricsListener = listener;
+        return this;
+    }
+
+    /**
+     * 文章の続きを受け取り、ワードカウントします。
+     *
+     * @param chars 文章の続き
+     * @return この ExternalWordCounter オブジェクト
+     * @throws IOException ランの書き出しに失敗した場合
+     */
+    public ExternalWordCounter feed(CharSequence chars) throws IOException {
+        markBegin();
+        try {
+            scanner.feed(chars);
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        timer.charsProcessed(chars.length());
+        return this;
+    }
+
+    /**
+     * 指定された {@link Reader} から文章を最後まで読み込み、ワードカウントします。
+     * {@link Reader} はクローズしません。
+     *
+     * @param reader 文章の読み込み元
+     * @return この ExternalWordCounter オブジェクト
+     * @throws IOException 読み込み、またはランの書き出しに失敗した場合
+     */
+    public ExternalWordCounter feed(Reader reader) throws IOException {
+        markBegin();
+        char[] buffer = new char[BUFFER_SIZE];
+        try {
+            for (int n; (n = reader.read(buffer)) >= 0; ) {
+                scanner.feed(buffer, 0, n);
+                timer.charsProcessed(n);
+            }
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return this;
+    }
+
+    /**
+     * これまでに受け取った文章のワードカウント結果を、{@link WordCountFile} の形式で指定されたファイルに書き出します。
+     * 呼び出し後、この ExternalWordCounter オブジェクトは新たな文章のワードカウントを始められる状態に戻ります。
+     *
+     * @param output ワードカウント結果の書き出し先のファイルのパス
+     * @return ワードカウント結果
+     * @throws IOException ランの読み書き、または結果の書き出しに失敗した場合
+     */
+    public ExternalWordCount finish(Path output) throws IOException {
+        markBegin();
+        try {
+            scanner.finish();
+            spill();
+            timer.scanned();
+
+            while (runs.size() > MAX_FAN_IN) {
+                // マージに失敗しても finally で削除できるよう、マージし終えるまでランを runs に残しておく
+                List<Path> group = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+                runs.add(mergeToRun(group));
+                for (Path merged : group) {
+                    Files.delete(merged);
+                }
+                runs.subList(0, MAX_FAN_IN).clear();
+            }
+
+            TopWords topWords = new TopWords(topK);
+            int size;
+            try (WordCountFile.SortedWriter writer = new WordCountFile.SortedWriter(output, workDirectory)) {
+                size = merge(runs, writer, topWords);
+                timer.tokens(tokens);
+                writer.finish(timer.finish(size));
+            }
+
+            return new ExternalWordCount(WordCountFile.open(output), topWords.toList(), tokens, spilledRuns);
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            reset();
+        }
+    }
+
+    /**
+     * メモリ上のテーブルの単語を UTF-8 のバイト列の辞書順に並べ、ランとして書き出してテーブルを空にします。
+     */
+    private void spill() throws IOException {
+        SpilledWord[] words = new SpilledWord[wordCounts.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : wordCounts.entrySet()) {
+            words[n++] = new SpilledWord(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+        }
+        wordCounts.clear();
+        Arrays.sort(words, UNSIGNED_LEXICOGRAPHICAL);
+
+        Path run = Files.createTempFile(workDirectory, "run", ".tmp");
+        runs.add(run);
+        spilledRuns++;
+
+        try (RunWriter writer = new RunWriter(run)) {
+            for (int i = 0; i < words.length; ) {
+                // 対になっていないサロゲートを含む単語は、UTF-8 に変換すると別の単語と同じバイト列になりうる
+                SpilledWord word = words[i];
+                long count = 0;
+                for (; i < words.length && Arrays.equals(words[i].word, word.word); i++) {
+                    count += words[i].count;
+                }
+                writer.write(word.word, word.word.length, count);
+            }
+        }
+    }
+
+    /**
+     * 複数のランをマージした中間のランを書き出します。マージに失敗した場合は、書き出し途中のランを削除します。
+     */
+    private Path mergeToRun(List<Path> group) throws IOException {
+        Path run = Files.createTempFile(workDirectory, "run", ".tmp");
+        boolean completed = false;
+        try (final RunWriter writer = new RunWriter(run)) {
+            mergeRuns(group, new MergeSink() {
+                @Override
+                public void accept(byte[] word, int length, long count) throws IOException {
+                    writer.write(word, length, count);
+                }
+            });
+            completed = true;
+
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(run);
+            }
+        }
+        return run;
+    }
+
+    private int merge(List<Path> group, final WordCountFile.SortedWriter writer, final TopWords topWords)
+            throws IOException {
+        return mergeRuns(group, new MergeSink() {
+            @Override
+            public void accept(byte[] word, int length, long count) throws IOException {
+                writer.add(word, length, count);
+                // writer.add が int の範囲に収まることを確認済みです
+                topWords.offer(word, length, (int) count);
+            }
+        });
+    }
+
+    /**
+     * 複数のランを k-way マージし、単語ごとに合計した出現頻度を辞書順に渡します。
+     *
+     * @return マージ後の語彙数
+     */
+    private static int mergeRuns(List<Path> group, MergeSink sink) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, group.size()), new Comparator<RunReader>() {
+            @Override
+            public int compare(RunReader o1, RunReader o2) {
+                return compareBytes(o1.word, o1.length, o2.word, o2.length);
+            }
+        });
+
+        List<RunReader> readers = new ArrayList<>(group.size());
+        try {
+            for (Path run : group) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            int size = 0;
+            byte[] word = new byte[32];
+            while (!queue.isEmpty()) {
+                RunReader head = queue.poll();
+                int length = head.length;
+                if (word.length < length) {
+                    word = Arrays.copyOf(word, Math.max(length, word.length * 2));
+                }
+                System.arraycopy(head.word, 0, word, 0, length);
+                long count = head.count;
+                if (head.next()) {
+                    queue.add(head);
+                }
+
+                while (!queue.isEmpty() && compareBytes(queue.peek().word, queue.peek().length, word, length) == 0) {
+                    RunReader same = queue.poll();
+                    count += same.count;
+                    if (same.next()) {
+                        queue.add(same);
+                    }
+                }
+
+                sink.accept(word, length, count);
+                size++;
+            }
+            return size;
+
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    static int compareBytes(byte[] bytes1, int length1, byte[] bytes2, int length2) {
+        int limit = Math.min(length1, length2);
+        for (int i = 0; i < limit; i++) {
+            int c = (bytes1[i] & 0xff) - (bytes2[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length1 - length2;
+    }
+
+    private void markBegin() {
+        if (timer == null) {
+            timer = new WordCountTimer(metricsListener);
+        }
+    }
+
+    private void reset() {
+        wordCounts = new WordCountMap();
+        scanner = new WordScanner(new Spilling(), normalizer);
+        runs = new ArrayList<>();
+        spilledRuns = 0;
+        tokens = 0;
+        timer = null;
+    }
+
+    /**
+     * 単語をテーブルで数え、テーブルの語彙数が上限に達したらランを書き出します。
+     */
+    private class Spilling implements WordSink {
+        @Override
+        public void accept(char[] chars, int length, int hash) {
+            wordCounts.accept(chars, length, hash);
+            afterAccept();
+        }
+
+        @Override
+        public void accept(String word) {
+            wordCounts.accept(word);
+            afterAccept();
+        }
+
+        private void afterAccept() {
+            tokens++;
+            if (wordCounts.size() >= maxWordsInMemory) {
+                try {
+                    spill();
+
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private interface MergeSink {
+        void accept(byte[] word, int length, long count) throws IOException;
+    }
+
+    private static final class SpilledWord {
+        final byte[] word;
+        final int count;
+
+        SpilledWord(byte[] word, int count) {
+            this.word = word;
+            this.count = count;
+        }
+    }
+
+    /**
+     * マージしながら上位 k 個の単語を選びます。出現頻度が最も低い候補の単語と同じ出現頻度の単語が来た場合だけ、
+     * {@link String} に変換して比較します。
+     */
+    private static final class TopWords {
+        private final int k;
+        private final PriorityQueue<Map.Entry<String, Integer>> heap;
+
+        TopWords(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<>(Math.max(1, k), Collections.reverseOrder(WordCount.RANKING));
+        }
+
+        void offer(byte[] word, int length, int count) {
+            if (k == 0) {
+                return;
+            }
+            if (heap.size() == k && count < heap.peek().getValue()) {
+                return;
+            }
+
+            Map.Entry<String, Integer> entry = new AbstractMap.SimpleImmutableEntry<>(
+                    new String(word, 0, length, StandardCharsets.UTF_8), count);
+            if (heap.size() < k) {
+                heap.add(entry);
+
+            } else if (WordCount.RANKING.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        List<String> toList() {
+            List<Map.Entry<String, Integer>> entries = new ArrayList<>(heap);
+            Collections.sort(entries, WordCount.RANKING);
+
+            List<String> words = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Integer> entry : entries) {
+                words.add(entry.getKey());
+            }
+            return words;
+        }
+    }
+
+    /**
+     * ランを書き出します。各単語は「長さ + 1」「UTF-8 のバイト列」「出現頻度」の順に並び、最後に 0 を書きます。
+     */
+    private static final class RunWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final WordCountFile.ChannelOutput out;
+
+        RunWriter(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new WordCountFile.ChannelOutput(channel);
+        }
+
+        /**
+         * @throws IOException 出力に失敗した場合、または出現頻度が結果のファイルに書き出せる int の範囲を超える場合
+         */
+        void write(byte[] word, int length, long count) throws IOException {
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("出現頻度が int の範囲を超えているため書き出せません: " + count);
+            }
+            out.writeVarLong(length + 1);
+            out.write(word, 0, length);
+            out.writeVarLong(count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeVarLong(0);
+                out.flush();
+
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * ランを先頭から順に読み込みます。
+     */
+    private static final class RunReader implements AutoCloseable {
+        private final FileChannel channel;
+        private final WordCountFile.ChannelInput in;
+
+        byte[] word = new byte[32];
+        int length;
+        long count;
+
+        RunReader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.in = new WordCountFile.ChannelInput(channel);
+        }
+
+        /**
+         * 次の単語を読み込みます。
+         *
+         * @return ランの終わりに達した場合は false
+         */
+        boolean next() throws IOException {
+            int header = (int) in.readVarLong();
+            if (header == 0) {
+                return false;
+            }
+
+            length = header - 1;
+            if (word.length < length) {
+                word = new byte[Math.max(length, word.length * 2)];
+            }
+            in.readFully(word, 0, length);
+            count = in.readVarLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
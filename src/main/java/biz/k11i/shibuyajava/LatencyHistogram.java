@@ -0,0 +1,93 @@
+package biz.k11i.shibuyajava;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間の分布を記録し、パーセンタイルを求めるためのヒストグラムです。
+ * <p>
+ * 値を 2 の冪ごとの区間に分け、各区間をさらに 8 等分したバケットで数えます。
+ * 記録できる値は 0 以上の long 全体で、求めたパーセンタイルの相対誤差は 12.5% 以内です。
+ * 記録はロックを取らずに行うため、複数のスレッドから同時に呼び出せます。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+
+    /**
+     * @param value 記録する値。負の値は 0 として記録する
+     */
+    void record(long value) {
+        buckets.incrementAndGet(indexOf(Math.max(value, 0)));
+    }
+
+    /**
+     * @return 記録した値の数
+     */
+    long count() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 記録した値のうち、指定されたパーセンタイルにあたる値を返します。
+     * 値はその値を含むバケットの上限で近似します。
+     *
+     * @param percentile パーセンタイル (0 以上 100 以下)
+     * @return パーセンタイルにあたる値。何も記録していない場合は 0
+     */
+    long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile には 0 以上 100 以下の値を指定してください: " + percentile);
+        }
+
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + ((1L << shift) - 1);
+    }
+}
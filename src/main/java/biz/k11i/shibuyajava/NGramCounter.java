@@ -0,0 +1,158 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 文章を少しずつ受け取りながら、連続する 1 から maxOrder 個の単語の並び (n-gram) の出現頻度を一度の走査で数えます。
+ * <p>
+ * 単語の区切り方と正規化は {@link WordCounter} と同じです。各単語には現れた順に ID を割り当て、
+ * n-gram は直近の maxOrder 個の単語 ID の窓から取り出します。n-gram のハッシュ値は末尾の単語から
+ * 先頭側へ伸ばしながら計算するので、一つの単語につき各長さの n-gram を O(1) で数えられます。
+ * 数える途中で n-gram ごとに単語を連結した {@link String} は生成せず、使用するメモリは
+ * 異なる単語と異なる n-gram の数に比例する量に収まります。
+ * </p>
+ * <pre>
+ * NGramCounter counter = new NGramCounter(3);
+ * counter.feed("New York is in New York");
+ * NGramCounts counts = counter.finish();
+ * counts.countOf("new", "york");   // 2
+ * counts.topNGrams(2, 1);          // [new york]
+ * </pre>
+ * <p>
+ * このクラスはスレッドセーフではありません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ * @see NGramCounts
+ */
+public class NGramCounter {
+    /** 数えられる n-gram の長さの上限 */
+    public static final int MAX_ORDER = 5;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int maxOrder;
+    private WordNormalizer normalizer = WordNormalizer.DEFAULT;
+
+    private WordIdTable vocabulary;
+    private NGramTable[] tables;
+    private WordScanner scanner;
+
+    /** 直近の maxOrder 個の単語 ID。末尾が最新 */
+    private final int[] window;
+
+    /** 窓に入っている単語 ID の数 */
+    private int filled;
+
+    /**
+     * @param maxOrder 数える n-gram の長さの上限 (1 以上 {@link #MAX_ORDER} 以下)
+     */
+    public NGramCounter(int maxOrder) {
+        if (maxOrder < 1 || maxOrder > MAX_ORDER) {
+            throw new IllegalArgumentException("maxOrder には 1 以上 " + MAX_ORDER + " 以下の値を指定してください: " + maxOrder);
+        }
+
+        this.maxOrder = maxOrder;
+        this.window = new int[maxOrder];
+        reset();
+    }
+
+    /**
+     * 各単語の正規化の方法を指定します。
+     * デフォルトでは {@link WordNormalizer#DEFAULT} を使います。最初の {@code feed} より前に指定してください。
+     *
+     * @param normalizer 各単語の正規化の方法
+     * @return この NGramCounter オブジェクト
+     */
+    public NGramCounter normalizer(WordNormalizer normalizer) {
+        if (normalizer == null) {
+            throw new NullPointerException("normalizer");
+        }
+        this.normalizer = normalizer;
+        scanner = new WordScanner(new Tokens(), normalizer);
+        return this;
+    }
+
+    /**
+     * 文章の続きを受け取り、n-gram を数えます。
+     * {@code feed} の呼び出しの境界をまたぐ単語や n-gram も、続けて数えます。
+     *
+     * @param chars 文章の続き
+     * @return この NGramCounter オブジェクト
+     */
+    public NGramCounter feed(CharSequence chars) {
+        scanner.feed(chars);
+        return this;
+    }
+
+    /**
+     * 指定された {@link Reader} から文章を最後まで読み込み、n-gram を数えます。
+     * {@link Reader} はクローズしません。
+     *
+     * @param reader 文章の読み込み元
+     * @return この NGramCounter オブジェクト
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public NGramCounter feed(Reader reader) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        for (int n; (n = reader.read(buffer)) >= 0; ) {
+            scanner.feed(buffer, 0, n);
+        }
+        return this;
+    }
+
+    /**
+     * これまでに受け取った文章の n-gram の出現頻度を返します。
+     * 呼び出し後、この NGramCounter オブジェクトは新たな文章を数え始められる状態に戻ります。
+     *
+     * @return n-gram の出現頻度
+     */
+    public NGramCounts finish() {
+        scanner.finish();
+
+        NGramCounts result = new NGramCounts(vocabulary, tables);
+        reset();
+        return result;
+    }
+
+    private void advance(int id) {
+        System.arraycopy(window, 1, window, 0, maxOrder - 1);
+        window[maxOrder - 1] = id;
+        if (filled < maxOrder) {
+            filled++;
+        }
+
+        long hash = 0;
+        for (int n = 1; n <= filled; n++) {
+            int offset = maxOrder - n;
+            hash = NGramTable.extend(hash, window[offset]);
+            tables[n - 1].increment(window, offset, NGramTable.hash(hash));
+        }
+    }
+
+    private void reset() {
+        vocabulary = new WordIdTable();
+        tables = new NGramTable[maxOrder];
+        for (int n = 1; n <= maxOrder; n++) {
+            tables[n - 1] = new NGramTable(n);
+        }
+        scanner = new WordScanner(new Tokens(), normalizer);
+        filled = 0;
+    }
+
+    /**
+     * {@link WordScanner} が切り出した単語に ID を割り当て、窓を進めます。
+     */
+    private class Tokens implements WordSink {
+        @Override
+        public void accept(char[] chars, int length, int hash) {
+            advance(vocabulary.idOf(chars, length, hash));
+        }
+
+        @Override
+        public void accept(String word) {
+            advance(vocabulary.idOf(word));
+        }
+    }
+}
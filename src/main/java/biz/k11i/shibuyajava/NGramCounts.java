@@ -0,0 +1,148 @@
+package biz.k11i.shibuyajava;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NGramCounter} で数えた、長さごとの n-gram の出現頻度を保持します。
+ * <p>
+ * n-gram は空白一文字で単語を連結した文字列として返しますが、この文字列は {@link #topNGrams(int, int)} や
+ * {@link #nGramCounts(int)} を呼び出したときに初めて生成します。長さ 1 の n-gram の出現頻度は、
+ * 同じ文章に対する {@link WordCount#countWords(String)} の {@link WordCount#wordCounts} と一致します。
+ * </p>
+ * <p>
+ * このクラスは不変であり、複数のスレッドから同時に使用できます。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public final class NGramCounts {
+    private final WordIdTable vocabulary;
+    private final NGramTable[] tables;
+
+    NGramCounts(WordIdTable vocabulary, NGramTable[] tables) {
+        this.vocabulary = vocabulary;
+        this.tables = tables;
+    }
+
+    /**
+     * 長さ 1 から maxOrder までの n-gram の出現頻度を数えます。
+     *
+     * @param text     対象の文章
+     * @param maxOrder 数える n-gram の長さの上限 (1 以上 {@link NGramCounter#MAX_ORDER} 以下)
+     * @return n-gram の出現頻度
+     */
+    public static NGramCounts countNGrams(String text, int maxOrder) {
+        return new NGramCounter(maxOrder).feed(text).finish();
+    }
+
+    /**
+     * @return 数えた n-gram の長さの上限
+     */
+    public int maxOrder() {
+        return tables.length;
+    }
+
+    /**
+     * @param order n-gram の長さ
+     * @return 異なる n-gram の数
+     */
+    public int size(int order) {
+        return table(order).size();
+    }
+
+    /**
+     * 指定された単語の並びの出現頻度を返します。単語は正規化済みのものを指定してください。
+     *
+     * @param words 単語の並び (長さは 1 以上 {@link #maxOrder()} 以下)
+     * @return 出現頻度。含まれていない場合は 0
+     */
+    public int countOf(String... words) {
+        NGramTable table = table(words.length);
+
+        int[] ids = new int[words.length];
+        long hash = 0;
+        for (int j = words.length - 1; j >= 0; j--) {
+            ids[j] = vocabulary.find(words[j]);
+            if (ids[j] < 0) {
+                return 0;
+            }
+            hash = NGramTable.extend(hash, ids[j]);
+        }
+        return table.countOf(ids, NGramTable.hash(hash));
+    }
+
+    /**
+     * 出現頻度の降順、出現頻度が同じ場合は単語の並びの辞書順で、上位 k 個の n-gram を返します。
+     *
+     * @param order n-gram の長さ
+     * @param k     n-gram の数
+     * @return 空白一文字で単語を連結した、上位 k 個の n-gram
+     */
+    public List<String> topNGrams(int order, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k には 0 以上の値を指定してください: " + k);
+        }
+
+        NGramTable table = table(order);
+        int[] entries = table.topEntries(k, vocabulary.words());
+
+        List<String> result = new ArrayList<>(entries.length);
+        for (int entry : entries) {
+            result.add(toString(table, entry));
+        }
+        return result;
+    }
+
+    /**
+     * 指定された長さの全ての n-gram の出現頻度を返します。
+     *
+     * @param order n-gram の長さ
+     * @return 空白一文字で単語を連結した n-gram と、その出現頻度
+     */
+    public Map<String, Integer> nGramCounts(int order) {
+        NGramTable table = table(order);
+
+        WordCountMap result = new WordCountMap(table.size());
+        for (int entry = 0; entry < table.size(); entry++) {
+            result.add(toString(table, entry), table.countAt(entry));
+        }
+        return result;
+    }
+
+    private String toString(NGramTable table, int entry) {
+        String[] words = vocabulary.words();
+        if (table.order() == 1) {
+            return words[table.idAt(entry, 0)];
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < table.order(); j++) {
+            if (j > 0) {
+                sb.append(' ');
+            }
+            sb.append(words[table.idAt(entry, j)]);
+        }
+        return sb.toString();
+    }
+
+    private NGramTable table(int order) {
+        if (order < 1 || order > tables.length) {
+            throw new IllegalArgumentException("order には 1 以上 " + tables.length + " 以下の値を指定してください: " + order);
+        }
+        return tables[order - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("NGramCounts{");
+        for (int n = 1; n <= tables.length; n++) {
+            if (n > 1) {
+                sb.append(", ");
+            }
+            sb.append(n).append("-gram=").append(tables[n - 1].size());
+        }
+        return sb.append('}').toString();
+    }
+}
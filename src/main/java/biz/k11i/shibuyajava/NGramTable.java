@@ -0,0 +1,236 @@
+package biz.k11i.shibuyajava;
+
+import java.util.Arrays;
+
+/**
+ * 単語 ID の列で表した、同じ長さの n-gram の出現頻度を数えるハッシュテーブルです。
+ * <p>
+ * n-gram は追加された順に密な配列に格納し、ハッシュ値からその位置を引く索引をオープンアドレス法で持ちます。
+ * n-gram ごとにオブジェクトを生成しないため、使用するメモリは異なる n-gram の数に比例する量
+ * (一つあたり 4 × (n + 1) + 8 バイトと索引) に収まります。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class NGramTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int order;
+
+    /** i 番目の n-gram の単語 ID は keys[i * order] から keys[i * order + order - 1] */
+    private int[] keys;
+    private long[] hashes;
+    private int[] counts;
+    private int size;
+
+    /** n-gram の位置 + 1 を格納する索引。0 は空きを表す */
+    private int[] slots;
+
+    NGramTable(int order) {
+        this.order = order;
+        this.keys = new int[INITIAL_CAPACITY * order];
+        this.hashes = new long[INITIAL_CAPACITY];
+        this.counts = new int[INITIAL_CAPACITY];
+        this.slots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    int order() {
+        return order;
+    }
+
+    /**
+     * @return 異なる n-gram の数
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 指定された位置の n-gram の出現頻度を 1 増やします。
+     *
+     * @param ids    単語 ID の配列
+     * @param offset n-gram の先頭の単語 ID の位置
+     * @param hash   {@link #hash(long)} で仕上げた n-gram のハッシュ値
+     */
+    void increment(int[] ids, int offset, long hash) {
+        int mask = slots.length - 1;
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            int entry = slots[i] - 1;
+            if (entry < 0) {
+                if (size == counts.length) {
+                    grow();
+                    increment(ids, offset, hash);
+                    return;
+                }
+
+                System.arraycopy(ids, offset, keys, size * order, order);
+                hashes[size] = hash;
+                counts[size] = 1;
+                slots[i] = ++size;
+                return;
+            }
+
+            if (hashes[entry] == hash && keyEquals(entry, ids, offset)) {
+                counts[entry]++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param ids  n-gram の単語 ID の列 (長さは n)
+     * @param hash {@link #hash(long)} で仕上げた n-gram のハッシュ値
+     * @return n-gram の出現頻度。含まれていない場合は 0
+     */
+    int countOf(int[] ids, long hash) {
+        int mask = slots.length - 1;
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            int entry = slots[i] - 1;
+            if (entry < 0) {
+                return 0;
+            }
+            if (hashes[entry] == hash && keyEquals(entry, ids, 0)) {
+                return counts[entry];
+            }
+        }
+    }
+
+    int countAt(int entry) {
+        return counts[entry];
+    }
+
+    int idAt(int entry, int position) {
+        return keys[entry * order + position];
+    }
+
+    /**
+     * 出現頻度の降順、出現頻度が同じ場合は単語の列の辞書順で、上位 k 個の n-gram の位置を選びます。
+     * 大きさ k のヒープを使うので、計算量は O(n log k) です。
+     *
+     * @param k     選ぶ n-gram の数
+     * @param words 単語 ID から単語を引く配列
+     * @return 上位 k 個の n-gram の位置
+     */
+    int[] topEntries(int k, String[] words) {
+        // 先頭に最も順位の低い n-gram が来るヒープ
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int heapSize = 0;
+
+        for (int i = 0; i < size && heap.length > 0; i++) {
+            if (heapSize < heap.length) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, words);
+
+            } else if (ranksHigher(i, heap[0], words)) {
+                heap[0] = i;
+                siftDown(heap, heapSize, words);
+            }
+        }
+
+        int[] result = new int[heapSize];
+        while (heapSize > 0) {
+            result[--heapSize] = heap[0];
+            heap[0] = heap[heapSize];
+            siftDown(heap, heapSize, words);
+        }
+        return result;
+    }
+
+    private boolean ranksHigher(int entry1, int entry2, String[] words) {
+        int count1 = counts[entry1];
+        int count2 = counts[entry2];
+        if (count1 != count2) {
+            return count1 > count2;
+        }
+
+        for (int j = 0; j < order; j++) {
+            int c = words[idAt(entry1, j)].compareTo(words[idAt(entry2, j)]);
+            if (c != 0) {
+                return c < 0;
+            }
+        }
+        return false;
+    }
+
+    private void siftUp(int[] heap, int index, String[] words) {
+        int entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksHigher(heap[parent], entry, words)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = entry;
+    }
+
+    private void siftDown(int[] heap, int heapSize, String[] words) {
+        if (heapSize == 0) {
+            return;
+        }
+
+        int entry = heap[0];
+        int index = 0;
+        for (int child; (child = 2 * index + 1) < heapSize; index = child) {
+            if (child + 1 < heapSize && ranksHigher(heap[child], heap[child + 1], words)) {
+                child++;
+            }
+            if (!ranksHigher(entry, heap[child], words)) {
+                break;
+            }
+            heap[index] = heap[child];
+        }
+        heap[index] = entry;
+    }
+
+    private boolean keyEquals(int entry, int[] ids, int offset) {
+        int base = entry * order;
+        for (int j = 0; j < order; j++) {
+            if (keys[base + j] != ids[offset + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        int capacity = counts.length * 2;
+        keys = Arrays.copyOf(keys, capacity * order);
+        hashes = Arrays.copyOf(hashes, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+
+        slots = new int[capacity * 2];
+        int mask = slots.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int i = (int) hashes[entry] & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = entry + 1;
+        }
+    }
+
+    /**
+     * 単語 ID の列に対する多項式ハッシュ値を、末尾の単語から一つずつ先頭側に伸ばして計算します。
+     * 長さ n の n-gram のハッシュ値から、長さ n + 1 の n-gram のハッシュ値を O(1) で求められます。
+     *
+     * @param hash 長さ n の n-gram のハッシュ値 (n = 0 の場合は 0)
+     * @param id   先頭側に追加する単語 ID
+     * @return 長さ n + 1 の n-gram のハッシュ値
+     */
+    static long extend(long hash, int id) {
+        return hash * 0x100000001B3L + id + 1;
+    }
+
+    /**
+     * {@link #extend(long, int)} で計算したハッシュ値の各ビットを拡散させ、索引の位置の計算に使えるようにします。
+     */
+    static long hash(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
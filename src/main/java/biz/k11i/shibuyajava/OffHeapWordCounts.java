@@ -0,0 +1,287 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 単語と出現頻度を Java ヒープの外に格納する、語彙数の非常に大きな文章向けのワードカウント結果です。
+ * <p>
+ * {@link WordCount#wordCounts} は単語ごとに {@link String} と {@link Integer} とエントリを Java ヒープ上に持つため、
+ * 数千万語の語彙では数十 GB の小さなオブジェクトとなり、GC の停止時間が問題になります。このクラスは単語を
+ * UTF-8 のバイト列として {@link java.nio.ByteBuffer#allocateDirect(int) ダイレクトバッファ} または
+ * メモリマップした一時ファイル上のアリーナに格納し、オープンアドレス法の索引と出現頻度も同じく Java ヒープの外に置きます。
+ * 一語あたりの使用量は、索引の 16 バイト × 1.33 から 2 倍と、単語の UTF-8 のバイト数 + 1 バイト程度です。
+ * 単語を UTF-8 で格納するため、対になっていないサロゲートは {@link String#getBytes(java.nio.charset.Charset)} と同じく
+ * '?' に置き換わります。
+ * </p>
+ * <ul>
+ * <li>{@link #wordCounts()} は読み取り専用の {@link Map} として、単語を参照したときに初めて {@link String} を生成します。</li>
+ * <li>{@link #topWords(int)} / {@link #topEntries(int)} は、出現頻度の順に上位 k 個を選びます。
+ * 同じ出現頻度の単語は {@link WordCount#top3Words} と同じく単語の昇順に並べます。</li>
+ * </ul>
+ * <p>
+ * 確保したメモリは、このオブジェクトがガーベージコレクトされると解放されます。
+ * ワードカウントが完了した後は、複数のスレッドから同時に参照できます。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public final class OffHeapWordCounts {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OffHeapWordTable table;
+    private final long elapsedMillis;
+
+    private OffHeapWordCounts(OffHeapWordTable table, long elapsedMillis) {
+        this.table = table;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * {@link WordCount#countWords(Reader)} と同じワードカウントを行い、結果をダイレクトバッファに格納します。
+     * Reader は閉じません。
+     *
+     * @param reader ワードカウント対象の文章を読み込む Reader
+     * @return ワードカウント結果
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public static OffHeapWordCounts countWords(Reader reader) throws IOException {
+        return countWords(reader, WordNormalizer.DEFAULT, new OffHeapWordTable(OffHeapWordTable.Allocator.DIRECT));
+    }
+
+    /**
+     * {@link WordCount#countWords(Reader)} と同じワードカウントを行い、結果を指定されたディレクトリの
+     * 一時ファイルにメモリマップして格納します。一時ファイルは作成した直後に削除するため、ディレクトリには残りません。
+     * Reader は閉じません。
+     *
+     * @param reader    ワードカウント対象の文章を読み込む Reader
+     * @param directory 一時ファイルを作成するディレクトリ
+     * @return ワードカウント結果
+     * @throws IOException 読み込み、または一時ファイルの作成に失敗した場合
+     */
+    public static OffHeapWordCounts countWords(Reader reader, Path directory) throws IOException {
+        return countWords(reader, WordNormalizer.DEFAULT, new OffHeapWordTable(OffHeapWordTable.Allocator.mapped(directory)));
+    }
+
+    /**
+     * {@link WordCount#countWords(String, WordNormalizer)} と同じワードカウントを行い、結果をダイレクトバッファに格納します。
+     * Reader は閉じません。
+     *
+     * @param reader     ワードカウント対象の文章を読み込む Reader
+     * @param normalizer 各単語の正規化の方法
+     * @return ワードカウント結果
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public static OffHeapWordCounts countWords(Reader reader, WordNormalizer normalizer) throws IOException {
+        return countWords(reader, normalizer, new OffHeapWordTable(OffHeapWordTable.Allocator.DIRECT));
+    }
+
+    private static OffHeapWordCounts countWords(Reader reader, WordNormalizer normalizer, OffHeapWordTable table)
+            throws IOException {
+        WordCountTimer timer = new WordCountTimer();
+
+        try {
+            WordScanner scanner = new WordScanner(table, normalizer);
+            char[] buffer = new char[BUFFER_SIZE];
+            for (int n; (n = reader.read(buffer)) >= 0; ) {
+                scanner.feed(buffer, 0, n);
+                timer.charsProcessed(n);
+            }
+            scanner.finish();
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        timer.tokens(table.tokens());
+        return new OffHeapWordCounts(table, timer.finish(viewOf(table)));
+    }
+
+    /**
+     * @param word 単語
+     * @return 単語の出現頻度。含まれていない場合は 0
+     */
+    public int countOf(String word) {
+        return table.countOf(word);
+    }
+
+    /**
+     * @return 語彙数
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * @return Java ヒープの外に確保したバイト数
+     */
+    public long offHeapBytes() {
+        return table.offHeapBytes();
+    }
+
+    /**
+     * @return ワードカウントの処理に要した時間 (ミリ秒)
+     */
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 各単語の出現頻度を、Java ヒープの外のテーブルを参照する読み取り専用の {@link Map} として返します。
+     * 反復の順序は不定です。
+     *
+     * @return 各単語の出現頻度
+     */
+    public Map<String, Integer> wordCounts() {
+        return viewOf(table);
+    }
+
+    private static Map<String, Integer> viewOf(final OffHeapWordTable table) {
+        return new AbstractMap<String, Integer>() {
+            @Override
+            public int size() {
+                return table.size();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && table.countOf((String) key) > 0;
+            }
+
+            @Override
+            public Integer get(Object key) {
+                if (!(key instanceof String)) {
+                    return null;
+                }
+                int count = table.countOf((String) key);
+                return count > 0 ? count : null;
+            }
+
+            @Override
+            public Set<Entry<String, Integer>> entrySet() {
+                return new AbstractSet<Entry<String, Integer>>() {
+                    @Override
+                    public Iterator<Entry<String, Integer>> iterator() {
+                        return new SlotIterator(table);
+                    }
+
+                    @Override
+                    public int size() {
+                        return table.size();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return 最頻出する単語の上位 3 個
+     * @see WordCount#top3Words
+     */
+    public List<String> top3Words() {
+        return topWords(3);
+    }
+
+    /**
+     * 出現頻度の降順、出現頻度が同じ場合は単語の昇順で、上位 k 個の単語を返します。
+     *
+     * @param k 単語の数
+     * @return 最頻出する単語の上位 k 個
+     */
+    public List<String> topWords(int k) {
+        checkK(k);
+        return table.topWords(k);
+    }
+
+    /**
+     * 出現頻度の降順、出現頻度が同じ場合は単語の昇順で、上位 k 個の単語とその出現頻度を返します。
+     *
+     * @param k 単語の数
+     * @return 最頻出する単語の上位 k 個とその出現頻度
+     */
+    public List<Map.Entry<String, Integer>> topEntries(int k) {
+        checkK(k);
+
+        int[] slots = table.topSlots(k);
+        List<Map.Entry<String, Integer>> result = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(table.wordAt(slot), table.countAt(slot)));
+        }
+        return result;
+    }
+
+    /**
+     * 全ての単語を Java ヒープ上に複製し、{@link WordCount} に変換します。{@link WordCount#text} は null となります。
+     *
+     * @return ワードカウント結果
+     */
+    public WordCount toWordCount() {
+        WordCountMap copy = new WordCountMap(table.size());
+        for (Map.Entry<String, Integer> entry : wordCounts().entrySet()) {
+            copy.add(entry.getKey(), entry.getValue());
+        }
+        return new WordCount(copy, elapsedMillis);
+    }
+
+    private static void checkK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k には 0 以上の値を指定してください: " + k);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapWordCounts{size=" + size() + ", offHeapBytes=" + offHeapBytes() + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+
+    /**
+     * 索引のスロットの順に、空きでないスロットの単語を取り出します。
+     */
+    private static class SlotIterator implements Iterator<Map.Entry<String, Integer>> {
+        private final OffHeapWordTable table;
+        private int next;
+
+        SlotIterator(OffHeapWordTable table) {
+            this.table = table;
+            this.next = advance(0);
+        }
+
+        private int advance(int from) {
+            while (from < table.capacity() && table.isEmptyAt(from)) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < table.capacity();
+        }
+
+        @Override
+        public Map.Entry<String, Integer> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int slot = next;
+            next = advance(next + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(table.wordAt(slot), table.countAt(slot));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 単語と出現頻度を Java ヒープの外に格納するハッシュテーブルです。
+ * <p>
+ * 単語は UTF-8 のバイト列として、長さ (可変長整数) に続けてアリーナに追記します。
+ * アリーナは 64MB ごとのチャンクに分かれており、一つの単語がチャンクをまたぐことはありません。
+ * 索引はオープンアドレス法で、各スロットに単語のハッシュ値 (4 バイト)、出現頻度 (4 バイト)、
+ * アリーナ上の位置 + 1 (8 バイト、0 は空きを表す) を持ちます。索引も 64MB ごとのセグメントに分かれています。
+ * </p>
+ * <p>
+ * ハッシュ値は {@link String#hashCode()} と同じ方法で計算した値なので、{@link WordScanner} が
+ * 文字配列上で計算したハッシュ値をそのまま使えます。Java ヒープ上に保持するのは、チャンクとセグメントの
+ * {@link ByteBuffer} と、単語を UTF-8 に変換するための作業用のバッファだけです。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class OffHeapWordTable implements WordSink {
+    private static final int CHUNK_BITS = 26;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int SLOT_BYTES = 16;
+    private static final int SEGMENT_SLOT_BITS = 22;
+    private static final int SEGMENT_SLOTS = 1 << SEGMENT_SLOT_BITS;
+
+    /** 索引の容量の上限。これを超える語彙は格納できない */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * チャンクと索引のセグメントを確保します。
+     */
+    abstract static class Allocator {
+        abstract ByteBuffer allocate(int bytes);
+
+        /** {@link ByteBuffer#allocateDirect(int)} で確保します */
+        static final Allocator DIRECT = new Allocator() {
+            @Override
+            ByteBuffer allocate(int bytes) {
+                return ByteBuffer.allocateDirect(bytes);
+            }
+        };
+
+        /**
+         * 指定されたディレクトリに一時ファイルを作成し、メモリマップして確保します。
+         * 一時ファイルはマップした直後に削除するため、マップしたメモリがガーベージコレクトされると領域も解放されます。
+         */
+        static Allocator mapped(final Path directory) {
+            return new Allocator() {
+                @Override
+                ByteBuffer allocate(int bytes) {
+                    try {
+                        Path file = Files.createTempFile(directory, "words", ".tmp");
+                        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+                            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                        }
+
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        }
+    }
+
+    private final Allocator allocator;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer chunk;
+
+    private ByteBuffer[] segments;
+    private int capacity;
+    private int size;
+    private int threshold;
+
+    /** 数えた単語の総数 */
+    private long tokens;
+
+    /** 単語を数えるときに、単語を UTF-8 に変換するための作業用のバッファ。参照時は使わない */
+    private byte[] scratch = new byte[64];
+
+    OffHeapWordTable(Allocator allocator) {
+        this.allocator = allocator;
+        this.segments = allocateIndex(INITIAL_CAPACITY);
+        this.capacity = INITIAL_CAPACITY;
+        this.threshold = INITIAL_CAPACITY / 4 * 3;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long tokens() {
+        return tokens;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Java ヒープの外に確保したバイト数
+     */
+    long offHeapBytes() {
+        long bytes = (long) capacity * SLOT_BYTES;
+        for (ByteBuffer c : chunks) {
+            bytes += c.capacity();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void accept(char[] chars, int length, int hash) {
+        increment(hash, encode(chars, length));
+    }
+
+    @Override
+    public void accept(String word) {
+        increment(word.hashCode(), encode(word));
+    }
+
+    /**
+     * 単語の出現頻度を返します。作業用のバッファを使わないため、数え終わった後は複数のスレッドから同時に呼び出せます。
+     *
+     * @param word 単語
+     * @return 単語の出現頻度。含まれていない場合は 0
+     */
+    int countOf(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int slot = find(word.hashCode(), bytes, bytes.length);
+        return slot < 0 ? 0 : countAt(slot);
+    }
+
+    private void increment(int hash, int length) {
+        tokens++;
+        int mask = capacity - 1;
+        for (int i = WordCountMap.mix(hash) & mask; ; i = (i + 1) & mask) {
+            ByteBuffer segment = segments[i >>> SEGMENT_SLOT_BITS];
+            int position = (i & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+
+            long keyRef = segment.getLong(position + 8);
+            if (keyRef == 0) {
+                segment.putInt(position, hash);
+                segment.putInt(position + 4, 1);
+                segment.putLong(position + 8, append(length) + 1);
+                if (++size > threshold) {
+                    rehash();
+                }
+                return;
+            }
+
+            if (segment.getInt(position) == hash && keyEquals(keyRef - 1, scratch, length)) {
+                segment.putInt(position + 4, segment.getInt(position + 4) + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * UTF-8 のバイト列で表された単語を探します。
+     *
+     * @return 単語のスロット。含まれていない場合は -1
+     */
+    private int find(int hash, byte[] bytes, int length) {
+        int mask = capacity - 1;
+        for (int i = WordCountMap.mix(hash) & mask; ; i = (i + 1) & mask) {
+            long keyRef = keyRefAt(i);
+            if (keyRef == 0) {
+                return -1;
+            }
+            if (hashAt(i) == hash && keyEquals(keyRef - 1, bytes, length)) {
+                return i;
+            }
+        }
+    }
+
+    boolean isEmptyAt(int slot) {
+        return keyRefAt(slot) == 0;
+    }
+
+    int countAt(int slot) {
+        return segments[slot >>> SEGMENT_SLOT_BITS].getInt((slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES + 4);
+    }
+
+    private int hashAt(int slot) {
+        return segments[slot >>> SEGMENT_SLOT_BITS].getInt((slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES);
+    }
+
+    private long keyRefAt(int slot) {
+        return segments[slot >>> SEGMENT_SLOT_BITS].getLong((slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES + 8);
+    }
+
+    /**
+     * @param slot 空きでないスロット
+     * @return スロットの単語
+     */
+    String wordAt(int slot) {
+        long key = keyRefAt(slot) - 1;
+        ByteBuffer c = chunks.get((int) (key >>> CHUNK_BITS));
+        int position = (int) key & (CHUNK_SIZE - 1);
+
+        int length = readLength(c, position);
+        position += varIntSize(length);
+
+        byte[] bytes = new byte[length];
+        for (int j = 0; j < length; j++) {
+            bytes[j] = c.get(position + j);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 出現頻度の降順、出現頻度が同じ場合は単語の昇順 ({@link String#compareTo(String)} の順) で、
+     * 上位 k 個の単語のスロットを選びます。大きさ k のヒープを使うので、計算量は O(n log k) です。
+     *
+     * @param k 選ぶ単語の数
+     * @return 上位 k 個の単語のスロット。順位の順に並ぶ
+     */
+    int[] topSlots(int k) {
+        // 先頭に最も順位の低いスロットが来るヒープ
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int heapSize = 0;
+
+        for (int i = 0; i < capacity && heap.length > 0; i++) {
+            if (isEmptyAt(i)) {
+                continue;
+            }
+
+            if (heapSize < heap.length) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++);
+
+            } else if (ranksHigher(i, heap[0])) {
+                heap[0] = i;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        int[] result = new int[heapSize];
+        while (heapSize > 0) {
+            result[--heapSize] = heap[0];
+            heap[0] = heap[heapSize];
+            siftDown(heap, heapSize);
+        }
+        return result;
+    }
+
+    /**
+     * @param k 選ぶ単語の数
+     * @return 上位 k 個の単語
+     */
+    List<String> topWords(int k) {
+        int[] slots = topSlots(k);
+        String[] words = new String[slots.length];
+        for (int j = 0; j < slots.length; j++) {
+            words[j] = wordAt(slots[j]);
+        }
+
+        ArrayList<String> list = new ArrayList<>(words.length);
+        Collections.addAll(list, words);
+        return list;
+    }
+
+    private boolean ranksHigher(int slot1, int slot2) {
+        int count1 = countAt(slot1);
+        int count2 = countAt(slot2);
+        return count1 > count2 || (count1 == count2 && compareWords(keyRefAt(slot1) - 1, keyRefAt(slot2) - 1) < 0);
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksHigher(heap[parent], slot)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        if (heapSize == 0) {
+            return;
+        }
+
+        int slot = heap[0];
+        int index = 0;
+        for (int child; (child = 2 * index + 1) < heapSize; index = child) {
+            if (child + 1 < heapSize && ranksHigher(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksHigher(slot, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+        }
+        heap[index] = slot;
+    }
+
+    /**
+     * アリーナ上の二つの単語を、{@link String#compareTo(String)} と同じ UTF-16 のコード単位の順で比較します。
+     * <p>
+     * UTF-8 のバイト列の順はコードポイントの順と一致し、UTF-16 の順と異なるのは U+E000 から U+FFFF の文字と
+     * 補助文字 (サロゲートペアで表す文字) を比べる場合だけです。最初に異なる文字がこの組み合わせの場合だけ、順序を反転させます。
+     * </p>
+     */
+    private int compareWords(long key1, long key2) {
+        ByteBuffer c1 = chunks.get((int) (key1 >>> CHUNK_BITS));
+        ByteBuffer c2 = chunks.get((int) (key2 >>> CHUNK_BITS));
+        int p1 = (int) key1 & (CHUNK_SIZE - 1);
+        int p2 = (int) key2 & (CHUNK_SIZE - 1);
+
+        int length1 = readLength(c1, p1);
+        int length2 = readLength(c2, p2);
+        p1 += varIntSize(length1);
+        p2 += varIntSize(length2);
+
+        int limit = Math.min(length1, length2);
+        for (int j = 0; j < limit; j++) {
+            int b1 = c1.get(p1 + j) & 0xff;
+            int b2 = c2.get(p2 + j) & 0xff;
+            if (b1 == b2) {
+                continue;
+            }
+
+            // 異なる文字の先頭バイトまで戻る (共通部分なので両方とも同じ位置)
+            int start = j;
+            while (start > 0 && (c1.get(p1 + start) & 0xc0) == 0x80) {
+                start--;
+            }
+            int lead1 = c1.get(p1 + start) & 0xff;
+            int lead2 = c2.get(p2 + start) & 0xff;
+            boolean upperBmp1 = lead1 == 0xee || lead1 == 0xef;
+            boolean upperBmp2 = lead2 == 0xee || lead2 == 0xef;
+            if (upperBmp1 && lead2 >= 0xf0) {
+                return 1;
+            }
+            if (upperBmp2 && lead1 >= 0xf0) {
+                return -1;
+            }
+            return b1 - b2;
+        }
+        return length1 - length2;
+    }
+
+    /**
+     * アリーナ上の単語が、UTF-8 のバイト列で表された単語と等しいかどうかを判定します。
+     */
+    private boolean keyEquals(long key, byte[] bytes, int length) {
+        ByteBuffer c = chunks.get((int) (key >>> CHUNK_BITS));
+        int position = (int) key & (CHUNK_SIZE - 1);
+
+        if (readLength(c, position) != length) {
+            return false;
+        }
+        position += varIntSize(length);
+
+        for (int j = 0; j < length; j++) {
+            if (c.get(position + j) != bytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 作業用のバッファの先頭 {@code length} バイト (UTF-8 に変換済みの単語) を、長さの可変長整数に続けて
+     * アリーナの末尾に追記します。現在のチャンクに収まらない場合は新しいチャンクを確保してから追記します。
+     * 単語の検索は行わないので、呼び出し元で未登録であることを確認してください。
+     *
+     * @param length 追記する単語のバイト数
+     * @return 追記した単語のキー。上位ビットがチャンクの番号、下位 {@value #CHUNK_BITS} ビットがチャンク内の位置で、
+     * 索引にはこの値 + 1 を格納します
+     */
+    private long append(int length) {
+        int required = varIntSize(length) + length;
+        if (required > CHUNK_SIZE) {
+            throw new IllegalArgumentException("64MB を超える単語は格納できません");
+        }
+
+        if (chunk == null || chunk.remaining() < required) {
+            chunk = allocator.allocate(CHUNK_SIZE);
+            chunks.add(chunk);
+        }
+
+        long key = ((long) (chunks.size() - 1) << CHUNK_BITS) | chunk.position();
+        for (int value = length; ; value >>>= 7) {
+            if ((value & ~0x7f) == 0) {
+                chunk.put((byte) value);
+                break;
+            }
+            chunk.put((byte) ((value & 0x7f) | 0x80));
+        }
+        chunk.put(scratch, 0, length);
+        return key;
+    }
+
+    /**
+     * アリーナ上の単語の長さ (可変長整数) を読み込みます。
+     */
+    private static int readLength(ByteBuffer chunk, int position) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = chunk.get(position++);
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return length;
+            }
+        }
+    }
+
+    private static int varIntSize(int value) {
+        int n = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * 文字配列上の単語を、{@link String#getBytes(java.nio.charset.Charset)} と同じく UTF-8 に変換して
+     * 作業用のバッファに格納します。対になっていないサロゲートは '?' に置き換えます。
+     *
+     * @return 変換後のバイト数
+     */
+    private int encode(char[] chars, int length) {
+        if (scratch.length < length * 3) {
+            scratch = new byte[Math.max(length * 3, scratch.length * 2)];
+        }
+
+        byte[] out = scratch;
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = chars[i];
+            if (ch < 0x80) {
+                out[n++] = (byte) ch;
+
+            } else if (ch < 0x800) {
+                out[n++] = (byte) (0xc0 | (ch >> 6));
+                out[n++] = (byte) (0x80 | (ch & 0x3f));
+
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                int cp = Character.toCodePoint(ch, chars[++i]);
+                out[n++] = (byte) (0xf0 | (cp >> 18));
+                out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                out[n++] = (byte) (0x80 | (cp & 0x3f));
+
+            } else if (Character.isSurrogate(ch)) {
+                out[n++] = '?';
+
+            } else {
+                out[n++] = (byte) (0xe0 | (ch >> 12));
+                out[n++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                out[n++] = (byte) (0x80 | (ch & 0x3f));
+            }
+        }
+        return n;
+    }
+
+    private int encode(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        if (scratch.length < bytes.length) {
+            scratch = new byte[Math.max(bytes.length, scratch.length * 2)];
+        }
+        System.arraycopy(bytes, 0, scratch, 0, bytes.length);
+        return bytes.length;
+    }
+
+    private ByteBuffer[] allocateIndex(int capacity) {
+        ByteBuffer[] index = new ByteBuffer[Math.max(1, capacity >>> SEGMENT_SLOT_BITS)];
+        for (int s = 0; s < index.length; s++) {
+            // 確保したメモリは 0 で初期化されている
+            index[s] = allocator.allocate(Math.min(capacity, SEGMENT_SLOTS) * SLOT_BYTES);
+        }
+        return index;
+    }
+
+    private void rehash() {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("語彙数が格納できる上限を超えました: " + size);
+        }
+
+        ByteBuffer[] oldSegments = segments;
+        int oldCapacity = capacity;
+
+        capacity = oldCapacity * 2;
+        threshold = capacity / 4 * 3;
+        segments = allocateIndex(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldCapacity; j++) {
+            ByteBuffer oldSegment = oldSegments[j >>> SEGMENT_SLOT_BITS];
+            int oldPosition = (j & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            long keyRef = oldSegment.getLong(oldPosition + 8);
+            if (keyRef == 0) {
+                continue;
+            }
+
+            int hash = oldSegment.getInt(oldPosition);
+            int i = WordCountMap.mix(hash) & mask;
+            while (keyRefAt(i) != 0) {
+                i = (i + 1) & mask;
+            }
+
+            ByteBuffer segment = segments[i >>> SEGMENT_SLOT_BITS];
+            int position = (i & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+            segment.putInt(position, hash);
+            segment.putInt(position + 4, oldSegment.getInt(oldPosition + 4));
+            segment.putLong(position + 8, keyRef);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package biz.k11i.shibuyajava;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving アルゴリズムにより、固定個数のカウンタで頻出する単語 (heavy hitters) を追跡します。
+ * <p>
+ * カウンタが埋まっている状態で新しい単語が現れると、最も出現頻度の小さい単語のカウンタを引き継ぎます。
+ * このとき引き継いだ値を、その単語の誤差として記録します。
+ * 追跡中の単語の出現頻度 c と誤差 e について、真の出現頻度は c - e 以上 c 以下となり、
+ * e は「総単語数 / カウンタの数」を超えません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class SpaceSaving {
+    /** 単語からスロット番号 + 1 への対応 */
+    private final WordCountMap index;
+
+    private final String[] words;
+    private final long[] counts;
+    private final long[] errors;
+
+    /** 出現頻度が最も小さいスロットが先頭に来るヒープと、各スロットのヒープ上の位置 */
+    private final int[] heap;
+    private final int[] positions;
+    private int size;
+
+    /**
+     * @param capacity 追跡する単語の数
+     */
+    SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("追跡する単語の数には 1 以上の値を指定してください: " + capacity);
+        }
+
+        index = new WordCountMap(capacity);
+        words = new String[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        positions = new int[capacity];
+    }
+
+    /**
+     * 文字配列上の単語の出現頻度を 1 加算します。
+     *
+     * @param chars  単語を含む文字配列
+     * @param length 単語の長さ
+     * @param hash   {@link String#hashCode()} と同じ方法で計算した単語のハッシュ値
+     */
+    void increment(char[] chars, int length, int hash) {
+        int slot = index.countOf(chars, length, hash) - 1;
+        if (slot >= 0) {
+            counts[slot]++;
+            siftDown(positions[slot]);
+            return;
+        }
+
+        insert(new String(chars, 0, length));
+    }
+
+    /**
+     * 単語の出現頻度を 1 加算します。
+     *
+     * @param word 単語
+     */
+    void increment(String word) {
+        int slot = index.countOf(word) - 1;
+        if (slot >= 0) {
+            counts[slot]++;
+            siftDown(positions[slot]);
+            return;
+        }
+
+        insert(word);
+    }
+
+    /**
+     * @return 追跡中の各単語の出現頻度 (真の出現頻度の上限)
+     */
+    Map<String, Long> counts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int slot = 0; slot < size; slot++) {
+            result.put(words[slot], counts[slot]);
+        }
+        return result;
+    }
+
+    /**
+     * @return 追跡中の各単語の誤差 (出現頻度が真の値を上回っている可能性のある量)
+     */
+    Map<String, Long> errors() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int slot = 0; slot < size; slot++) {
+            result.put(words[slot], errors[slot]);
+        }
+        return result;
+    }
+
+    /**
+     * 追跡していない単語の真の出現頻度は、この値を超えません。
+     *
+     * @return カウンタが埋まっている場合は最も小さい出現頻度、空きがある場合は 0
+     */
+    long minCount() {
+        return size < words.length ? 0 : counts[heap[0]];
+    }
+
+    /**
+     * @return 追跡する単語の数
+     */
+    int capacity() {
+        return words.length;
+    }
+
+    private void insert(String word) {
+        if (size < words.length) {
+            int slot = size++;
+            words[slot] = word;
+            counts[slot] = 1;
+            errors[slot] = 0;
+            index.put(word, slot + 1);
+
+            heap[slot] = slot;
+            siftUp(slot);
+            return;
+        }
+
+        // 最も出現頻度の小さい単語のカウンタを引き継ぐ
+        int slot = heap[0];
+        index.remove(words[slot]);
+
+        words[slot] = word;
+        errors[slot] = counts[slot];
+        counts[slot]++;
+        index.put(word, slot + 1);
+
+        siftDown(0);
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            positions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        for (int child; (child = 2 * position + 1) < size; position = child) {
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[slot] <= counts[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[position]] = position;
+        }
+        heap[position] = slot;
+        positions[slot] = position;
+    }
+}
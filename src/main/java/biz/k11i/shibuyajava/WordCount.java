@@ -1,7 +1,17 @@
 package biz.k11i.shibuyajava;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * 指定された文字列で利用されている各単語の頻度を計測する機能を提供します。
@@ -9,7 +19,27 @@ import java.util.regex.Pattern;
  * @author KOMIYA Atsushi
  */
 public class WordCount {
-    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+    /** テキストファイルを一度にメモリマップする大きさ */
+    private static final long MAPPED_REGION_SIZE = 1L << 30;
+
+    /** 出現頻度の降順、出現頻度が同じ場合は単語の昇順に並べます */
+    static final Comparator<Map.Entry<String, Integer>> RANKING = new Comparator<Map.Entry<String, Integer>>() {
+        @Override
+        public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+            int count1 = o1.getValue();
+            int count2 = o2.getValue();
+
+            if (count1 > count2) {
+                return -1;
+
+            } else if (count1 < count2) {
+                return 1;
+
+            } else {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        }
+    };
 
     /** 各単語の出現頻度を保持します */
     public Map<String, Integer> wordCounts;
@@ -17,27 +47,228 @@ public class WordCount {
     /** 最頻出する単語の上位３つを保持します */
     public List<String> top3Words;
 
-    /** ワードカウントの処理に要した時間 (ミリ秒) を保持します */
+    /** 最頻出する単語の上位 k 個を保持します。{@link #countWords(String, int)} で k を指定した場合のみ設定されます */
+    public List<String> topWords;
+
+    /**
+     * ワードカウントの処理に要した時間 (ミリ秒) を保持します。
+     * より細かい粒度の計測結果は {@link #countWords(String, WordCountMetrics.Listener)} や
+     * {@link WordCounter#metricsListener(WordCountMetrics.Listener)} で指定したリスナで受け取れます。
+     */
     public long elapsedMillis;
 
-    /** 元の文章を保持します */
+    /** 元の文章を保持します。文章を逐次読み込んでワードカウントした場合は、指定しない限り null となります */
     public String text;
 
-    /** YAML からのデシリアライズでデフォルトコンストラクタが必要となります。 */
+    /** {@link #merge(WordCount)} / {@link #subtract(WordCount)} で出現頻度を更新するテーブル */
+    private WordCountMap table;
+
+    /** {@link #merge(WordCount)} / {@link #subtract(WordCount)} で上位の単語を更新するための、順位順に並んだ単語の集合 */
+    private TreeSet<String> ranking;
+
+    /** {@link #topWords} に保持する単語の数 */
+    private int topK = -1;
+
+    /**
+     * YAML からのデシリアライズでデフォルトコンストラクタが必要となります。
+     * 単語を一つも含まないワードカウント結果として、{@link #merge(WordCount)} の起点にも使えます。
+     */
     public WordCount() {
     }
 
-    private WordCount(long begin, String text, Map<String, Integer> wordCounts) {
-        this.elapsedMillis = System.currentTimeMillis() - begin;
+    WordCount(WordCountTimer timer, String text, Map<String, Integer> wordCounts) {
+        this(timer, text, wordCounts, -1, null);
+    }
+
+    /**
+     * @param k {@link #topWords} に設定する単語の数。負の値の場合は {@link #topWords} を設定しない
+     */
+    WordCount(WordCountTimer timer, String text, Map<String, Integer> wordCounts, int k) {
+        this(timer, text, wordCounts, k, null);
+    }
+
+    /**
+     * @param k           {@link #topWords} に設定する単語の数。負の値の場合は {@link #topWords} を設定しない
+     * @param symbolTable 各単語の {@link String} を共有する記号表。null の場合は共有しない
+     */
+    WordCount(WordCountTimer timer, String text, Map<String, Integer> wordCounts, int k, WordSymbolTable symbolTable) {
+        timer.scanned();
+        if (symbolTable != null && wordCounts instanceof WordCountMap) {
+            ((WordCountMap) wordCounts).internWords(symbolTable);
+        }
+        timer.interned();
+
         this.text = text;
         this.wordCounts = wordCounts;
+        this.topK = k;
 
-        List<Map.Entry<String, Integer>> wordCountEntries = new ArrayList<>(wordCounts.entrySet());
-        Collections.sort(wordCountEntries, new Comparator<Map.Entry<String, Integer>>() {
+        List<String> words = selectTopWords(wordCounts, Math.max(k, 3));
+        // k を指定しない場合は高々 3 個の単語が選ばれるので、そのまま使う
+        top3Words = k < 0 ? words : new ArrayList<>(words.subList(0, Math.min(3, words.size())));
+        if (k >= 0) {
+            topWords = new ArrayList<>(words.subList(0, Math.min(k, words.size())));
+        }
+
+        this.elapsedMillis = timer.finish(wordCounts);
+    }
+
+    /**
+     * 保存されていたワードカウント結果を復元します。{@link #text} は null となります。
+     */
+    WordCount(WordCountMap wordCounts, long elapsedMillis) {
+        this.wordCounts = wordCounts;
+        this.elapsedMillis = elapsedMillis;
+        this.top3Words = selectTopWords(wordCounts, 3);
+    }
+
+    /**
+     * 複数の文書をそれぞれワードカウントします。
+     * <p>
+     * 各文書に {@link #countWords(String)} を呼び出した場合と同じ結果になりますが、
+     * ツイートやログの一行のような短い文書を大量に扱う場合に、文書ごとに生じる固定の処理を減らします。
+     * </p>
+     *
+     * @param texts ワードカウント対象の文書
+     * @return 文書ごとのワードカウント結果
+     * @see WordCounter#count(CharSequence)
+     */
+    public static List<WordCount> countAll(Iterable<String> texts) {
+        return countAll(texts, null);
+    }
+
+    /**
+     * 複数の文書をそれぞれワードカウントし、全ての文書の出現頻度を合算したものを指定されたワードカウント結果に加算します。
+     *
+     * @param texts     ワードカウント対象の文書
+     * @param aggregate 全ての文書の出現頻度を加算するワードカウント結果。null の場合は合算しない
+     * @return 文書ごとのワードカウント結果
+     * @see #merge(WordCount)
+     */
+    public static List<WordCount> countAll(Iterable<String> texts, WordCount aggregate) {
+        long begin = System.nanoTime();
+
+        WordCounter counter = new WordCounter().retainText(true);
+        WordCountMap total = aggregate != null ? new WordCountMap() : null;
+
+        List<WordCount> results = new ArrayList<>();
+        for (String text : texts) {
+            WordCount result = counter.count(text);
+            results.add(result);
+
+            if (total != null) {
+                total.addAll((WordCountMap) result.wordCounts);
+            }
+        }
+
+        if (aggregate != null) {
+            aggregate.merge(new WordCount(total, (System.nanoTime() - begin) / 1000000));
+        }
+        return results;
+    }
+
+    /**
+     * 指定されたワードカウント結果の出現頻度を、このワードカウント結果に加算します。
+     * <p>
+     * 上位の単語は、出現頻度が変化した単語についてのみ順位を更新するため、計算量は
+     * 加算する単語の数を m、語彙数を n として O(m log n) です。
+     * ただし、このオブジェクトに対して最初に merge / subtract を呼び出したときは、
+     * 既存の単語の順位付けに O(n log n) かかります。
+     * </p>
+     * <p>
+     * 複数のスレッドから同じオブジェクトに対して同時に呼び出すことができます。
+     * 加算後の {@link #text} は null となり、{@link #elapsedMillis} には双方の処理時間の合計が設定されます。
+     * </p>
+     *
+     * @param other 加算するワードカウント結果
+     * @return このワードカウント結果
+     */
+    public WordCount merge(WordCount other) {
+        Map<String, Integer> delta = other.copyWordCounts();
+
+        synchronized (this) {
+            prepareRanking();
+            for (Map.Entry<String, Integer> entry : delta.entrySet()) {
+                updateCount(entry.getKey(), entry.getValue());
+            }
+
+            elapsedMillis += other.elapsedMillis;
+            text = null;
+            updateTopWords();
+        }
+
+        return this;
+    }
+
+    /**
+     * 指定されたワードカウント結果の出現頻度を、このワードカウント結果から減算します。
+     * 出現頻度が 0 になった単語は {@link #wordCounts} から取り除かれます。
+     * <p>
+     * スライディングウィンドウで古いバッチの結果を取り除く用途を想定しており、
+     * 計算量や並行性については {@link #merge(WordCount)} と同じです。
+     * </p>
+     *
+     * @param other 減算するワードカウント結果
+     * @return このワードカウント結果
+     * @throws IllegalArgumentException 減算すると出現頻度が負になる単語がある場合
+     */
+    public WordCount subtract(WordCount other) {
+        Map<String, Integer> delta = other.copyWordCounts();
+
+        synchronized (this) {
+            prepareRanking();
+            for (Map.Entry<String, Integer> entry : delta.entrySet()) {
+                if (table.countOf(entry.getKey()) < entry.getValue()) {
+                    throw new IllegalArgumentException(
+                            String.format("単語 '%s' の出現頻度が負になるため減算できません", entry.getKey()));
+                }
+            }
+
+            for (Map.Entry<String, Integer> entry : delta.entrySet()) {
+                updateCount(entry.getKey(), -entry.getValue());
+            }
+
+            elapsedMillis -= other.elapsedMillis;
+            text = null;
+            updateTopWords();
+        }
+
+        return this;
+    }
+
+    synchronized Map<String, Integer> copyWordCounts() {
+        if (wordCounts == null) {
+            return new WordCountMap(0);
+        }
+
+        WordCountMap copy = new WordCountMap(wordCounts.size());
+        copy.putAll(wordCounts);
+        return copy;
+    }
+
+    /**
+     * {@link #wordCounts} の内容から、出現頻度を更新するためのテーブルと順位付けを用意します。
+     */
+    private void prepareRanking() {
+        if (table != null && table == wordCounts && ranking != null) {
+            return;
+        }
+
+        if (wordCounts instanceof WordCountMap) {
+            table = (WordCountMap) wordCounts;
+
+        } else {
+            table = new WordCountMap(wordCounts == null ? 0 : wordCounts.size());
+            if (wordCounts != null) {
+                table.putAll(wordCounts);
+            }
+            wordCounts = table;
+        }
+
+        ranking = new TreeSet<>(new Comparator<String>() {
             @Override
-            public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
-                int count1 = o1.getValue();
-                int count2 = o2.getValue();
+            public int compare(String o1, String o2) {
+                int count1 = table.countOf(o1);
+                int count2 = table.countOf(o2);
 
                 if (count1 > count2) {
                     return -1;
@@ -46,47 +277,321 @@ public class WordCount {
                     return 1;
 
                 } else {
-                    return o1.getKey().compareTo(o2.getKey());
+                    return o1.compareTo(o2);
                 }
             }
-
-            @Override
-            public boolean equals(Object obj) {
-                return false;
-            }
         });
+        ranking.addAll(table.keySet());
+    }
+
+    private void updateCount(String word, int delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        // 順位付けの基準となる出現頻度を変える前に取り除いておく
+        ranking.remove(word);
 
+        if (table.add(word, delta) == 0) {
+            table.remove(word);
+
+        } else {
+            ranking.add(word);
+        }
+    }
+
+    private void updateTopWords() {
         top3Words = new ArrayList<>();
-        for (int i = 0; i < 3 && i < wordCountEntries.size(); i++) {
-            top3Words.add(wordCountEntries.get(i).getKey());
+        topWords = topK >= 0 ? new ArrayList<String>() : null;
+
+        Iterator<String> iterator = ranking.iterator();
+        for (int i = 0; iterator.hasNext() && (i < 3 || i < topK); i++) {
+            String word = iterator.next();
+            if (i < 3) {
+                top3Words.add(word);
+            }
+            if (i < topK) {
+                topWords.add(word);
+            }
         }
     }
 
+    /**
+     * 出現頻度の降順、出現頻度が同じ場合は単語の昇順で、上位 k 個の単語を選びます。
+     * <p>
+     * 全ての単語を整列するのではなく、大きさ k のヒープを使って O(n log k) で選びます。
+     * </p>
+     *
+     * @param wordCounts 各単語の出現頻度
+     * @param k          選ぶ単語の数
+     * @return 上位 k 個の単語
+     */
+    static List<String> selectTopWords(Map<String, Integer> wordCounts, int k) {
+        if (wordCounts instanceof WordCountMap) {
+            return ((WordCountMap) wordCounts).topWords(k);
+        }
+
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+
+        // 先頭に最も順位の低いエントリが来るヒープ
+        PriorityQueue<Map.Entry<String, Integer>> heap
+                = new PriorityQueue<>(Math.min(k, Math.max(wordCounts.size(), 1)), Collections.reverseOrder(RANKING));
+        for (Map.Entry<String, Integer> entry : wordCounts.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(entry);
+
+            } else if (RANKING.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        String[] words = new String[heap.size()];
+        for (int i = words.length - 1; i >= 0; i--) {
+            words[i] = heap.poll().getKey();
+        }
+        return new ArrayList<>(Arrays.asList(words));
+    }
+
     /**
      * 指定された文章をホワイトスペースでトークナイズし、小文字に揃えた状態で
      * 各単語の出現頻度を計測（ワードカウント）します。
+     * <p>
+     * 文章を保持せず、上位の単語を必要になるまで計算しない軽量な結果が必要な場合は
+     * {@link WordFrequencies#countWords(String)} を使ってください。
+     * </p>
      *
      * @param text ワードカウント対象の文章
      * @return ワードカウント結果が含まれている WordCount オブジェクト
      */
     public static WordCount countWords(String text) {
-        long begin = System.currentTimeMillis();
+        return countWords(text, WordNormalizer.DEFAULT);
+    }
+
+    /**
+     * 指定された文章をホワイトスペースでトークナイズし、{@link WordNormalizer} の指定に従って正規化した
+     * 各単語の出現頻度を計測（ワードカウント）します。
+     *
+     * @param text       ワードカウント対象の文章
+     * @param normalizer 各単語の正規化の方法
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     */
+    public static WordCount countWords(String text, WordNormalizer normalizer) {
+        return countWords(text, normalizer, null);
+    }
+
+    /**
+     * {@link #countWords(String)} と同じワードカウントを行い、完了したときに各処理段階の所要時間と処理量をリスナに通知します。
+     *
+     * @param text     ワードカウント対象の文章
+     * @param listener 計測結果を通知するリスナ。null の場合は通知しない
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     */
+    public static WordCount countWords(String text, WordCountMetrics.Listener listener) {
+        return countWords(text, WordNormalizer.DEFAULT, listener);
+    }
 
-        String[] words = WHITESPACES.split(text);
-        Map<String, Integer> wordCounts = new HashMap<>();
+    private static WordCount countWords(String text, WordNormalizer normalizer, WordCountMetrics.Listener listener) {
+        WordCountTimer timer = new WordCountTimer(listener);
 
-        for (String word : words) {
-            word = word.toLowerCase();
+        WordCountMap wordCounts = new WordCountMap();
+        WordScanner scanner = new WordScanner(wordCounts, normalizer);
+        scanner.feed(text);
+        scanner.finish();
+        timer.charsProcessed(text.length());
 
-            Integer count = wordCounts.get(word);
-            if (count == null) {
-                wordCounts.put(word, 1);
+        return new WordCount(timer, text, wordCounts);
+    }
 
-            } else {
-                wordCounts.put(word, count + 1);
+    /**
+     * {@link #countWords(String)} と同じワードカウントを行い、最頻出する単語の上位 k 個を {@link #topWords} に設定します。
+     *
+     * @param text ワードカウント対象の文章
+     * @param k    {@link #topWords} に設定する単語の数
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     */
+    public static WordCount countWords(String text, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k には 0 以上の値を指定してください: " + k);
+        }
+
+        WordCountTimer timer = new WordCountTimer();
+
+        WordCountMap wordCounts = new WordCountMap();
+        WordScanner scanner = new WordScanner(wordCounts);
+        scanner.feed(text);
+        scanner.finish();
+        timer.charsProcessed(text.length());
+
+        return new WordCount(timer, text, wordCounts, k);
+    }
+
+    /**
+     * 指定された {@link Reader} から文章を逐次読み込み、{@link #countWords(String)} と同じワードカウントを行います。
+     * 文章全体をメモリ上に保持しないため、結果の {@link #text} は null となります。
+     * {@link Reader} はクローズしません。
+     *
+     * @param reader 文章の読み込み元
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     * @throws IOException 読み込みに失敗した場合
+     * @see WordCounter
+     */
+    public static WordCount countWords(Reader reader) throws IOException {
+        return new WordCounter()
+                .feed(reader)
+                .finish();
+    }
+
+    /**
+     * 指定された UTF-8 のテキストファイルに対して、{@link #countWords(String)} と同じワードカウントを行います。
+     * 結果の {@link #text} は null となります。
+     *
+     * @param path テキストファイルのパス
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     * @throws IOException 読み込みに失敗した場合
+     * @see #countWords(Path, Charset)
+     */
+    public static WordCount countWords(Path path) throws IOException {
+        return countWords(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 指定されたテキストファイルに対して、{@link #countWords(String)} と同じワードカウントを行います。
+     * 結果の {@link #text} は null となります。
+     * <p>
+     * 文字コードが UTF-8、US-ASCII、ISO-8859-1 のいずれかであれば、ファイルを {@link FileChannel#map} で
+     * メモリマップし、デコードせずにバイト列を直接走査します。
+     * 2GB を超えるファイルは、複数の領域に分けてメモリマップします。
+     * それ以外の文字コードでは、ファイルを逐次デコードしながら読み込みます。
+     * </p>
+     *
+     * @param path    テキストファイルのパス
+     * @param charset テキストファイルの文字コード
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public static WordCount countWords(Path path, Charset charset) throws IOException {
+        if (!ByteWordScanner.supports(charset)) {
+            try (Reader reader = new InputStreamReader(Files.newInputStream(path), charset)) {
+                return countWords(reader);
             }
         }
 
-        return new WordCount(begin, text, wordCounts);
+        return countWordsInMappedFile(path, charset, MAPPED_REGION_SIZE);
+    }
+
+    static WordCount countWordsInMappedFile(Path path, Charset charset, long regionSize) throws IOException {
+        WordCountTimer timer = new WordCountTimer();
+
+        WordCountMap wordCounts = new WordCountMap();
+        ByteWordScanner scanner = new ByteWordScanner(wordCounts, charset);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += regionSize) {
+                scanner.feed(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position)));
+            }
+            timer.bytesProcessed(size);
+        }
+        scanner.finish();
+
+        return new WordCount(timer, null, wordCounts);
+    }
+
+    /**
+     * {@link #countWords(String)} と同じワードカウントを、文章をホワイトスペースの位置で分割して並列に処理します。
+     * <p>
+     * 分割した各区間は {@link ForkJoinPool} のタスクとして個別のテーブルで計測され、最後に合算されます。
+     * 結果は {@link #countWords(String)} と同じになります。
+     * </p>
+     *
+     * @param text        ワードカウント対象の文章
+     * @param parallelism 並列度
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     */
+    public static WordCount countWordsParallel(String text, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("並列度には 1 以上の値を指定してください: " + parallelism);
+        }
+
+        int threshold = Math.max(text.length() / (parallelism * 4), CountTask.MIN_CHUNK_LENGTH);
+        if (parallelism == 1 || text.length() <= threshold) {
+            return countWords(text);
+        }
+
+        WordCountTimer timer = new WordCountTimer();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        WordCountMap wordCounts;
+        try {
+            wordCounts = pool.invoke(new CountTask(text, 0, text.length(), threshold));
+
+        } finally {
+            pool.shutdown();
+        }
+
+        // 各区間では先頭の空文字列を数えないので、文章全体で判断する
+        if (!wordCounts.isEmpty() && WordScanner.isWhitespace(text.charAt(0))) {
+            wordCounts.increment("");
+        }
+        timer.charsProcessed(text.length());
+
+        return new WordCount(timer, text, wordCounts);
+    }
+
+    /**
+     * 文章の区間をホワイトスペースの位置で二分しながら、各区間の単語を数えるタスクです。
+     *
+     * @author KOMIYA Atsushi
+     */
+    private static class CountTask extends RecursiveTask<WordCountMap> {
+        private static final long serialVersionUID = 1L;
+
+        static final int MIN_CHUNK_LENGTH = 64 * 1024;
+
+        private final String text;
+        private final int begin;
+        private final int end;
+        private final int threshold;
+
+        CountTask(String text, int begin, int end, int threshold) {
+            this.text = text;
+            this.begin = begin;
+            this.end = end;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected WordCountMap compute() {
+            int mid = begin + (end - begin) / 2;
+            while (mid < end && !WordScanner.isWhitespace(text.charAt(mid))) {
+                mid++;
+            }
+
+            if (end - begin <= threshold || mid >= end) {
+                WordCountMap wordCounts = new WordCountMap();
+                WordScanner scanner = new WordScanner(wordCounts);
+                scanner.startInMiddle();
+                scanner.feed(text, begin, end);
+                scanner.finish();
+                return wordCounts;
+            }
+
+            CountTask right = new CountTask(text, mid, end, threshold);
+            right.fork();
+            WordCountMap leftCounts = new CountTask(text, begin, mid, threshold).compute();
+            WordCountMap rightCounts = right.join();
+
+            // 語彙の少ない方を多い方に合算する
+            if (leftCounts.size() < rightCounts.size()) {
+                rightCounts.addAll(leftCounts);
+                return rightCounts;
+            }
+
+            leftCounts.addAll(rightCounts);
+            return leftCounts;
+        }
     }
 }
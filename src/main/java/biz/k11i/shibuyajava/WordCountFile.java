@@ -0,0 +1,785 @@
+package biz.k11i.shibuyajava;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * ワードカウント結果をコンパクトなバイナリ形式で読み書きします。
+ * <p>
+ * 単語を UTF-8 のバイト列の辞書順に並べ、一定数ごとのブロックに分けて前方一致圧縮 (front coding) した
+ * 辞書として保存します。ファイルの構成は以下の通りです。整数は特に断りのない限り可変長 (LEB128) で表します。
+ * </p>
+ * <pre>
+ * ヘッダ     : マジックナンバー "WCNT" (4 バイト)、バージョン (1 バイト)、語彙数、ブロックの大きさ、処理時間 (ミリ秒)
+ * ブロック   : 各単語について、直前の単語と共通する先頭のバイト数、残りのバイト数、残りのバイト列、出現頻度
+ *              (ブロックの先頭の単語は、共通する先頭のバイト数を 0 とします)
+ * 索引       : 各ブロックのファイル先頭からの位置 (4 バイト固定長)
+ * トレーラ   : 索引のファイル先頭からの位置 (8 バイト固定長)
+ * </pre>
+ * <p>
+ * {@link #write(WordCount, WritableByteChannel)} / {@link #read(ReadableByteChannel)} はファイルの先頭から
+ * 順に読み書きするため、ソケットなど位置を変更できないチャネルにも使えます。
+ * {@link #read(ReadableByteChannel)} はトレーラまでをちょうど読み込み、それ以降のデータはチャネルに残します。
+ * 出現頻度は int の範囲で読み書きします。
+ * {@link #open(Path)} はファイルをメモリマップし、索引による二分探索とブロック内の走査だけで
+ * 単語の出現頻度を検索します。辞書全体をデシリアライズせず、単語ごとの {@link String} も生成しません。
+ * メモリマップできるファイルの大きさは 2GB までです。
+ * </p>
+ * <p>
+ * {@link WordCount#text} と上位の単語は保存しません。上位の単語は読み込み時に計算し直します。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public final class WordCountFile {
+    private static final byte[] MAGIC = {'W', 'C', 'N', 'T'};
+    private static final int VERSION = 1;
+
+    /** 一つのブロックに含める単語の数 */
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /** UTF-8 のバイト列を符号なしの値として辞書順に比較します */
+    private static final Comparator<byte[]> UNSIGNED_LEXICOGRAPHICAL = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] o1, byte[] o2) {
+            int length = Math.min(o1.length, o2.length);
+            for (int i = 0; i < length; i++) {
+                int c = (o1[i] & 0xff) - (o2[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return o1.length - o2.length;
+        }
+    };
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int blockSize;
+    private final long elapsedMillis;
+    private final int blockCount;
+    private final int indexPosition;
+
+    private WordCountFile(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < MAGIC.length + 1 + 8) {
+            throw new IOException("ワードカウント結果のファイルではありません");
+        }
+        this.buffer = buffer;
+
+        ByteBuffer header = buffer.duplicate();
+        readHeader(new BufferInput(header));
+        this.size = readVarInt(header);
+        this.blockSize = readVarInt(header);
+        this.elapsedMillis = readVarLong(header);
+
+        this.blockCount = (size + blockSize - 1) / blockSize;
+        this.indexPosition = (int) buffer.getLong(buffer.limit() - 8);
+        if (indexPosition < header.position() || indexPosition + 4L * blockCount != buffer.limit() - 8) {
+            throw new IOException("ワードカウント結果のファイルが壊れています");
+        }
+    }
+
+    /**
+     * 指定されたファイルをメモリマップし、単語の出現頻度を検索できるようにします。
+     * ファイルのチャネルはこのメソッドの中で閉じますが、マップしたメモリはこのオブジェクトが
+     * ガーベージコレクトされるまで有効です。
+     *
+     * @param path {@link #write(WordCount, Path)} で書き出したファイルのパス
+     * @return メモリマップしたワードカウント結果
+     * @throws IOException 読み込みに失敗した場合、またはファイルの形式が正しくない場合
+     */
+    public static WordCountFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("2GB を超えるファイルはメモリマップできません: " + path);
+            }
+            return new WordCountFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return 語彙数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 保存されているワードカウント処理に要した時間 (ミリ秒)
+     */
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 指定された単語の出現頻度を、辞書全体をデシリアライズせずに検索します。
+     * 複数のスレッドから同時に呼び出すことができます。
+     *
+     * @param word 検索する単語
+     * @return 単語の出現頻度。含まれていない場合は 0
+     */
+    public int countOf(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer view = buffer.duplicate();
+
+        // 先頭の単語が key 以下である最後のブロックを二分探索する
+        int low = 0;
+        int high = blockCount - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            view.position(blockOffset(mid));
+            readVarInt(view);
+            int length = readVarInt(view);
+
+            int c = compare(view, view.position(), length, key);
+            if (c == 0) {
+                view.position(view.position() + length);
+                return readVarInt(view);
+            }
+
+            if (c < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        if (block < 0) {
+            return 0;
+        }
+
+        view.position(blockOffset(block));
+        byte[] current = new byte[Math.max(key.length, 32)];
+        int entries = Math.min(blockSize, size - block * blockSize);
+        for (int i = 0; i < entries; i++) {
+            int shared = readVarInt(view);
+            int length = readVarInt(view);
+            if (shared + length > current.length) {
+                current = Arrays.copyOf(current, Math.max(shared + length, current.length * 2));
+            }
+            view.get(current, shared, length);
+            int count = readVarInt(view);
+
+            int c = compare(current, shared + length, key);
+            if (c == 0) {
+                return count;
+            }
+            if (c > 0) {
+                break;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 全ての単語をデシリアライズして、ワードカウント結果を復元します。
+     *
+     * @return ワードカウント結果
+     */
+    public WordCount toWordCount() {
+        try {
+            return readBody(new BufferInput(buffer.duplicate()));
+
+        } catch (IOException e) {
+            // メモリ上のバッファからの読み込みでは発生しない
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * ワードカウント結果を指定されたファイルに書き出します。
+     *
+     * @param wordCount 書き出すワードカウント結果
+     * @param path      書き出し先のファイルのパス
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void write(WordCount wordCount, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(wordCount, channel);
+        }
+    }
+
+    /**
+     * ワードカウント結果を指定されたチャネルに書き出します。チャネルは閉じません。
+     *
+     * @param wordCount 書き出すワードカウント結果
+     * @param channel   書き出し先のチャネル
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void write(WordCount wordCount, WritableByteChannel channel) throws IOException {
+        Map<String, Integer> wordCounts = wordCount.wordCounts;
+
+        int size = wordCounts.size();
+        final byte[][] words = new byte[size][];
+        int[] counts = new int[size];
+        Integer[] order = new Integer[size];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : wordCounts.entrySet()) {
+            words[n] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            counts[n] = entry.getValue();
+            order[n] = n;
+            n++;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return UNSIGNED_LEXICOGRAPHICAL.compare(words[o1], words[o2]);
+            }
+        });
+
+        ChannelOutput out = new ChannelOutput(channel);
+        writeHeader(out, size, wordCount.elapsedMillis);
+
+        final int[] blockOffsets = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        BlockWriter blocks = new BlockWriter(out) {
+            @Override
+            void blockStarted(int block, int offset) {
+                blockOffsets[block] = offset;
+            }
+        };
+        for (int i = 0; i < size; i++) {
+            byte[] word = words[order[i]];
+            blocks.add(word, word.length, counts[order[i]]);
+        }
+
+        long indexPosition = out.position();
+        for (int blockOffset : blockOffsets) {
+            out.writeInt(blockOffset);
+        }
+        out.writeLong(indexPosition);
+        out.flush();
+    }
+
+    private static void writeHeader(ChannelOutput out, int size, long elapsedMillis) throws IOException {
+        out.write(MAGIC, 0, MAGIC.length);
+        out.writeByte(VERSION);
+        out.writeVarLong(size);
+        out.writeVarLong(BLOCK_SIZE);
+        out.writeVarLong(Math.max(elapsedMillis, 0));
+    }
+
+    /**
+     * {@link #write(WordCount, WritableByteChannel)} で書き出したワードカウント結果を、
+     * 指定されたチャネルから先頭から順に読み込みます。チャネルは閉じません。
+     * <p>
+     * 索引とトレーラまで読み込んで検証し、トレーラより後ろのデータは読み込みません。
+     * 同じチャネルに続けて書き出された別のデータを、続けて読み込めます。
+     * </p>
+     *
+     * @param channel 読み込み元のチャネル
+     * @return ワードカウント結果
+     * @throws IOException 読み込みに失敗した場合、またはデータの形式が正しくない場合
+     */
+    public static WordCount read(ReadableByteChannel channel) throws IOException {
+        ChannelInput in = new ChannelInput(channel);
+
+        // ヘッダ (可変長の整数は最短で 1 バイト) とトレーラの分は、少なくとも残っている
+        in.readAhead(MAGIC.length + 1 + 3 + 8);
+        return readBody(in);
+    }
+
+    /**
+     * ヘッダからトレーラまでを読み込みます。
+     * <p>
+     * 読み込み元がチャネルの場合にトレーラより後ろを先読みしないよう、少なくとも残っているバイト数を
+     * {@link Input#readAhead(long)} で随時知らせます。
+     * 各単語は少なくとも 3 バイト (共通する先頭のバイト数、残りのバイト数、出現頻度) を占めます。
+     * </p>
+     */
+    private static WordCount readBody(Input in) throws IOException {
+        readHeader(in);
+        long size = in.readVarLong();
+        long blockSize = in.readVarLong();
+        long elapsedMillis = in.readVarLong();
+        if (size > Integer.MAX_VALUE || blockSize < 1 || blockSize > Integer.MAX_VALUE) {
+            throw new IOException("ワードカウント結果のファイルが壊れています");
+        }
+
+        int blockCount = (int) ((size + blockSize - 1) / blockSize);
+        long tailLength = 4L * blockCount + 8;
+        int[] blockOffsets = new int[blockCount];
+
+        WordCountMap wordCounts = new WordCountMap((int) size);
+        byte[] current = new byte[32];
+        for (int i = 0; i < size; i++) {
+            if (i % blockSize == 0) {
+                blockOffsets[(int) (i / blockSize)] = (int) in.position();
+            }
+
+            in.readAhead(3 * (size - i) + tailLength);
+            int shared = (int) in.readVarLong();
+            int length = (int) in.readVarLong();
+            if (shared < 0 || length < 0 || shared + length < 0) {
+                throw new IOException("ワードカウント結果のファイルが壊れています");
+            }
+            if (shared + length > current.length) {
+                current = Arrays.copyOf(current, Math.max(shared + length, current.length * 2));
+            }
+
+            in.readAhead(length + 1 + 3 * (size - i - 1) + tailLength);
+            in.readFully(current, shared, length);
+            long count = in.readVarLong();
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("出現頻度が int の範囲を超えています: " + count);
+            }
+            wordCounts.add(new String(current, 0, shared + length, StandardCharsets.UTF_8), (int) count);
+        }
+
+        long indexPosition = in.position();
+        in.readAhead(tailLength);
+        for (int blockOffset : blockOffsets) {
+            if (in.readInt() != blockOffset) {
+                throw new IOException("ワードカウント結果のファイルの索引が壊れています");
+            }
+        }
+        if (in.readLong() != indexPosition) {
+            throw new IOException("ワードカウント結果のファイルのトレーラが壊れています");
+        }
+
+        return new WordCount(wordCounts, elapsedMillis);
+    }
+
+    private static void readHeader(Input in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic, 0, magic.length);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("ワードカウント結果のファイルではありません");
+        }
+
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("対応していないバージョンです: " + version);
+        }
+    }
+
+    private int blockOffset(int block) {
+        return buffer.getInt(indexPosition + 4 * block);
+    }
+
+    private static int compare(ByteBuffer buffer, int position, int length, byte[] key) {
+        int limit = Math.min(length, key.length);
+        for (int i = 0; i < limit; i++) {
+            int c = (buffer.get(position + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static int compare(byte[] bytes, int length, byte[] key) {
+        int limit = Math.min(length, key.length);
+        for (int i = 0; i < limit; i++) {
+            int c = (bytes[i] & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        return (int) readVarLong(buffer);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 単語を前方一致圧縮しながらブロックに分けて書き出します。
+     */
+    abstract static class BlockWriter {
+        private final ChannelOutput out;
+        private byte[] previous = new byte[32];
+        private int previousLength;
+        private int size;
+
+        BlockWriter(ChannelOutput out) {
+            this.out = out;
+        }
+
+        /**
+         * ブロックの書き出しを始めたときに呼び出されます。
+         *
+         * @param block  ブロックの番号
+         * @param offset ブロックの、出力先の先頭からの位置
+         */
+        abstract void blockStarted(int block, int offset) throws IOException;
+
+        /**
+         * 単語を書き出します。単語は UTF-8 のバイト列の辞書順に、重複なく渡してください。
+         *
+         * @throws IOException 出力に失敗した場合、または出現頻度が int の範囲を超える場合
+         */
+        void add(byte[] word, int length, long count) throws IOException {
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                throw new IOException("出現頻度が int の範囲を超えているため書き出せません: " + count);
+            }
+
+            int shared = 0;
+            if (size % BLOCK_SIZE == 0) {
+                blockStarted(size / BLOCK_SIZE, out.position());
+
+            } else {
+                int limit = Math.min(previousLength, length);
+                while (shared < limit && previous[shared] == word[shared]) {
+                    shared++;
+                }
+            }
+
+            out.writeVarLong(shared);
+            out.writeVarLong(length - shared);
+            out.write(word, shared, length - shared);
+            out.writeVarLong(count);
+
+            if (previous.length < length) {
+                previous = Arrays.copyOf(previous, Math.max(length, previous.length * 2));
+            }
+            System.arraycopy(word, shared, previous, shared, length - shared);
+            previousLength = length;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * 語彙全体をメモリ上に保持せずに、UTF-8 のバイト列の辞書順に並んだ単語を先頭から順に受け取って書き出します。
+     * <p>
+     * ヘッダには語彙数を書くため、ブロックと索引をいったん作業用の一時ファイルに書き出し、
+     * {@link #finish(long)} でヘッダに続けて出力先のファイルに順にコピーします。
+     * </p>
+     */
+    static final class SortedWriter implements Closeable {
+        private final Path path;
+        private final Path bodyPath;
+        private final Path indexPath;
+        private final FileChannel bodyChannel;
+        private final FileChannel indexChannel;
+        private final ChannelOutput body;
+        private final ChannelOutput index;
+        private final BlockWriter blocks;
+
+        /**
+         * @param path          書き出し先のファイルのパス
+         * @param workDirectory 作業用の一時ファイルを作成するディレクトリ
+         */
+        SortedWriter(Path path, Path workDirectory) throws IOException {
+            this.path = path;
+            this.bodyPath = Files.createTempFile(workDirectory, "body", ".tmp");
+            this.indexPath = Files.createTempFile(workDirectory, "index", ".tmp");
+            this.bodyChannel = FileChannel.open(bodyPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.body = new ChannelOutput(bodyChannel);
+            this.index = new ChannelOutput(indexChannel);
+            this.blocks = new BlockWriter(body) {
+                @Override
+                void blockStarted(int block, int offset) throws IOException {
+                    index.writeInt(offset);
+                }
+            };
+        }
+
+        void add(byte[] word, int length, long count) throws IOException {
+            blocks.add(word, length, count);
+        }
+
+        /**
+         * ヘッダ、ブロック、索引、トレーラの順に出力先のファイルを書き出します。
+         *
+         * @param elapsedMillis ヘッダに書く処理時間 (ミリ秒)
+         */
+        void finish(long elapsedMillis) throws IOException {
+            body.flush();
+            index.flush();
+
+            boolean completed = false;
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ChannelOutput out = new ChannelOutput(channel);
+                writeHeader(out, blocks.size(), elapsedMillis);
+                int headerLength = out.position();
+                out.flush();
+
+                // open でメモリマップできるよう、索引とトレーラを含めたファイル全体を 2GB までに収める
+                long bodyLength = bodyChannel.size();
+                if (headerLength + bodyLength + indexChannel.size() + 8 > Integer.MAX_VALUE) {
+                    throw new IOException("2GB を超えるワードカウント結果は書き出せません");
+                }
+                for (long position = 0; position < bodyLength; ) {
+                    position += bodyChannel.transferTo(position, bodyLength - position, channel);
+                }
+
+                // 索引の位置をファイル先頭からの位置に直しながら書き写す
+                out = new ChannelOutput(channel);
+                indexChannel.position(0);
+                ChannelInput in = new ChannelInput(indexChannel);
+                for (long i = indexChannel.size() / 4; i > 0; i--) {
+                    out.writeInt(headerLength + in.readInt());
+                }
+                out.writeLong(headerLength + bodyLength);
+                out.flush();
+                completed = true;
+
+            } finally {
+                if (!completed) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                bodyChannel.close();
+                indexChannel.close();
+
+            } finally {
+                Files.deleteIfExists(bodyPath);
+                Files.deleteIfExists(indexPath);
+            }
+        }
+    }
+
+    abstract static class Input {
+        abstract int readByte() throws IOException;
+
+        abstract void readFully(byte[] bytes, int offset, int length) throws IOException;
+
+        /**
+         * @return これまでに読み込んだバイト数
+         */
+        abstract long position();
+
+        /**
+         * 現在の位置から少なくとも指定されたバイト数が残っていることを知らせます。
+         * チャネルから読み込む場合は、その範囲を超えて先読みしません。
+         *
+         * @param length 少なくとも残っているバイト数
+         */
+        void readAhead(long length) {
+        }
+
+        final int readInt() throws IOException {
+            return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        }
+
+        final long readLong() throws IOException {
+            return (long) readInt() << 32 | (readInt() & 0xffffffffL);
+        }
+
+        final long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * メモリ上のバッファから読み込みます。
+     */
+    private static final class BufferInput extends Input {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        int readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException();
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        void readFully(byte[] bytes, int offset, int length) throws IOException {
+            if (buffer.remaining() < length) {
+                throw new EOFException();
+            }
+            buffer.get(bytes, offset, length);
+        }
+
+        @Override
+        long position() {
+            return buffer.position();
+        }
+    }
+
+    /**
+     * チャネルから、内部のバッファを介して先頭から順に読み込みます。
+     * {@link #readAhead(long)} が呼び出された場合は、知らされた範囲を超えて先読みしません。
+     */
+    static final class ChannelInput extends Input {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /** チャネルから読み込んだバイト数 */
+        private long filled;
+
+        /** 先読みしてよい範囲の終わりの位置 */
+        private long readAheadLimit = Long.MAX_VALUE;
+
+        ChannelInput(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        @Override
+        int readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                fill(1);
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        void readFully(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    fill(length);
+                }
+
+                int n = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        long position() {
+            return filled - buffer.remaining();
+        }
+
+        @Override
+        void readAhead(long length) {
+            readAheadLimit = position() + length;
+        }
+
+        /**
+         * バッファが空のときに、少なくとも required バイト、多くとも先読みしてよい範囲の終わりまでを読み込みます。
+         */
+        private void fill(int required) throws IOException {
+            long limit = Math.max(required, readAheadLimit - filled);
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), limit));
+            try {
+                while (buffer.position() == 0) {
+                    int n = channel.read(buffer);
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    filled += n;
+                }
+            } finally {
+                buffer.flip();
+            }
+        }
+    }
+
+    /**
+     * チャネルに、内部のバッファを介して先頭から順に書き出します。
+     */
+    static final class ChannelOutput {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long flushed;
+
+        ChannelOutput(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        int position() throws IOException {
+            long position = flushed + buffer.position();
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("2GB を超えるワードカウント結果は書き出せません");
+            }
+            return (int) position;
+        }
+
+        void writeByte(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+
+                int n = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7fL) != 0) {
+                writeByte((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package biz.k11i.shibuyajava;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 単語とその出現頻度の対応を保持する、オープンアドレス法 (線形探索) によるハッシュテーブルです。
+ * <p>
+ * 単語・ハッシュ値・出現頻度をそれぞれ {@code String[]}、{@code int[]}、{@code int[]} の並列配列で保持し、
+ * 出現頻度はその場で加算します。{@link java.util.HashMap} と異なりエントリごとのノードや
+ * {@link Integer} オブジェクトを生成しません。
+ * また {@code char} 配列上の範囲を直接キーとして検索できるため、既に登録済みの単語については
+ * {@link String} オブジェクトを生成せずに出現頻度を加算できます。
+ * </p>
+ * <p>
+ * {@link Map} インタフェースを実装しているので、{@link WordCount#wordCounts} としてそのまま公開できます。
+ * null のキーおよび値は扱えません。
+ * </p>
+ * <p>
+ * ヒープ使用量 (単語の {@link String} 自体を除く) は、スロット数 × スロットあたりのバイト数で決まります。
+ * スロット数は、語彙数が 3/4 以下に収まる 16 以上の最小の 2 のべき乗です。
+ * スロットあたりのバイト数は、圧縮参照が有効な場合は 12 バイト (参照 4 + ハッシュ値 4 + 出現頻度 4)、
+ * 無効な場合は 16 バイトです。拡張の途中では、古い配列と新しい配列が同時に 1.5 倍分のスロットを占めます。
+ * 比較のため、{@link java.util.HashMap HashMap&lt;String, Integer&gt;} はエントリごとに
+ * ノード 32 バイトと {@link Integer} 16 バイト (キャッシュ範囲外の場合) に加え、
+ * 同じ規則で決まるスロット数 × 4 バイトの表を使います (いずれも圧縮参照有効の場合)。
+ * </p>
+ * <table summary="ヒープ使用量の比較 (圧縮参照有効の場合の計算値)">
+ * <tr><th>語彙数</th><th>スロット数</th><th>HashMap&lt;String, Integer&gt;</th><th>WordCountMap</th></tr>
+ * <tr><td>1万</td><td>2<sup>14</sup></td><td>約 0.5 MB</td><td>約 0.2 MB</td></tr>
+ * <tr><td>100万</td><td>2<sup>21</sup></td><td>約 56 MB</td><td>約 25 MB</td></tr>
+ * <tr><td>1000万</td><td>2<sup>24</sup></td><td>約 547 MB</td><td>約 201 MB</td></tr>
+ * </table>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class WordCountMap extends AbstractMap<String, Integer> implements WordSink {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] words;
+    private int[] hashes;
+    private int[] counts;
+
+    private int size;
+    private int threshold;
+
+    /** 新しい単語の {@link String} を使い回すための記号表。null の場合は毎回生成する */
+    private WordSymbolTable symbolTable;
+
+    WordCountMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 想定される語彙数
+     */
+    WordCountMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private WordCountMap(String[] words, int[] hashes, int[] counts, int size) {
+        this.words = words;
+        this.hashes = hashes;
+        this.counts = counts;
+        this.size = size;
+        this.threshold = words.length * 3 / 4;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * 指定された範囲の文字列の出現頻度を 1 加算します。
+     *
+     * @param chars  単語を含む文字配列
+     * @param length 単語の長さ
+     * @param hash   {@link String#hashCode()} と同じ方法で計算した単語のハッシュ値
+     * @return 加算後の出現頻度
+     */
+    int increment(char[] chars, int length, int hash) {
+        int mask = words.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            String word = words[i];
+            if (word == null) {
+                String newWord = symbolTable != null
+                        ? symbolTable.intern(chars, length, hash)
+                        : new String(chars, 0, length);
+                insert(i, newWord, hash, 1);
+                return 1;
+            }
+
+            if (hashes[i] == hash && word.length() == length && contentEquals(word, chars, length)) {
+                return ++counts[i];
+            }
+        }
+    }
+
+    @Override
+    public void accept(char[] chars, int length, int hash) {
+        increment(chars, length, hash);
+    }
+
+    @Override
+    public void accept(String word) {
+        increment(word);
+    }
+
+    /**
+     * 指定された範囲の文字列の出現頻度を返します。
+     *
+     * @param chars  単語を含む文字配列
+     * @param length 単語の長さ
+     * @param hash   {@link String#hashCode()} と同じ方法で計算した単語のハッシュ値
+     * @return 出現頻度、登録されていなければ 0
+     */
+    int countOf(char[] chars, int length, int hash) {
+        int mask = words.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            String word = words[i];
+            if (word == null) {
+                return 0;
+            }
+
+            if (hashes[i] == hash && word.length() == length && contentEquals(word, chars, length)) {
+                return counts[i];
+            }
+        }
+    }
+
+    /**
+     * 指定された範囲のバイト列の出現頻度を 1 加算します。
+     * 各バイトを ISO-8859-1 の文字とみなした文字列を単語とします。
+     *
+     * @param bytes  単語を含むバイト配列
+     * @param length 単語の長さ
+     * @param hash   各バイトを文字とみなして {@link String#hashCode()} と同じ方法で計算したハッシュ値
+     * @return 加算後の出現頻度
+     */
+    int increment(byte[] bytes, int length, int hash) {
+        int mask = words.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            String word = words[i];
+            if (word == null) {
+                insert(i, new String(bytes, 0, length, StandardCharsets.ISO_8859_1), hash, 1);
+                return 1;
+            }
+
+            if (hashes[i] == hash && word.length() == length && contentEquals(word, bytes, length)) {
+                return ++counts[i];
+            }
+        }
+    }
+
+    /**
+     * 指定された単語の出現頻度を 1 加算します。
+     *
+     * @param word 単語
+     * @return 加算後の出現頻度
+     */
+    int increment(String word) {
+        return add(word, 1);
+    }
+
+    /**
+     * 指定された単語の出現頻度に値を加算します。
+     *
+     * @param word  単語
+     * @param delta 加算する値
+     * @return 加算後の出現頻度
+     */
+    int add(String word, int delta) {
+        int hash = word.hashCode();
+        int i = indexOf(word, hash);
+        if (words[i] == null) {
+            insert(i, word, hash, delta);
+            return delta;
+        }
+
+        return counts[i] += delta;
+    }
+
+    /**
+     * 指定されたテーブルの出現頻度を、このテーブルに加算します。
+     *
+     * @param other 加算するテーブル
+     */
+    void addAll(WordCountMap other) {
+        String[] otherWords = other.words;
+        for (int j = 0; j < otherWords.length; j++) {
+            String word = otherWords[j];
+            if (word == null) {
+                continue;
+            }
+
+            int hash = other.hashes[j];
+            int i = indexOf(word, hash);
+            if (words[i] == null) {
+                insert(i, word, hash, other.counts[j]);
+
+            } else {
+                counts[i] += other.counts[j];
+            }
+        }
+    }
+
+    /**
+     * @param word 単語
+     * @return 指定された単語の出現頻度、登録されていなければ 0
+     */
+    int countOf(String word) {
+        int i = indexOf(word, word.hashCode());
+        return words[i] == null ? 0 : counts[i];
+    }
+
+    /**
+     * 出現頻度の降順、出現頻度が同じ場合は単語の昇順で、上位 k 個の単語を選びます。
+     * 大きさ k のヒープを使うので、計算量は O(n log k) です。
+     *
+     * @param k 選ぶ単語の数
+     * @return 上位 k 個の単語
+     */
+    List<String> topWords(int k) {
+        // 先頭に最も順位の低いスロットが来るヒープ
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int heapSize = 0;
+
+        for (int i = 0; i < words.length && heap.length > 0; i++) {
+            if (words[i] == null) {
+                continue;
+            }
+
+            if (heapSize < heap.length) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++);
+
+            } else if (ranksHigher(i, heap[0])) {
+                heap[0] = i;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        // ヒープから順位の低い順に取り出して末尾から詰める
+        String[] result = new String[heapSize];
+        while (heapSize > 0) {
+            result[--heapSize] = words[heap[0]];
+            heap[0] = heap[heapSize];
+            siftDown(heap, heapSize);
+        }
+
+        ArrayList<String> list = new ArrayList<>(result.length);
+        Collections.addAll(list, result);
+        return list;
+    }
+
+    private boolean ranksHigher(int slot1, int slot2) {
+        int count1 = counts[slot1];
+        int count2 = counts[slot2];
+        return count1 > count2 || (count1 == count2 && words[slot1].compareTo(words[slot2]) < 0);
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksHigher(heap[parent], slot)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        if (heapSize == 0) {
+            return;
+        }
+
+        int slot = heap[0];
+        int index = 0;
+        for (int child; (child = 2 * index + 1) < heapSize; index = child) {
+            if (child + 1 < heapSize && ranksHigher(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksHigher(slot, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+        }
+        heap[index] = slot;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+
+        String word = (String) key;
+        return words[indexOf(word, word.hashCode())] != null;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        String word = (String) key;
+        int i = indexOf(word, word.hashCode());
+        return words[i] == null ? null : counts[i];
+    }
+
+    @Override
+    public Integer put(String key, Integer value) {
+        int hash = key.hashCode();
+        int count = value;
+
+        int i = indexOf(key, hash);
+        if (words[i] == null) {
+            insert(i, key, hash, count);
+            return null;
+        }
+
+        int old = counts[i];
+        counts[i] = count;
+        return old;
+    }
+
+    @Override
+    public Integer remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        String word = (String) key;
+        int i = indexOf(word, word.hashCode());
+        if (words[i] == null) {
+            return null;
+        }
+
+        int old = counts[i];
+        removeAt(i, null);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(words, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Integer>> entrySet() {
+        return new AbstractSet<Entry<String, Integer>>() {
+            @Override
+            public Iterator<Entry<String, Integer>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * {@code char} 配列上の範囲として渡された新しい単語を登録するとき、{@link String} を生成する代わりに
+     * 指定された記号表から同じ内容の {@link String} を取り出すようにします。
+     *
+     * @param symbolTable 記号表。null を指定すると毎回 {@link String} を生成する
+     */
+    void useSymbolTable(WordSymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * 現在の語彙数に見合った容量の複製を作ります。
+     * 容量が変わらない場合は、再ハッシュせずに配列をそのまま複製します。
+     *
+     * @return このテーブルの複製
+     */
+    WordCountMap compactCopy() {
+        int capacity = capacityFor(size);
+        if (capacity != words.length) {
+            WordCountMap copy = new WordCountMap(size);
+            copy.addAll(this);
+            return copy;
+        }
+
+        return new WordCountMap(words.clone(), hashes.clone(), counts.clone(), size);
+    }
+
+    /**
+     * 全てのエントリを削除します。{@link #clear()} と異なり、容量が指定された値以下であれば
+     * 配列を確保し直さずに再利用します。
+     *
+     * @param maxRetainedCapacity 配列を再利用する容量の上限
+     */
+    void recycle(int maxRetainedCapacity) {
+        if (words.length > maxRetainedCapacity) {
+            allocate(INITIAL_CAPACITY);
+            size = 0;
+
+        } else if (size > 0) {
+            Arrays.fill(words, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * 各単語を、指定された記号表に登録済みの同じ内容の {@link String} に置き換えます。
+     *
+     * @param symbolTable 記号表
+     */
+    void internWords(WordSymbolTable symbolTable) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != null) {
+                words[i] = symbolTable.intern(words[i]);
+            }
+        }
+    }
+
+    private int indexOf(String word, int hash) {
+        int mask = words.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            String w = words[i];
+            if (w == null || (hashes[i] == hash && w.equals(word))) {
+                return i;
+            }
+        }
+    }
+
+    private void insert(int index, String word, int hash, int count) {
+        words[index] = word;
+        hashes[index] = hash;
+        counts[index] = count;
+
+        if (++size > threshold) {
+            rehash(words.length * 2);
+        }
+    }
+
+    /**
+     * 指定されたスロットのエントリを削除し、後続のエントリを詰め直します (backward shift deletion)。
+     *
+     * @param index        削除するスロット
+     * @param wrappedWords null でなければ、index より前のスロットから index 以降のスロットへ移動した
+     *                     (探索が配列の末尾から先頭に折り返している) エントリの単語を追加する
+     */
+    private void removeAt(int index, List<String> wrappedWords) {
+        int mask = words.length - 1;
+        int hole = index;
+
+        for (int i = (index + 1) & mask; words[i] != null; i = (i + 1) & mask) {
+            int home = mix(hashes[i]) & mask;
+
+            // home が (hole, i] の範囲外にあるエントリは hole に移動できる
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                if (wrappedWords != null && i < index && hole >= index) {
+                    wrappedWords.add(words[i]);
+                }
+                words[hole] = words[i];
+                hashes[hole] = hashes[i];
+                counts[hole] = counts[i];
+                hole = i;
+            }
+        }
+
+        words[hole] = null;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        words = new String[capacity];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+        threshold = capacity * 3 / 4;
+    }
+
+    private void rehash(int newCapacity) {
+        String[] oldWords = words;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+
+        for (int j = 0; j < oldWords.length; j++) {
+            if (oldWords[j] == null) {
+                continue;
+            }
+
+            int i = mix(oldHashes[j]) & mask;
+            while (words[i] != null) {
+                i = (i + 1) & mask;
+            }
+
+            words[i] = oldWords[j];
+            hashes[i] = oldHashes[j];
+            counts[i] = oldCounts[j];
+        }
+    }
+
+    /**
+     * {@link String#hashCode()} の下位ビットの偏りを拡散させます。
+     */
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static boolean contentEquals(String word, char[] chars, int length) {
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contentEquals(String word, byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != (bytes[i] & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 配列を末尾から先頭に向かって走査します。
+     * <p>
+     * {@link #remove()} で詰め直されるエントリは、探索の順で削除したスロットより後ろにあるため、
+     * 通常は走査済みの範囲 (削除したスロット以降) の中で移動します。
+     * 探索が配列の末尾から先頭に折り返している場合に限り、未走査の範囲から走査済みの範囲に移動するため、
+     * そのエントリの単語を記録しておき、配列を走査し終えた後に返します。
+     * </p>
+     */
+    private class EntryIterator implements Iterator<Entry<String, Integer>> {
+        /** 次に調べるスロットの一つ後ろ */
+        private int position = words.length;
+
+        /** まだ返していないエントリの数 */
+        private int remaining = size;
+
+        /** 最後に返したエントリのスロット。削除済みまたは未取得の場合は -1 */
+        private int last = -1;
+
+        /** 削除に伴って走査済みの範囲に移動した、まだ返していないエントリの単語 */
+        private List<String> wrappedWords;
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Entry<String, Integer> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+
+            while (position > 0) {
+                if (words[--position] != null) {
+                    return entryAt(last = position);
+                }
+            }
+
+            String word = wrappedWords.remove(wrappedWords.size() - 1);
+            return entryAt(last = indexOf(word, word.hashCode()));
+        }
+
+        private Entry<String, Integer> entryAt(final int index) {
+            return new SimpleEntry<String, Integer>(words[index], counts[index]) {
+                @Override
+                public Integer setValue(Integer value) {
+                    counts[index] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+
+            if (position > 0) {
+                if (wrappedWords == null) {
+                    wrappedWords = new ArrayList<>();
+                }
+                removeAt(last, wrappedWords);
+
+            } else {
+                // 配列を走査し終えた後は、全てのスロットが走査済みの範囲となる
+                removeAt(last, null);
+            }
+            last = -1;
+        }
+    }
+}
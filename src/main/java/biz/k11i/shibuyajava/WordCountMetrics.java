@@ -0,0 +1,66 @@
+package biz.k11i.shibuyajava;
+
+/**
+ * 一回のワードカウントについて、各処理段階の所要時間と処理量を保持します。
+ * <p>
+ * {@link WordCounter#metricsListener(Listener)} などでリスナを指定すると、ワードカウントが完了するたびに通知されます。
+ * 所要時間は {@link System#nanoTime()} で計測します。
+ * トークナイズと出現頻度の加算は一回の走査で同時に行っているため、まとめて {@link #scanNanos} として計測します。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordCountMetrics {
+    /**
+     * ワードカウントの完了の通知を受け取ります。
+     * <p>
+     * ワードカウントを行ったスレッドから呼び出されるため、実装はスレッドセーフにしてください。
+     * </p>
+     */
+    public interface Listener {
+        void onCompleted(WordCountMetrics metrics);
+    }
+
+    /** 文章を走査して単語を数えるのに要した時間 (ナノ秒) */
+    public final long scanNanos;
+
+    /** 単語の {@link String} を記号表で共有するのに要した時間 (ナノ秒)。記号表を使わない場合は 0 */
+    public final long internNanos;
+
+    /** 上位の単語を選ぶのに要した時間 (ナノ秒) */
+    public final long topKNanos;
+
+    /** ワードカウント全体に要した時間 (ナノ秒) */
+    public final long totalNanos;
+
+    /** 数えた単語の総数 */
+    public final long tokens;
+
+    /** 異なり語数 */
+    public final int distinctWords;
+
+    /** 走査した文字数。バイト列を直接走査した場合は 0 */
+    public final long charsProcessed;
+
+    /** 走査したバイト数。文字列を走査した場合は 0 */
+    public final long bytesProcessed;
+
+    WordCountMetrics(long scanNanos, long internNanos, long topKNanos, long totalNanos,
+                     long tokens, int distinctWords, long charsProcessed, long bytesProcessed) {
+        this.scanNanos = scanNanos;
+        this.internNanos = internNanos;
+        this.topKNanos = topKNanos;
+        this.totalNanos = totalNanos;
+        this.tokens = tokens;
+        this.distinctWords = distinctWords;
+        this.charsProcessed = charsProcessed;
+        this.bytesProcessed = bytesProcessed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "WordCountMetrics{scanNanos=%d, internNanos=%d, topKNanos=%d, totalNanos=%d, tokens=%d, distinctWords=%d, charsProcessed=%d, bytesProcessed=%d}",
+                scanNanos, internNanos, topKNanos, totalNanos, tokens, distinctWords, charsProcessed, bytesProcessed);
+    }
+}
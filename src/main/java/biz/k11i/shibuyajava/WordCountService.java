@@ -0,0 +1,336 @@
+package biz.k11i.shibuyajava;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ワードカウントの要求を受け付けて非同期に処理する、プロセス内のサービスです。
+ * <p>
+ * 要求は容量に上限のあるキューに入り、ワーカーが順に取り出して {@link WordCount#countWords(String)} と
+ * 同じワードカウントを行います。ワーカーは仮想スレッドが使える JDK (21 以降) では仮想スレッド上で、
+ * それ以前の JDK ではデーモンスレッドの固定サイズのスレッドプール上で動作します。
+ * 各ワーカーは {@link WordCounter#count(CharSequence)} で作業用のテーブルを使い回します。
+ * </p>
+ * <p>
+ * キューが一杯のときの振る舞いは {@link OverflowPolicy} で指定します。
+ * 処理状況は {@link #queueDepth()} と {@link #latencyNanos(double)} で監視できます。
+ * </p>
+ * <pre>
+ * try (WordCountService service = new WordCountService(1024, WordCountService.OverflowPolicy.REJECT)) {
+ *     CompletableFuture&lt;WordCount&gt; future = service.submit("Hello world");
+ *     WordCount wordCount = future.join();
+ * }
+ * </pre>
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordCountService implements AutoCloseable {
+    /**
+     * キューが一杯のときに新しい要求をどう扱うかを指定します。
+     */
+    public enum OverflowPolicy {
+        /** 新しい要求を {@link RejectedExecutionException} で失敗させます */
+        REJECT,
+
+        /** キューに空きができるまで {@link #submit(String)} の呼び出し元を待たせます */
+        BLOCK,
+
+        /** キューの中で最も古い要求を {@link RejectedExecutionException} で失敗させ、新しい要求を受け付けます */
+        SHED_OLDEST
+    }
+
+    /** キューが空のときに、ワーカーがサービスの停止を確認する間隔 (ミリ秒) */
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    /**
+     * ワーカーが一つの要求をワードカウントする関数です。
+     */
+    interface CountFunction {
+        /**
+         * @param counter ワーカーごとの {@link WordCounter}
+         * @param text    ワードカウント対象の文章
+         * @return ワードカウント結果
+         */
+        WordCount count(WordCounter counter, String text);
+    }
+
+    private static final CountFunction COUNT = new CountFunction() {
+        @Override
+        public WordCount count(WordCounter counter, String text) {
+            return counter.count(text);
+        }
+    };
+
+    private final BlockingQueue<Request> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final CountFunction countFunction;
+    private final ExecutorService executor;
+
+    /** {@link #submit(String)} の中で、停止の確認からキューに入れ終えるまでの間にいるスレッドの数 */
+    private final AtomicInteger activeSubmitters = new AtomicInteger();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * 利用可能なプロセッサ数と同じ数のワーカーで処理するサービスを開始します。
+     *
+     * @param queueCapacity  キューの容量
+     * @param overflowPolicy キューが一杯のときの振る舞い
+     */
+    public WordCountService(int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(queueCapacity, overflowPolicy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param queueCapacity  キューの容量
+     * @param overflowPolicy キューが一杯のときの振る舞い
+     * @param workers        ワーカーの数
+     */
+    public WordCountService(int queueCapacity, OverflowPolicy overflowPolicy, int workers) {
+        this(queueCapacity, overflowPolicy, workers, COUNT);
+    }
+
+    /**
+     * @param queueCapacity  キューの容量
+     * @param overflowPolicy キューが一杯のときの振る舞い
+     * @param workers        ワーカーの数
+     * @param countFunction  ワーカーが一つの要求をワードカウントする関数
+     */
+    WordCountService(int queueCapacity, OverflowPolicy overflowPolicy, int workers,
+                     CountFunction countFunction) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity には 1 以上の値を指定してください: " + queueCapacity);
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers には 1 以上の値を指定してください: " + workers);
+        }
+        if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy");
+        }
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.countFunction = countFunction;
+        this.executor = newExecutor(workers);
+
+        for (int i = 0; i < workers; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+        }
+    }
+
+    /**
+     * 仮想スレッドが使える場合は仮想スレッドで、使えない場合はデーモンスレッドでタスクを実行する
+     * {@link ExecutorService} を生成します。
+     */
+    private static ExecutorService newExecutor(int workers) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+
+        } catch (ReflectiveOperationException e) {
+            // JDK 20 以前
+        }
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "word-count-service-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 文章のワードカウントを要求します。
+     * <p>
+     * 要求を受け付けられなかった場合や、受け付けた後に {@link OverflowPolicy#SHED_OLDEST} によって
+     * 取り除かれた場合、返される {@link CompletableFuture} は {@link RejectedExecutionException} で失敗します。
+     * </p>
+     *
+     * @param text ワードカウント対象の文章
+     * @return ワードカウント結果を受け取る {@link CompletableFuture}
+     * @throws InterruptedException {@link OverflowPolicy#BLOCK} でキューの空きを待っている間に割り込まれた場合
+     */
+    public CompletableFuture<WordCount> submit(String text) throws InterruptedException {
+        Request request = new Request(text);
+
+        // close() は、停止後もここにいるスレッドがいなくなるまでキューに残った要求を失敗させ続ける
+        activeSubmitters.incrementAndGet();
+        try {
+            if (closed) {
+                reject(request, "サービスは停止しています");
+                return request.future;
+            }
+
+            enqueue(request);
+
+        } finally {
+            activeSubmitters.decrementAndGet();
+        }
+
+        return request.future;
+    }
+
+    private void enqueue(Request request) throws InterruptedException {
+        switch (overflowPolicy) {
+            case REJECT:
+                if (!queue.offer(request)) {
+                    reject(request, "キューが一杯です");
+                }
+                break;
+
+            case BLOCK:
+                queue.put(request);
+                break;
+
+            case SHED_OLDEST:
+                while (!queue.offer(request)) {
+                    Request oldest = queue.poll();
+                    if (oldest != null) {
+                        reject(oldest, "新しい要求のためにキューから取り除かれました");
+                    }
+                }
+                break;
+
+            default:
+                throw new AssertionError(overflowPolicy);
+        }
+    }
+
+    /**
+     * @return キューで処理を待っている要求の数
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return 処理を完了した要求の数 (失敗したものを含み、受け付けなかったものを除く)
+     */
+    public long completedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @return 受け付けなかった、または取り除いた要求の数
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 要求を受け付けてから処理を完了するまでの時間について、指定されたパーセンタイルを返します。
+     * 値の相対誤差は 12.5% 以内です。
+     *
+     * @param percentile パーセンタイル (0 以上 100 以下)。例えば中央値は 50、99 パーセンタイルは 99
+     * @return 処理時間 (ナノ秒)。完了した要求がない場合は 0
+     */
+    public long latencyNanos(double percentile) {
+        return latencies.percentile(percentile);
+    }
+
+    /**
+     * 新しい要求の受け付けを停止し、キューに残っている要求を全て処理し終えるまで待ちます。
+     * <p>
+     * 停止と競合して受け付けた要求は、処理されるか {@link RejectedExecutionException} で失敗します。
+     * 待っている間に割り込まれた場合は、処理中のワーカーに割り込んだ上でキューに残っている要求を失敗させ、
+     * スレッドの割り込み状態を設定して直ちに戻ります。
+     * </p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // 全てのワーカーが終了するまで待つ
+            }
+
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // 停止と競合して、ワーカーの終了後にキューに入った要求を失敗させる。
+        // OverflowPolicy.BLOCK で空きを待っているスレッドは、ここで空きができてからキューに入れるため、
+        // submit() の中にいるスレッドがいなくなるまで繰り返す
+        while (true) {
+            boolean noActiveSubmitters = activeSubmitters.get() == 0;
+            for (Request request; (request = queue.poll()) != null; ) {
+                reject(request, "サービスは停止しています");
+            }
+
+            if (noActiveSubmitters) {
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    private void work() {
+        WordCounter counter = new WordCounter().retainText(true);
+
+        try {
+            while (true) {
+                Request request = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (request == null) {
+                    if (closed && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                try {
+                    request.future.complete(countFunction.count(counter, request.text));
+
+                } catch (Throwable e) {
+                    // Error の場合もワーカーは止めず、作業用のテーブルを作り直して次の要求を処理する
+                    request.future.completeExceptionally(e);
+                    counter = new WordCounter().retainText(true);
+                }
+
+                latencies.record(System.nanoTime() - request.submittedNanos);
+                completedCount.incrementAndGet();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reject(Request request, String message) {
+        rejectedCount.incrementAndGet();
+        request.future.completeExceptionally(new RejectedExecutionException(message));
+    }
+
+    private static final class Request {
+        final String text;
+        final long submittedNanos = System.nanoTime();
+        final CompletableFuture<WordCount> future = new CompletableFuture<>();
+
+        Request(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package biz.k11i.shibuyajava;
+
+import java.util.Map;
+
+/**
+ * 一回のワードカウントの所要時間を計測し、{@link WordCountMetrics.Listener} に通知します。
+ * <p>
+ * リスナはワードカウントを行うオブジェクトや呼び出しごとに指定します。
+ * リスナが指定されていない場合は、全体の所要時間以外は計測しません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class WordCountTimer {
+    private final WordCountMetrics.Listener listener;
+    private final long beginNanos;
+    private long scanEndNanos;
+    private long internEndNanos;
+
+    private long tokens = -1;
+    private long charsProcessed;
+    private long bytesProcessed;
+
+    WordCountTimer() {
+        this(null);
+    }
+
+    /**
+     * @param listener 計測結果を通知するリスナ。null の場合は通知しない
+     */
+    WordCountTimer(WordCountMetrics.Listener listener) {
+        this.listener = listener;
+        this.beginNanos = System.nanoTime();
+    }
+
+    /**
+     * 走査した文字数を加算します。
+     */
+    void charsProcessed(long chars) {
+        charsProcessed += chars;
+    }
+
+    /**
+     * 走査したバイト数を加算します。
+     */
+    void bytesProcessed(long bytes) {
+        bytesProcessed += bytes;
+    }
+
+    /**
+     * 数えた単語の総数を設定します。
+     * 設定しなかった場合は、各単語の出現頻度の合計とします。
+     */
+    void tokens(long tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * 文章の走査が完了したことを記録します。二回目以降の呼び出しは無視します。
+     */
+    void scanned() {
+        if (listener != null && scanEndNanos == 0) {
+            scanEndNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 単語の {@link String} の共有が完了したことを記録します。二回目以降の呼び出しは無視します。
+     */
+    void interned() {
+        if (listener != null && internEndNanos == 0) {
+            internEndNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * ワードカウントが完了したことを記録し、リスナに通知します。
+     *
+     * @param wordCounts 各単語の出現頻度
+     * @return ワードカウント全体に要した時間 (ミリ秒)
+     */
+    long finish(Map<String, Integer> wordCounts) {
+        long endNanos = System.nanoTime();
+
+        if (listener != null && tokens < 0) {
+            tokens = 0;
+            for (Integer count : wordCounts.values()) {
+                tokens += count;
+            }
+        }
+        return finish(endNanos, wordCounts.size());
+    }
+
+    /**
+     * ワードカウントが完了したことを記録し、リスナに通知します。
+     * 単語の総数は {@link #tokens(long)} で設定しておいてください。
+     *
+     * @param distinctWords 語彙数
+     * @return ワードカウント全体に要した時間 (ミリ秒)
+     */
+    long finish(int distinctWords) {
+        return finish(System.nanoTime(), distinctWords);
+    }
+
+    private long finish(long endNanos, int distinctWords) {
+        if (listener != null) {
+            if (scanEndNanos == 0) {
+                scanEndNanos = endNanos;
+            }
+            if (internEndNanos == 0) {
+                internEndNanos = scanEndNanos;
+            }
+
+            listener.onCompleted(new WordCountMetrics(
+                    scanEndNanos - beginNanos, internEndNanos - scanEndNanos, endNanos - internEndNanos, endNanos - beginNanos,
+                    Math.max(tokens, 0), distinctWords, charsProcessed, bytesProcessed));
+        }
+
+        return (endNanos - beginNanos) / 1000000;
+    }
+}
@@ -0,0 +1,234 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 文章を少しずつ受け取りながらワードカウントを行います。
+ * <p>
+ * 文章全体を一つの {@link String} としてメモリ上に保持する必要がないため、
+ * 使用するメモリは語彙数に比例する量に抑えられます。
+ * {@link #feed(CharSequence)} の呼び出しの境界をまたぐ単語も、一つの単語として数えます。
+ * </p>
+ * <pre>
+ * WordCounter counter = new WordCounter();
+ * counter.feed("Hello wo");
+ * counter.feed("rld WORLD");
+ * WordCount wordCount = counter.finish();  // {hello: 1, world: 2}
+ * </pre>
+ * <p>
+ * このクラスはスレッドセーフではありません。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordCounter {
+    private static final int BUFFER_SIZE = 8192;
+
+    /** {@link #count(CharSequence)} で再利用するテーブルの容量の上限。これを超えたテーブルは次の文書で確保し直す */
+    private static final int MAX_RECYCLED_CAPACITY = 4096;
+
+    /** {@link #symbolTable(WordSymbolTable)} を指定しない場合に、{@link #count(CharSequence)} で単語の {@link String} を使い回すための記号表の容量 */
+    private static final int SYMBOL_TABLE_CAPACITY = 8192;
+
+    private boolean retainText;
+    private WordNormalizer normalizer = WordNormalizer.DEFAULT;
+    private WordCountMetrics.Listener metricsListener;
+    private WordSymbolTable symbolTable;
+
+    private WordCountMap wordCounts;
+    private WordScanner scanner;
+    private StringBuilder text;
+    private WordCountTimer timer;
+
+    /** {@link #count(CharSequence)} で文書ごとに再利用するテーブルとスキャナ */
+    private WordCountMap scratchCounts;
+    private WordScanner scratchScanner;
+
+    public WordCounter() {
+        reset();
+    }
+
+    /**
+     * 受け取った文章を {@link WordCount#text} として保持するかどうかを指定します。
+     * デフォルトでは保持しません。最初の {@code feed} より前に指定してください。
+     *
+     * @param retainText 文章を保持する場合は true
+     * @return この WordCounter オブジェクト
+     */
+    public WordCounter retainText(boolean retainText) {
+        this.retainText = retainText;
+        if (!retainText) {
+            text = null;
+
+        } else if (text == null) {
+            text = new StringBuilder();
+        }
+        return this;
+    }
+
+    /**
+     * 各単語の正規化の方法を指定します。
+     * デフォルトでは {@link WordNormalizer#DEFAULT} を使います。最初の {@code feed} より前に指定してください。
+     *
+     * @param normalizer 各単語の正規化の方法
+     * @return この WordCounter オブジェクト
+     */
+    public WordCounter normalizer(WordNormalizer normalizer) {
+        if (normalizer == null) {
+            throw new NullPointerException("normalizer");
+        }
+        this.normalizer = normalizer;
+        scanner = new WordScanner(wordCounts, normalizer);
+        scratchCounts = null;
+        scratchScanner = null;
+        return this;
+    }
+
+    /**
+     * ワードカウントが完了するたびに、各処理段階の所要時間と処理量を通知するリスナを指定します。
+     * デフォルトでは通知しません。最初の {@code feed} より前に指定してください。
+     * リスナを指定しない場合、計測のためのオーバーヘッドはほとんどありません。
+     *
+     * @param listener 計測結果を通知するリスナ。null を指定すると通知しない
+     * @return この WordCounter オブジェクト
+     */
+    public WordCounter metricsListener(WordCountMetrics.Listener listener) {
+        this.metricsListener = listener;
+        return this;
+    }
+
+    /**
+     * ワードカウント結果の {@link WordCount#wordCounts} のキーを、指定された記号表に登録済みの {@link String} に置き換えます。
+     * 語彙を共有する多数のワードカウント結果を同時に保持する場合に、ヒープ使用量を削減できます。
+     * <p>
+     * 指定した記号表は呼び出し元や、同じ記号表を指定した他の WordCounter オブジェクトとも共有されるため、
+     * 登録された単語はそれら全てから記号表が参照されなくなるまで保持されます。
+     * 指定しない場合、{@link #finish()} の結果の単語は共有せず、{@link #count(CharSequence)} は
+     * この WordCounter オブジェクト専用の記号表で文書をまたいで単語を共有します。
+     * 専用の記号表はこの WordCounter オブジェクトだけが参照し、不要になれば登録された単語ごと回収されます。
+     * </p>
+     *
+     * @param symbolTable 使用する記号表。null を指定するとデフォルトに戻す
+     * @return この WordCounter オブジェクト
+     */
+    public WordCounter symbolTable(WordSymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        scratchCounts = null;
+        scratchScanner = null;
+        return this;
+    }
+
+    /**
+     * 文章の続きを受け取り、ワードカウントします。
+     *
+     * @param chars 文章の続き
+     * @return この WordCounter オブジェクト
+     */
+    public WordCounter feed(CharSequence chars) {
+        markBegin();
+        scanner.feed(chars);
+        timer.charsProcessed(chars.length());
+        if (text != null) {
+            text.append(chars);
+        }
+        return this;
+    }
+
+    /**
+     * 文章の続きを文字配列の一部として受け取り、ワードカウントします。
+     *
+     * @param chars 文章の続きを含む文字配列
+     * @param begin 文章の続きの開始位置
+     * @param end   文章の続きの終了位置 (この位置の文字は含まない)
+     * @return この WordCounter オブジェクト
+     */
+    public WordCounter feed(char[] chars, int begin, int end) {
+        markBegin();
+        scanner.feed(chars, begin, end);
+        timer.charsProcessed(end - begin);
+        if (text != null) {
+            text.append(chars, begin, end - begin);
+        }
+        return this;
+    }
+
+    /**
+     * 指定された {@link Reader} から文章を最後まで読み込み、ワードカウントします。
+     * {@link Reader} はクローズしません。
+     *
+     * @param reader 文章の読み込み元
+     * @return この WordCounter オブジェクト
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public WordCounter feed(Reader reader) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        for (int n; (n = reader.read(buffer)) >= 0; ) {
+            feed(buffer, 0, n);
+        }
+        return this;
+    }
+
+    /**
+     * これまでに受け取った文章のワードカウント結果を返します。
+     * 呼び出し後、この WordCounter オブジェクトは新たな文章のワードカウントを始められる状態に戻ります。
+     *
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     */
+    public WordCount finish() {
+        markBegin();
+        scanner.finish();
+
+        WordCount result = new WordCount(timer, text != null ? text.toString() : null, wordCounts, -1, symbolTable);
+        reset();
+        return result;
+    }
+
+    /**
+     * 一つの文書をワードカウントします。{@link #feed(CharSequence)} で受け取り途中の文章には影響しません。
+     * <p>
+     * 短い文書を大量にワードカウントする場合のためのメソッドです。
+     * 出現頻度を数えるテーブルと単語のバッファを文書ごとに確保せずに再利用し、
+     * 文書をまたいで現れる単語の {@link String} も使い回します。
+     * 結果の {@link WordCount#wordCounts} は、その文書の語彙数に合わせた容量のテーブルに複製します。
+     * </p>
+     *
+     * @param document ワードカウント対象の文書
+     * @return ワードカウント結果が含まれている WordCount オブジェクト
+     */
+    public WordCount count(CharSequence document) {
+        if (scratchCounts == null) {
+            scratchCounts = new WordCountMap();
+            scratchCounts.useSymbolTable(symbolTable != null ? symbolTable : new WordSymbolTable(SYMBOL_TABLE_CAPACITY));
+            scratchScanner = new WordScanner(scratchCounts, normalizer);
+
+        } else {
+            scratchScanner.reset();
+        }
+
+        WordCountTimer timer = new WordCountTimer(metricsListener);
+        try {
+            scratchScanner.feed(document);
+            scratchScanner.finish();
+            timer.charsProcessed(document.length());
+
+            return new WordCount(timer, retainText ? document.toString() : null, scratchCounts.compactCopy());
+
+        } finally {
+            scratchCounts.recycle(MAX_RECYCLED_CAPACITY);
+        }
+    }
+
+    private void markBegin() {
+        if (timer == null) {
+            timer = new WordCountTimer(metricsListener);
+        }
+    }
+
+    private void reset() {
+        wordCounts = new WordCountMap();
+        scanner = new WordScanner(wordCounts, normalizer);
+        text = retainText ? new StringBuilder() : null;
+        timer = null;
+    }
+}
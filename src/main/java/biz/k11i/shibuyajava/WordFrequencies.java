@@ -0,0 +1,173 @@
+package biz.k11i.shibuyajava;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文章を保持せず、上位の単語を必要になるまで計算しない、軽量なワードカウント結果です。
+ * <p>
+ * {@link WordCount} は YAML との相互変換のために全てのフィールドを公開しており、ワードカウントの直後に
+ * {@link WordCount#top3Words} を計算し、{@link WordCount#text} として文章を保持し続けます。
+ * 単語の出現頻度を数件調べるだけの用途では、このクラスを使うとそれらの処理とメモリを省けます。
+ * </p>
+ * <ul>
+ * <li>{@link #countOf(String)} / {@link #contains(String)} は、順位付けを行わずにハッシュテーブルを引くだけです。</li>
+ * <li>{@link #top3Words()} / {@link #topWords(int)} は最初に呼び出したときに計算し、結果を使い回します。</li>
+ * <li>{@link #toWordCount()} で、全てのフィールドを計算済みの {@link WordCount} に変換できます。</li>
+ * </ul>
+ * <p>
+ * このクラスは不変であり、複数のスレッドから同時に使用できます。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+public final class WordFrequencies {
+    private final WordCountMap wordCounts;
+    private final long elapsedMillis;
+
+    /** これまでに計算した上位の単語 */
+    private volatile List<String> rankedWords = Collections.emptyList();
+
+    private WordFrequencies(WordCountMap wordCounts, long elapsedMillis) {
+        this.wordCounts = wordCounts;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * {@link WordCount#countWords(String)} と同じワードカウントを行います。
+     *
+     * @param text ワードカウント対象の文章
+     * @return ワードカウント結果
+     */
+    public static WordFrequencies countWords(String text) {
+        return countWords(text, WordNormalizer.DEFAULT);
+    }
+
+    /**
+     * {@link WordCount#countWords(String, WordNormalizer)} と同じワードカウントを行います。
+     *
+     * @param text       ワードカウント対象の文章
+     * @param normalizer 各単語の正規化の方法
+     * @return ワードカウント結果
+     */
+    public static WordFrequencies countWords(String text, WordNormalizer normalizer) {
+        WordCountTimer timer = new WordCountTimer();
+
+        WordCountMap wordCounts = new WordCountMap();
+        WordScanner scanner = new WordScanner(wordCounts, normalizer);
+        scanner.feed(text);
+        scanner.finish();
+        timer.charsProcessed(text.length());
+
+        return new WordFrequencies(wordCounts, timer.finish(wordCounts));
+    }
+
+    /**
+     * {@link WordCount#countWords(Reader)} と同じワードカウントを行います。
+     * Reader は閉じません。
+     *
+     * @param reader ワードカウント対象の文章を読み込む Reader
+     * @return ワードカウント結果
+     * @throws IOException 読み込みに失敗した場合
+     */
+    public static WordFrequencies countWords(Reader reader) throws IOException {
+        WordCountTimer timer = new WordCountTimer();
+
+        WordCountMap wordCounts = new WordCountMap();
+        WordScanner scanner = new WordScanner(wordCounts);
+        char[] buffer = new char[8192];
+        for (int n; (n = reader.read(buffer)) >= 0; ) {
+            scanner.feed(buffer, 0, n);
+            timer.charsProcessed(n);
+        }
+        scanner.finish();
+
+        return new WordFrequencies(wordCounts, timer.finish(wordCounts));
+    }
+
+    /**
+     * @param word 単語
+     * @return 単語の出現頻度。含まれていない場合は 0
+     */
+    public int countOf(String word) {
+        return wordCounts.countOf(word);
+    }
+
+    /**
+     * @param word 単語
+     * @return 単語が一度以上出現していれば true
+     */
+    public boolean contains(String word) {
+        return wordCounts.countOf(word) > 0;
+    }
+
+    /**
+     * @return 語彙数
+     */
+    public int size() {
+        return wordCounts.size();
+    }
+
+    /**
+     * @return 各単語の出現頻度。変更はできません
+     */
+    public Map<String, Integer> wordCounts() {
+        return Collections.unmodifiableMap(wordCounts);
+    }
+
+    /**
+     * @return ワードカウントの処理に要した時間 (ミリ秒)
+     */
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return 最頻出する単語の上位 3 個
+     * @see WordCount#top3Words
+     */
+    public List<String> top3Words() {
+        return topWords(3);
+    }
+
+    /**
+     * 最頻出する単語の上位 k 個を返します。
+     * 一度計算した順位は使い回すため、それ以下の k に対しては選び直しません。
+     *
+     * @param k 単語の数
+     * @return 最頻出する単語の上位 k 個。変更はできません
+     */
+    public List<String> topWords(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k には 0 以上の値を指定してください: " + k);
+        }
+
+        List<String> words = rankedWords;
+        if (words.size() < k && words.size() < wordCounts.size()) {
+            // 競合した場合は双方で計算するが、結果は同じになる
+            words = Collections.unmodifiableList(wordCounts.topWords(k));
+            rankedWords = words;
+        }
+        return words.size() <= k ? words : words.subList(0, k);
+    }
+
+    /**
+     * 全てのフィールドを計算済みの {@link WordCount} に変換します。{@link WordCount#text} は null となります。
+     *
+     * @return ワードカウント結果
+     */
+    public WordCount toWordCount() {
+        WordCountMap copy = new WordCountMap(wordCounts.size());
+        copy.addAll(wordCounts);
+
+        return new WordCount(copy, elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "WordFrequencies{size=" + size() + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
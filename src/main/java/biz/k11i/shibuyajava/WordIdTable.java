@@ -0,0 +1,112 @@
+package biz.k11i.shibuyajava;
+
+import java.util.Arrays;
+
+/**
+ * 単語に、現れた順に 0 から始まる ID を割り当てます。
+ * <p>
+ * 単語は ID の順に密な配列に格納し、ハッシュ値から ID を引く索引をオープンアドレス法で持ちます。
+ * 文字配列上の単語は、初めて現れたときにだけ {@link String} を生成します。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class WordIdTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /** 単語 ID + 1 を格納する索引。0 は空きを表す */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * @return 異なる単語の数
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return 単語 ID を添字とする単語の配列。size() 以降の要素は null
+     */
+    String[] words() {
+        return words;
+    }
+
+    /**
+     * 文字配列上の単語の ID を返します。初めて現れた単語には新しい ID を割り当てます。
+     */
+    int idOf(char[] chars, int length, int hash) {
+        int mask = slots.length - 1;
+        for (int i = WordCountMap.mix(hash) & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0) {
+                return add(new String(chars, 0, length), hash, i);
+            }
+
+            String word = words[id];
+            if (hashes[id] == hash && word.length() == length && WordCountMap.contentEquals(word, chars, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * 単語の ID を返します。初めて現れた単語には新しい ID を割り当てます。
+     */
+    int idOf(String word) {
+        int hash = word.hashCode();
+        int i = indexOf(word, hash);
+        int id = slots[i] - 1;
+        return id >= 0 ? id : add(word, hash, i);
+    }
+
+    /**
+     * 単語の ID を、新しい ID を割り当てずに返します。
+     *
+     * @return 単語の ID。含まれていない場合は -1
+     */
+    int find(String word) {
+        return slots[indexOf(word, word.hashCode())] - 1;
+    }
+
+    private int indexOf(String word, int hash) {
+        int mask = slots.length - 1;
+        for (int i = WordCountMap.mix(hash) & mask; ; i = (i + 1) & mask) {
+            int id = slots[i] - 1;
+            if (id < 0 || (hashes[id] == hash && words[id].equals(word))) {
+                return i;
+            }
+        }
+    }
+
+    private int add(String word, int hash, int slot) {
+        if (size == words.length) {
+            grow();
+            return idOf(word);
+        }
+
+        words[size] = word;
+        hashes[size] = hash;
+        slots[slot] = size + 1;
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = words.length * 2;
+        words = Arrays.copyOf(words, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+
+        slots = new int[capacity * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = WordCountMap.mix(hashes[id]) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package biz.k11i.shibuyajava;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * ホワイトスペースで区切った各単語を、数える前にどのように正規化するかを指定します。
+ * <p>
+ * 各単語には次の順に処理を適用します。
+ * </p>
+ * <ol>
+ * <li>Unicode の NFKC 正規化 (指定した場合のみ)</li>
+ * <li>大文字・小文字の統一</li>
+ * <li>約物 (Unicode の一般カテゴリ P*) の除去 (指定した場合のみ)</li>
+ * <li>ストップワードの除外</li>
+ * </ol>
+ * <p>
+ * これらの処理は単語の区切りを判定する走査の中で一文字ずつ行います。
+ * ASCII 文字だけからなる単語は中間の {@link String} を生成せずに正規化しますが、
+ * ASCII 以外の文字を含む単語は、{@link String#toLowerCase()} などと結果を一致させるために
+ * 単語ごとに {@link String} を生成して正規化します。
+ * NFKC 正規化と約物の除去を両方指定した場合は、約物を含む単語も同様に {@link String} を生成して正規化します。
+ * 正規化の結果が空文字列になった単語は数えません。
+ * </p>
+ * <p>
+ * {@link #DEFAULT} は {@link WordCount#countWords(String)} と同じく、
+ * デフォルトロケールで小文字化するだけの正規化を行います。
+ * このクラスは不変であり、各メソッドは設定を変更した新しいオブジェクトを返します。
+ * </p>
+ * <pre>
+ * WordNormalizer normalizer = WordNormalizer.DEFAULT
+ *         .caseFolding(WordNormalizer.CaseFolding.LOCALE_INDEPENDENT)
+ *         .nfkc(true)
+ *         .stripPunctuation(true)
+ *         .stopWords(Arrays.asList("a", "the"));
+ * WordCount.countWords("The ＡＰＩ, the api!", normalizer);  // {api: 2}
+ * </pre>
+ *
+ * @author KOMIYA Atsushi
+ */
+public final class WordNormalizer {
+    /**
+     * 大文字・小文字の統一方法です。
+     */
+    public enum CaseFolding {
+        /** デフォルトロケールで小文字化します ({@link String#toLowerCase()} と同じ結果になります) */
+        DEFAULT_LOCALE,
+
+        /** ロケールに依存せずに小文字化します ({@link String#toLowerCase(Locale)} に {@link Locale#ROOT} を指定した場合と同じ結果になります) */
+        LOCALE_INDEPENDENT,
+
+        /** 大文字・小文字を区別します */
+        NONE
+    }
+
+    /** デフォルトロケールで小文字化するだけの正規化 */
+    public static final WordNormalizer DEFAULT
+            = new WordNormalizer(CaseFolding.DEFAULT_LOCALE, false, false, Collections.<String>emptySet());
+
+    /** ASCII 文字のうち、約物であるものの表 */
+    private static final boolean[] ASCII_PUNCTUATION = new boolean[0x80];
+
+    static {
+        for (char ch = 0; ch < 0x80; ch++) {
+            ASCII_PUNCTUATION[ch] = isPunctuation(ch);
+        }
+    }
+
+    private final CaseFolding caseFolding;
+    private final boolean nfkc;
+    private final boolean stripPunctuation;
+    private final Set<String> stopWords;
+
+    /** 正規化したストップワードの表。ストップワードを指定していない場合は null */
+    private final WordCountMap stopWordTable;
+
+    private WordNormalizer(CaseFolding caseFolding, boolean nfkc, boolean stripPunctuation, Set<String> stopWords) {
+        this.caseFolding = caseFolding;
+        this.nfkc = nfkc;
+        this.stripPunctuation = stripPunctuation;
+        this.stopWords = stopWords;
+
+        if (stopWords.isEmpty()) {
+            this.stopWordTable = null;
+
+        } else {
+            this.stopWordTable = new WordCountMap();
+            for (String stopWord : stopWords) {
+                stopWordTable.put(normalize(stopWord), 1);
+            }
+        }
+    }
+
+    /**
+     * @param caseFolding 大文字・小文字の統一方法
+     * @return 大文字・小文字の統一方法を変更した WordNormalizer オブジェクト
+     */
+    public WordNormalizer caseFolding(CaseFolding caseFolding) {
+        if (caseFolding == null) {
+            throw new NullPointerException("caseFolding");
+        }
+        return new WordNormalizer(caseFolding, nfkc, stripPunctuation, stopWords);
+    }
+
+    /**
+     * @param nfkc Unicode の NFKC 正規化を行う場合は true
+     * @return NFKC 正規化を行うかどうかを変更した WordNormalizer オブジェクト
+     */
+    public WordNormalizer nfkc(boolean nfkc) {
+        return new WordNormalizer(caseFolding, nfkc, stripPunctuation, stopWords);
+    }
+
+    /**
+     * @param stripPunctuation 単語に含まれる約物を取り除く場合は true
+     * @return 約物を取り除くかどうかを変更した WordNormalizer オブジェクト
+     */
+    public WordNormalizer stripPunctuation(boolean stripPunctuation) {
+        return new WordNormalizer(caseFolding, nfkc, stripPunctuation, stopWords);
+    }
+
+    /**
+     * 数えない単語を指定します。
+     * ストップワードにも同じ正規化を適用してから比較します。
+     *
+     * @param stopWords 数えない単語
+     * @return ストップワードを変更した WordNormalizer オブジェクト
+     */
+    public WordNormalizer stopWords(Collection<String> stopWords) {
+        return new WordNormalizer(caseFolding, nfkc, stripPunctuation,
+                Collections.unmodifiableSet(new LinkedHashSet<>(stopWords)));
+    }
+
+    /**
+     * デフォルトロケールで ASCII の大文字を一文字ずつ小文字化してよいかどうかを判定します。
+     * デフォルトロケールはワードカウントを始めるたびに参照します。
+     *
+     * @return ASCII の大文字を 'a' から 'z' に置き換えてよい場合は true
+     */
+    boolean foldsAsciiPerChar() {
+        switch (caseFolding) {
+            case DEFAULT_LOCALE:
+                // トルコ語・アゼルバイジャン語のロケールでは 'I' が 'ı' に小文字化される
+                String language = Locale.getDefault().getLanguage();
+                return !"tr".equals(language) && !"az".equals(language);
+
+            case LOCALE_INDEPENDENT:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return ASCII の大文字を小文字化する必要がある場合は true
+     */
+    boolean foldsCase() {
+        return caseFolding != CaseFolding.NONE;
+    }
+
+    /**
+     * @return ASCII 以外の文字を含む単語を {@link #normalize(String)} で正規化する必要がある場合は true
+     */
+    boolean transformsNonAscii() {
+        return caseFolding != CaseFolding.NONE || nfkc || stripPunctuation;
+    }
+
+    /**
+     * @param ch ASCII 文字
+     * @return 約物を取り除く設定で、指定された文字が約物の場合は true
+     */
+    boolean stripsAscii(char ch) {
+        return stripPunctuation && ASCII_PUNCTUATION[ch];
+    }
+
+    /**
+     * NFKC 正規化を行う場合は、約物の直後の結合文字が約物と結合せずに前の文字と結合しないよう、
+     * 約物を残したまま NFKC 正規化を適用してから取り除く必要があります。
+     *
+     * @return 約物を一文字ずつ取り除いても {@link #normalize(String)} と結果が一致する場合は true
+     */
+    boolean stripsAsciiPerChar() {
+        return !nfkc;
+    }
+
+    /**
+     * 一つの単語に全ての正規化を適用します。ストップワードの除外は行いません。
+     *
+     * @param word 正規化する単語
+     * @return 正規化した単語
+     */
+    String normalize(String word) {
+        if (nfkc) {
+            word = Normalizer.normalize(word, Normalizer.Form.NFKC);
+        }
+
+        switch (caseFolding) {
+            case DEFAULT_LOCALE:
+                word = word.toLowerCase();
+                break;
+
+            case LOCALE_INDEPENDENT:
+                word = word.toLowerCase(Locale.ROOT);
+                break;
+
+            default:
+                break;
+        }
+
+        if (stripPunctuation) {
+            word = removePunctuation(word);
+        }
+        return word;
+    }
+
+    /**
+     * @return 正規化済みの単語がストップワードであれば true
+     */
+    boolean isStopWord(char[] chars, int length, int hash) {
+        return stopWordTable != null && stopWordTable.countOf(chars, length, hash) > 0;
+    }
+
+    /**
+     * @return 正規化済みの単語がストップワードであれば true
+     */
+    boolean isStopWord(String word) {
+        return stopWordTable != null && stopWordTable.countOf(word) > 0;
+    }
+
+    private static String removePunctuation(String word) {
+        StringBuilder sb = null;
+        for (int i = 0; i < word.length(); ) {
+            int codePoint = word.codePointAt(i);
+            int next = i + Character.charCount(codePoint);
+
+            if (isPunctuation(codePoint)) {
+                if (sb == null) {
+                    sb = new StringBuilder(word.length()).append(word, 0, i);
+                }
+
+            } else if (sb != null) {
+                sb.append(word, i, next);
+            }
+            i = next;
+        }
+        return sb != null ? sb.toString() : word;
+    }
+
+    private static boolean isPunctuation(int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WordNormalizer{caseFolding=" + caseFolding
+                + ", nfkc=" + nfkc
+                + ", stripPunctuation=" + stripPunctuation
+                + ", stopWords=" + stopWords + "}";
+    }
+}
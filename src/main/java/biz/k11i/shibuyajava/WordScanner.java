@@ -0,0 +1,252 @@
+package biz.k11i.shibuyajava;
+
+/**
+ * 文章を一文字ずつ走査し、ホワイトスペースで区切られた単語を {@link WordNormalizer} の指定に従って
+ * 正規化しながら {@link WordSink} に渡します。
+ * <p>
+ * {@code Pattern.compile("\\s+").split(text)} で分割した各単語に {@link WordNormalizer#normalize(String)} を
+ * 適用した結果と同じ単語を数えます。文章がホワイトスペースで始まる場合に先頭に現れる空文字列も、
+ * 後続に単語があれば一つの単語として数えます。
+ * </p>
+ * <p>
+ * ASCII 文字だけからなる単語は走査しながら小文字化や約物の除去を行うため、中間の {@link String} を生成しません。
+ * ASCII 以外の文字を含む単語は、{@link String#toLowerCase()} と結果を一致させるために
+ * 単語ごとに {@link String} を生成して正規化します。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class WordScanner {
+    private final WordSink sink;
+    private final WordNormalizer normalizer;
+
+    /** ASCII の大文字を小文字化するかどうか */
+    private final boolean foldsCase;
+
+    /** ASCII の大文字を単純に小文字化してよいかどうか。デフォルトロケールに依存するため {@link #reset()} のたびに判定し直す */
+    private boolean asciiFoldable;
+
+    /** ASCII 以外の文字を含む単語を {@link String} として正規化する必要があるかどうか */
+    private final boolean transformsNonAscii;
+
+    /** ASCII の約物を走査しながら取り除いてよいかどうか */
+    private final boolean stripsAsciiPerChar;
+
+    private char[] token = new char[32];
+    private int tokenLength;
+    private int tokenHash;
+
+    /** 現在の単語に、文字単位では小文字化できない文字が含まれているかどうか */
+    private boolean needsStringFolding;
+
+    /** ホワイトスペース以外の文字を走査してから、まだ単語を確定させていないかどうか (約物を取り除いて空になった場合も含む) */
+    private boolean inToken;
+
+    /** 一文字以上を走査したかどうか */
+    private boolean started;
+
+    /** 文章がホワイトスペースで始まり、先頭の空文字列をまだ数えていないかどうか */
+    private boolean leadingEmptyPending;
+
+    WordScanner(WordSink sink) {
+        this(sink, WordNormalizer.DEFAULT);
+    }
+
+    WordScanner(WordSink sink, WordNormalizer normalizer) {
+        this.sink = sink;
+        this.normalizer = normalizer;
+        this.foldsCase = normalizer.foldsCase();
+        this.asciiFoldable = normalizer.foldsAsciiPerChar();
+        this.transformsNonAscii = normalizer.transformsNonAscii();
+        this.stripsAsciiPerChar = normalizer.stripsAsciiPerChar();
+    }
+
+    /**
+     * 走査の状態を初期化し、別の文章を先頭から走査できるようにします。
+     * 単語のバッファは再利用し、デフォルトロケールは改めて参照します。
+     */
+    void reset() {
+        asciiFoldable = normalizer.foldsAsciiPerChar();
+        tokenLength = 0;
+        tokenHash = 0;
+        needsStringFolding = false;
+        inToken = false;
+        started = false;
+        leadingEmptyPending = false;
+    }
+
+    /**
+     * 文章の途中から走査を始めることを指定します。
+     * 走査範囲の先頭がホワイトスペースであっても、先頭の空文字列を数えなくなります。
+     */
+    void startInMiddle() {
+        started = true;
+    }
+
+    /**
+     * 指定された文章を走査します。
+     *
+     * @param text 走査対象の文章
+     */
+    void feed(CharSequence text) {
+        feed(text, 0, text.length());
+    }
+
+    /**
+     * 指定された文章の一部を走査します。
+     *
+     * @param text  走査対象の文章
+     * @param begin 走査を開始する位置
+     * @param end   走査を終了する位置 (この位置の文字は含まない)
+     */
+    void feed(CharSequence text, int begin, int end) {
+        if (begin >= end) {
+            return;
+        }
+
+        if (!started) {
+            started = true;
+            leadingEmptyPending = isWhitespace(text.charAt(begin));
+        }
+
+        for (int i = begin; i < end; i++) {
+            accept(text.charAt(i));
+        }
+    }
+
+    /**
+     * 文字配列の一部を走査します。
+     *
+     * @param chars 走査対象の文字配列
+     * @param begin 走査を開始する位置
+     * @param end   走査を終了する位置 (この位置の文字は含まない)
+     */
+    void feed(char[] chars, int begin, int end) {
+        if (begin >= end) {
+            return;
+        }
+
+        if (!started) {
+            started = true;
+            leadingEmptyPending = isWhitespace(chars[begin]);
+        }
+
+        for (int i = begin; i < end; i++) {
+            accept(chars[i]);
+        }
+    }
+
+    private void accept(char ch) {
+        if (isWhitespace(ch)) {
+            if (inToken) {
+                flushToken();
+            }
+            return;
+        }
+        inToken = true;
+
+        if (ch < 0x80) {
+            if (normalizer.stripsAscii(ch)) {
+                if (stripsAsciiPerChar) {
+                    return;
+                }
+                // NFKC 正規化の後で取り除くため、単語全体を String として正規化する
+                needsStringFolding = true;
+            }
+
+            if (ch >= 'A' && ch <= 'Z' && foldsCase) {
+                if (asciiFoldable) {
+                    ch += 'a' - 'A';
+                } else {
+                    needsStringFolding = true;
+                }
+            }
+
+        } else if (transformsNonAscii) {
+            needsStringFolding = true;
+        }
+
+        if (tokenLength == token.length) {
+            char[] newToken = new char[token.length * 2];
+            System.arraycopy(token, 0, newToken, 0, tokenLength);
+            token = newToken;
+        }
+
+        token[tokenLength++] = ch;
+        tokenHash = 31 * tokenHash + ch;
+    }
+
+    /**
+     * 走査途中の単語を確定させます。
+     * 文章を全て走査し終えた後に呼び出してください。
+     */
+    void finish() {
+        if (!started) {
+            // "".split() は空文字列を一つ返す
+            acceptEmpty();
+            started = true;
+            return;
+        }
+
+        if (inToken) {
+            flushToken();
+        }
+    }
+
+    /**
+     * 走査途中の単語を確定させます。
+     * 先頭の空文字列は、後続の単語が正規化によって空になる場合でも数えます。
+     */
+    private void flushToken() {
+        inToken = false;
+        if (leadingEmptyPending) {
+            acceptEmpty();
+            leadingEmptyPending = false;
+        }
+
+        if (tokenLength == 0) {
+            return;
+        }
+
+        if (needsStringFolding) {
+            String word = normalizer.normalize(new String(token, 0, tokenLength));
+            if (!word.isEmpty() && !normalizer.isStopWord(word)) {
+                sink.accept(word);
+            }
+            needsStringFolding = false;
+
+        } else if (!normalizer.isStopWord(token, tokenLength, tokenHash)) {
+            sink.accept(token, tokenLength, tokenHash);
+        }
+
+        tokenLength = 0;
+        tokenHash = 0;
+    }
+
+    private void acceptEmpty() {
+        if (!normalizer.isStopWord("")) {
+            sink.accept("");
+        }
+    }
+
+    /**
+     * 正規表現の {@code \s} と同じく、{@code [ \t\n\x0B\f\r]} のいずれかであるかを判定します。
+     *
+     * @param ch 判定対象の文字
+     * @return ホワイトスペースであれば true
+     */
+    static boolean isWhitespace(char ch) {
+        switch (ch) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                return true;
+
+            default:
+                return false;
+        }
+    }
+}
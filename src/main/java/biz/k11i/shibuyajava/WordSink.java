@@ -0,0 +1,25 @@
+package biz.k11i.shibuyajava;
+
+/**
+ * {@link WordScanner} が切り出した単語を受け取ります。
+ *
+ * @author KOMIYA Atsushi
+ */
+interface WordSink {
+    /**
+     * 文字配列上の単語を受け取ります。
+     * 文字配列の内容は呼び出し後に書き換えられるため、保持する場合は複製してください。
+     *
+     * @param chars  単語を含む文字配列
+     * @param length 単語の長さ
+     * @param hash   {@link String#hashCode()} と同じ方法で計算した単語のハッシュ値
+     */
+    void accept(char[] chars, int length, int hash);
+
+    /**
+     * 単語を受け取ります。
+     *
+     * @param word 単語
+     */
+    void accept(String word);
+}
@@ -0,0 +1,203 @@
+package biz.k11i.matcher;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link PropertyFieldAccessor} オブジェクトを {@link Class} ごとに保持するキャッシュです。
+ * <p>
+ * PropertyFieldAccessor は {@link ClassValue} に保持します。
+ * ClassValue の値は対象のクラス自身に関連付けられるため、値が Field / Method / MethodHandle を通じてクラスを参照していても、
+ * クラスローダーごとアンロードされる妨げにはなりません。
+ * 同じ名前の別のクラスローダーのクラスとは、別のエントリになります。
+ * </p>
+ * <p>
+ * LRU の判定に使う最終参照時刻は、クラスを弱参照でのみ参照する別の Map で管理します。
+ * アンロードされたクラスの最終参照時刻は、次にエントリを生成するときに削除します。
+ * エントリ数が上限を超えると、最後に参照されてから最も時間の経っているエントリを ClassValue から削除します。
+ * </p>
+ * <p>
+ * 論理時刻はエントリを生成するときにだけ進めます。キャッシュにあった場合は、最終参照時刻が現在の論理時刻より
+ * 古いときに限り書き換えるため、エントリの生成がない間は共有の変数に書き込みません
+ * (ヒット数は {@link LongAdder} で数えます)。
+ * そのため最終参照時刻の精度はエントリの生成の間隔までとなり、その間に参照されたエントリ同士の順序は区別しません。
+ * </p>
+ * <p>
+ * 一つのクラスに対する PropertyFieldAccessor の生成は一度だけ行い、
+ * 同時に要求したスレッドは生成の完了を待って同じオブジェクトを受け取ります。
+ * </p>
+ * <p>
+ * このクラスはスレッドセーフです。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+class AccessorCache {
+    private final ClassValue<Holder> holders = new ClassValue<Holder>() {
+        @Override
+        protected Holder computeValue(Class<?> type) {
+            return new Holder();
+        }
+    };
+
+    /** キャッシュしているクラスの弱参照と、その最終参照時刻 */
+    private final ConcurrentHashMap<WeakReference<Class<?>>, Stamp> stamps = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Class<?>> staleKeys = new ReferenceQueue<>();
+    private final Object evictionLock = new Object();
+
+    /**
+     * 参照の順序を表す論理時刻。エントリを生成するたびに 2 進め、生成したエントリには奇数、
+     * その後に参照されたエントリには次の生成までの偶数の時刻を設定します
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private volatile int maximumSize;
+
+    /**
+     * @param maximumSize 保持するエントリ数の上限
+     */
+    AccessorCache(int maximumSize) {
+        setMaximumSize(maximumSize);
+    }
+
+    PropertyFieldAccessor get(Class<?> clazz) {
+        Holder holder = holders.get(clazz);
+        PropertyFieldAccessor accessor = holder.accessor;
+        if (accessor != null) {
+            hitCount.increment();
+            touch(holder.stamp);
+            return accessor;
+        }
+
+        expungeStaleEntries();
+
+        boolean created = false;
+        synchronized (holder) {
+            accessor = holder.accessor;
+            if (accessor == null) {
+                accessor = new PropertyFieldAccessor(PropertyFieldAccessor.prepareAccessors(clazz));
+                holder.stamp.lastAccess = clock.addAndGet(2) - 1;
+                stamps.put(new WeakReference<Class<?>>(clazz, staleKeys), holder.stamp);
+                holder.accessor = accessor;
+                created = true;
+            }
+        }
+
+        if (created) {
+            missCount.increment();
+            evictIfNecessary();
+
+        } else {
+            hitCount.increment();
+            touch(holder.stamp);
+        }
+
+        return accessor;
+    }
+
+    /**
+     * 最終参照時刻を現在の論理時刻に更新します。既に更新済みであれば書き込みません。
+     */
+    private void touch(Stamp stamp) {
+        long now = clock.get();
+        if (stamp.lastAccess != now) {
+            stamp.lastAccess = now;
+        }
+    }
+
+    void setMaximumSize(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize には 1 以上の値を指定してください: " + maximumSize);
+        }
+
+        this.maximumSize = maximumSize;
+        evictIfNecessary();
+    }
+
+    int maximumSize() {
+        return maximumSize;
+    }
+
+    int size() {
+        expungeStaleEntries();
+        return stamps.size();
+    }
+
+    void clear() {
+        for (WeakReference<Class<?>> key : stamps.keySet()) {
+            remove(key);
+        }
+    }
+
+    PropertyFieldAccessor.CacheStats stats() {
+        return new PropertyFieldAccessor.CacheStats(
+                hitCount.sum(), missCount.sum(), evictionCount.sum(), size(), maximumSize);
+    }
+
+    private void evictIfNecessary() {
+        if (stamps.size() <= maximumSize) {
+            return;
+        }
+
+        synchronized (evictionLock) {
+            while (stamps.size() > maximumSize) {
+                Map.Entry<WeakReference<Class<?>>, Stamp> eldest = null;
+                for (Map.Entry<WeakReference<Class<?>>, Stamp> e : stamps.entrySet()) {
+                    if (eldest == null || e.getValue().lastAccess < eldest.getValue().lastAccess) {
+                        eldest = e;
+                    }
+                }
+
+                if (eldest == null) {
+                    return;
+                }
+
+                if (remove(eldest.getKey())) {
+                    evictionCount.increment();
+                }
+            }
+        }
+    }
+
+    private boolean remove(WeakReference<Class<?>> key) {
+        if (stamps.remove(key) == null) {
+            return false;
+        }
+
+        Class<?> clazz = key.get();
+        if (clazz != null) {
+            holders.remove(clazz);
+        }
+        return true;
+    }
+
+    private void expungeStaleEntries() {
+        for (Reference<? extends Class<?>> key; (key = staleKeys.poll()) != null; ) {
+            stamps.remove(key);
+        }
+    }
+
+    /**
+     * ClassValue に保持する値です。PropertyFieldAccessor は最初に要求されたときに一度だけ生成します。
+     */
+    private static class Holder {
+        final Stamp stamp = new Stamp();
+        volatile PropertyFieldAccessor accessor;
+    }
+
+    /**
+     * エントリの最終参照時刻です。クラスを参照しないよう、Holder とは別のオブジェクトにしています。
+     */
+    private static class Stamp {
+        volatile long lastAccess;
+    }
+}
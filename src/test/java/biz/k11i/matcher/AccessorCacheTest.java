@@ -0,0 +1,188 @@
+package biz.k11i.matcher;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * AccessorCache クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class AccessorCacheTest {
+    public static class A {
+        public int a;
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class B {
+        public int b;
+    }
+
+    public static class C {
+        public int c;
+    }
+
+    @Test
+    public void 同じクラスには同じPropertyFieldAccessorを返し統計情報を数えること() {
+        AccessorCache cache = new AccessorCache(10);
+
+        PropertyFieldAccessor accessor = cache.get(A.class);
+        assertThat(cache.get(A.class), is(sameInstance(accessor)));
+        assertThat(cache.get(A.class), is(sameInstance(accessor)));
+        cache.get(B.class);
+
+        PropertyFieldAccessor.CacheStats stats = cache.stats();
+        assertThat(stats.hitCount(), is(2L));
+        assertThat(stats.missCount(), is(2L));
+        assertThat(stats.evictionCount(), is(0L));
+        assertThat(stats.size(), is(2));
+        assertThat(stats.hitRate(), is(0.5));
+    }
+
+    @Test
+    public void 上限を超えると最も長く参照されていないエントリを削除すること() {
+        AccessorCache cache = new AccessorCache(2);
+
+        PropertyFieldAccessor a = cache.get(A.class);
+        cache.get(B.class);
+        assertThat(cache.get(A.class), is(sameInstance(a)));
+
+        // B が最も長く参照されていない
+        cache.get(C.class);
+        assertThat(cache.size(), is(2));
+        assertThat(cache.stats().evictionCount(), is(1L));
+        assertThat(cache.get(A.class), is(sameInstance(a)));
+
+        long misses = cache.stats().missCount();
+        cache.get(B.class);
+        assertThat(cache.stats().missCount(), is(misses + 1));
+
+        cache.setMaximumSize(1);
+        assertThat(cache.size(), is(1));
+        assertThat(cache.stats().maximumSize(), is(1));
+    }
+
+    @Test
+    public void 名前が同じでもクラスローダーの異なるクラスは別のエントリとなること() throws Exception {
+        URL classes = A.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes}, null)) {
+            Class<?> another = loader.loadClass(A.class.getName());
+            assertThat(another, is(not(sameInstance((Object) A.class))));
+
+            AccessorCache cache = new AccessorCache(10);
+            assertThat(cache.get(another), is(not(sameInstance(cache.get(A.class)))));
+            assertThat(cache.size(), is(2));
+        }
+    }
+
+    @Test
+    public void クラスローダーが回収されるとエントリも削除されること() throws Exception {
+        AccessorCache cache = new AccessorCache(10);
+        WeakReference<ClassLoader> loaderRef = loadInThrowawayLoader(cache);
+        assertThat(cache.size(), is(1));
+
+        assumeTrue("GC がクラスローダーを回収しなかったため検証できません", awaitCollection(loaderRef));
+
+        // 弱参照は回収後に非同期で ReferenceQueue に追加されるため、エントリの削除を待つ
+        for (int i = 0; i < 50 && cache.size() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(cache.size(), is(0));
+    }
+
+    /**
+     * 指定された弱参照の参照先が回収されるまで GC を促します。
+     * -XX:+DisableExplicitGC で {@link System#gc()} が無視される環境でも GC が起きるよう、ヒープを消費します。
+     *
+     * @return 回収された場合は true
+     */
+    private static boolean awaitCollection(WeakReference<?> ref) {
+        long budget = Runtime.getRuntime().maxMemory() / 4;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        List<byte[]> garbage = new ArrayList<>();
+        while (ref.get() != null && System.nanoTime() < deadline) {
+            System.gc();
+
+            // 一部を保持し続けて古い世代にも溜まるようにし、上限に達したら手放す
+            if ((long) garbage.size() << 20 >= budget) {
+                garbage.clear();
+            }
+            garbage.add(new byte[1 << 20]);
+        }
+        return ref.get() == null;
+    }
+
+    private static WeakReference<ClassLoader> loadInThrowawayLoader(AccessorCache cache) throws Exception {
+        URL classes = A.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes}, null)) {
+            Class<?> another = loader.loadClass(A.class.getName());
+            Object instance = another.getDeclaredConstructor().newInstance();
+            for (Map.Entry<String, PropertyFieldAccessor.Accessor> entry : cache.get(another).newIterable()) {
+                entry.getValue().get(instance);
+            }
+            return new WeakReference<ClassLoader>(loader);
+        }
+    }
+
+    @Test
+    public void 複数のスレッドから同時に要求しても一度だけ生成すること() throws Exception {
+        final AccessorCache cache = new AccessorCache(10);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<PropertyFieldAccessor>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<PropertyFieldAccessor>() {
+                    @Override
+                    public PropertyFieldAccessor call() throws Exception {
+                        start.await();
+                        return cache.get(A.class);
+                    }
+                }));
+            }
+            start.countDown();
+
+            PropertyFieldAccessor first = futures.get(0).get();
+            for (Future<PropertyFieldAccessor> future : futures) {
+                assertThat(future.get(), is(sameInstance(first)));
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(cache.stats().missCount(), is(1L));
+        assertThat(cache.stats().hitCount(), is(7L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 上限に0以下は指定できないこと() {
+        new AccessorCache(0);
+    }
+}
@@ -0,0 +1,120 @@
+package biz.k11i.matcher;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 期待される値のクラスごとに、照合の方法をあらかじめ解決したものです。
+ * <p>
+ * 照合の方法 (配列 / List / Map / プロパティの列挙 / equals) の判定はクラスごとに一度だけ行い、{@link ClassValue} に保持します。
+ * 照合時はオブジェクト階層の各要素について {@link #of(Object)} で計画を引くだけで済み、
+ * {@code isAssignableFrom} の判定や {@code equals} メソッドのリフレクションによる探索を繰り返しません。
+ * プロパティを列挙する場合は、計画を作るときに {@link PropertyFieldAccessor} を一度だけ取得して計画に保持します。
+ * 照合中はキャッシュを参照しないため、キャッシュの統計情報や LRU の判定には影響しません。
+ * 計画はクラスがアンロードされるまでアクセサを保持するので、キャッシュのエントリ数の上限は
+ * {@link PropertyFieldAccessor#newInstance(Class)} から取得できるアクセサの数だけを制限します。
+ * </p>
+ * <p>
+ * このクラスは不変であり、複数のスレッドから同時に使用できます。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class ComparisonPlan {
+    /**
+     * 照合の方法です。
+     */
+    enum Kind {
+        /** 期待される値が null */
+        NULL,
+
+        /** 配列の要素を順に照合する */
+        ARRAY,
+
+        /** {@link List} の要素を順に照合する */
+        LIST,
+
+        /** {@link Map} のキーごとに値を照合する */
+        MAP,
+
+        /** {@link Object#equals(Object)} がオーバーライドされていないため、プロパティを列挙して照合する */
+        PROPERTIES,
+
+        /** {@link Object#equals(Object)} で照合する */
+        EQUALS
+    }
+
+    /** 期待される値が null の場合の計画 */
+    static final ComparisonPlan NULL = new ComparisonPlan(Kind.NULL, null);
+
+    private static final ClassValue<ComparisonPlan> PLANS = new ClassValue<ComparisonPlan>() {
+        @Override
+        protected ComparisonPlan computeValue(Class<?> type) {
+            return compile(type);
+        }
+    };
+
+    final Kind kind;
+    final Class<?> type;
+
+    /** {@link Kind#ARRAY} の場合に、要素がプリミティブ型かどうか */
+    final boolean primitiveArray;
+
+    /** {@link Kind#PROPERTIES} の場合に列挙するプロパティのアクセサ。それ以外の場合は null */
+    final PropertyFieldAccessor properties;
+
+    private ComparisonPlan(Kind kind, Class<?> type) {
+        this.kind = kind;
+        this.type = type;
+        this.primitiveArray = kind == Kind.ARRAY && type.getComponentType().isPrimitive();
+        this.properties = kind == Kind.PROPERTIES ? PropertyFieldAccessor.newInstance(type) : null;
+    }
+
+    /**
+     * @param expectedObject 期待される値
+     * @return 期待される値を照合する計画
+     */
+    static ComparisonPlan of(Object expectedObject) {
+        if (expectedObject == null) {
+            return NULL;
+        }
+        return PLANS.get(expectedObject.getClass());
+    }
+
+    static ComparisonPlan compile(Class<?> type) {
+        if (type.isArray()) {
+            return new ComparisonPlan(Kind.ARRAY, type);
+        }
+
+        if (List.class.isAssignableFrom(type)) {
+            // TODO 順序を無視するかどうかの確認が、ここで必要となる
+            return new ComparisonPlan(Kind.LIST, type);
+        }
+
+        if (Map.class.isAssignableFrom(type)) {
+            return new ComparisonPlan(Kind.MAP, type);
+        }
+
+        if (hasOverridenEqualsMethod(type)) {
+            return new ComparisonPlan(Kind.EQUALS, type);
+        }
+
+        return new ComparisonPlan(Kind.PROPERTIES, type);
+    }
+
+    static boolean hasOverridenEqualsMethod(Class<?> clazz) {
+        try {
+            Method equalsMethod = clazz.getMethod("equals", Object.class);
+            return equalsMethod.getDeclaringClass() != Object.class;
+
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(clazz + " に equals(Object) メソッドが見つかりません", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ComparisonPlan{" + kind + ", " + type + "}";
+    }
+}
@@ -4,8 +4,10 @@ import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 二つのオブジェクトを照合する {@link BaseMatcher} の実装です。
@@ -63,6 +65,35 @@ public class IsEquivalentTo extends BaseMatcher<Object> {
         return this;
     }
 
+    /**
+     * 要素数が {@value MatchingContext#DEFAULT_PARALLEL_THRESHOLD} を超える List / 配列 / Map の要素を、
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()} で並列に照合します。
+     *
+     * @return この IsEquivalentTo オブジェクト
+     * @see #parallel(int)
+     */
+    public IsEquivalentTo parallel() {
+        return parallel(MatchingContext.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * 要素数が threshold を超える List / 配列 / Map の要素を、
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()} で並列に照合します。
+     * <p>
+     * 要素の並びを threshold 個以下の区間に分割し、区間ごとに個別のオブジェクト階層と照合結果のメッセージを持つタスクで照合します。
+     * 一致しない要素が複数ある場合も、逐次に照合した場合と同じく、最も先頭に近い要素 (Map の場合は期待される値の反復順で最初のエントリ) を報告します。
+     * 照合中は、期待される値と実際の値のオブジェクトが複数のスレッドから同時に参照されます。
+     * プリミティブ型の配列は要素を一括して比較するため、並列には照合しません。
+     * </p>
+     *
+     * @param threshold 並列に照合する要素数のしきい値 (1 以上)
+     * @return この IsEquivalentTo オブジェクト
+     */
+    public IsEquivalentTo parallel(int threshold) {
+        matchingContext.setParallelThreshold(threshold);
+        return this;
+    }
+
     public static PathPattern pathPattern(String pathPattern) {
         return PathPattern.compile(pathPattern);
     }
@@ -70,25 +101,67 @@ public class IsEquivalentTo extends BaseMatcher<Object> {
 
 /**
  * 二つのオブジェクトの比較をします。
+ * <p>
+ * 期待される値のクラスごとの照合の方法は {@link ComparisonPlan} から引き、
+ * 照合の方法ごとの InternalMatcher はこのオブジェクトで一つずつ保持して使い回します。
+ * </p>
  *
  * @author KOMIYA Atsushi
  */
 class MatchingContext {
-    private List<PathPattern> excludePaths = new ArrayList<>();
+    /** {@link IsEquivalentTo#parallel()} で並列に照合する要素数のしきい値 */
+    static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+
+    private final List<PathPattern> excludePaths;
+
+    /** 並列に照合する要素数のしきい値。0 の場合は並列に照合しない */
+    private int parallelThreshold;
 
-    private ObjectPath currentPath = new ObjectPath();
+    private final ObjectPath currentPath;
     private String fixedObjectHierarchy;
 
+    /** オブジェクト階層の深さごとに使い回す、List / 配列のインデックスのパス要素 */
+    private final List<ObjectPath.IndexElement> indexElements = new ArrayList<>();
+
     private String expectedMessage;
     private String mismatchMessage;
 
+    private final InternalMatcher nullMatcher = new NullMatcher();
+    private final InternalMatcher arrayMatcher = new ArrayMatcher();
+    private final InternalMatcher listMatcher = new ListMatcher();
+    private final InternalMatcher mapMatcher = new MapMatcher();
+    private final InternalMatcher propertyEnumerationMatcher = new PropertyEnumerationMatcher();
+    private final InternalMatcher equalsMatcher = new EqualsMatcher();
+
+    MatchingContext() {
+        this.excludePaths = new ArrayList<>();
+        this.currentPath = new ObjectPath();
+    }
+
+    /**
+     * 並列に照合するタスクのための MatchingContext を生成します。
+     * 除外するパスとしきい値は共有し、オブジェクト階層は現在の状態を複製します。
+     */
+    private MatchingContext(MatchingContext parent) {
+        this.excludePaths = parent.excludePaths;
+        this.parallelThreshold = parent.parallelThreshold;
+        this.currentPath = new ObjectPath(new ArrayList<>(parent.currentPath.pathElements()));
+    }
+
     void addExcludePaths(PathPattern[] pathPatterns) {
         Collections.addAll(excludePaths, pathPatterns);
     }
 
+    void setParallelThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold には 1 以上の値を指定してください: " + threshold);
+        }
+        parallelThreshold = threshold;
+    }
+
     boolean matches(Object expectedObject, Object actualObject) {
-        InternalMatcher subMatcher = newInternalMatcher(expectedObject);
-        return subMatcher.matches(actualObject);
+        ComparisonPlan plan = ComparisonPlan.of(expectedObject);
+        return internalMatcherOf(plan).matches(plan, expectedObject, actualObject);
     }
 
     String expectedMessage() {
@@ -115,12 +188,16 @@ class MatchingContext {
         fixedObjectHierarchy = currentPath.toString();
     }
 
-    boolean needVerification(ObjectPath.Element.Type type, String name) {
+    boolean needVerification(ObjectPath.Element element) {
+        if (excludePaths.isEmpty()) {
+            return true;
+        }
+
         boolean need = true;
 
         // needsConsiderationOfElementOrder() とは呼び出しタイミングが
         // ことなるため、こちらは仮に currentPath に積む必要がある
-        currentPath.push(type.newElement(name));
+        currentPath.push(element);
 
         for (PathPattern excludePath : excludePaths) {
             if (excludePath.isAcceptable(currentPath)) {
@@ -133,58 +210,217 @@ class MatchingContext {
         return need;
     }
 
-    @SuppressWarnings("unchecked")
-    InternalMatcher newInternalMatcher(Object targetObject) {
-        if (targetObject == null) {
-            return new NullMatcher();
+    InternalMatcher internalMatcherOf(ComparisonPlan plan) {
+        switch (plan.kind) {
+            case NULL:
+                return nullMatcher;
+            case ARRAY:
+                return arrayMatcher;
+            case LIST:
+                return listMatcher;
+            case MAP:
+                return mapMatcher;
+            case PROPERTIES:
+                return propertyEnumerationMatcher;
+            default:
+                return equalsMatcher;
         }
+    }
+
+    interface InternalMatcher {
+        /**
+         * @param plan     期待される値を照合する計画
+         * @param expected 期待される値
+         * @param actual   実際の値
+         * @return 一致する場合は true
+         */
+        boolean matches(ComparisonPlan plan, Object expected, Object actual);
+    }
+
+    boolean forwardMatching(ObjectPath.Element element, Object expected, Object actual) {
+        currentPath.push(element);
+
+        boolean result = matches(expected, actual);
+
+        currentPath.pop();
+
+        return result;
+    }
+
+    /**
+     * List / 配列の index 番目の要素を照合します。
+     *
+     * @return 一致する、または照合の対象外の場合は true
+     */
+    boolean matchesElementAt(int index, Object expected, Object actual) {
+        ObjectPath.Element element = indexElementAt(index);
+        return !needVerification(element) || forwardMatching(element, expected, actual);
+    }
 
-        Class clazz = targetObject.getClass();
-        if (clazz.isArray()) {
-            return new ArrayMatcher(targetObject);
+    /**
+     * 現在のオブジェクト階層の深さで使い回すパス要素を、index 番目の要素を表すように書き換えて返します。
+     * 要素の照合中にそれより深い階層で使うパス要素は別のオブジェクトのため、書き換わることはありません。
+     */
+    private ObjectPath.IndexElement indexElementAt(int index) {
+        int depth = currentPath.depth();
+        while (indexElements.size() <= depth) {
+            indexElements.add(new ObjectPath.IndexElement());
         }
+        return indexElements.get(depth).at(index);
+    }
 
-        if (List.class.isAssignableFrom(clazz)) {
-            // TODO 順序を無視するかどうかの確認が、ここで必要となる
-            return new ListMatcher(List.class.cast(targetObject));
+    /**
+     * Map のエントリを照合します。
+     *
+     * @return 一致する、または照合の対象外の場合は true
+     */
+    boolean matchesEntry(Map.Entry<?, ?> expectedEntry, Map<Object, Object> actualMap) {
+        String key = String.valueOf(expectedEntry.getKey());
+        ObjectPath.Element element = ObjectPath.Element.Type.MAP.newElement(key);
+        if (!needVerification(element)) {
+            return true;
         }
 
-        if (Map.class.isAssignableFrom(clazz)) {
-            return new MapMatcher(Map.class.cast(targetObject));
+        if (!forwardMatching(element, expectedEntry.getValue(), actualMap.get(key))) {
+            if (!actualMap.containsKey(key)) {
+                setMismatchMessage("は存在しません");
+            }
+            return false;
         }
 
-        if (!hasOverridenEqualsMethod(clazz)) {
-            return new PropertyEnumerationMatcher(targetObject);
+        return true;
+    }
+
+    /**
+     * プリミティブ型の配列を {@link PrimitiveArrays#mismatch(Object, Object, int, int)} で一括して比較します。
+     * 要素をボクシングするのは一致しない要素だけで、その要素を照合してメッセージを組み立てます。
+     * 一致しない要素が照合の対象外の場合は、その次の要素から比較を続けます。
+     */
+    boolean matchesPrimitiveArray(Object expectedArray, Object actualArray, int length) {
+        for (int fromIndex = 0; fromIndex < length; ) {
+            int index = PrimitiveArrays.mismatch(expectedArray, actualArray, fromIndex, length);
+            if (index < 0) {
+                return true;
+            }
+
+            if (!matchesElementAt(index, Array.get(expectedArray, index), Array.get(actualArray, index))) {
+                return false;
+            }
+            fromIndex = index + 1;
         }
 
-        return new EqualsMatcher(targetObject);
+        return true;
     }
 
-    static boolean hasOverridenEqualsMethod(Class clazz) {
-        try {
-            Method equalsMethod = clazz.getMethod("equals", Object.class);
-            return !"java.lang.Object".equals(equalsMethod.getDeclaringClass().getName());
+    boolean needsParallelMatching(int size) {
+        return parallelThreshold > 0 && size > parallelThreshold;
+    }
 
-        } catch (NoSuchMethodException e) {
-            // TODO エラーメッセージ
-            throw new RuntimeException("");
+    /**
+     * 要素の並びを区間に分割し、{@link ForkJoinPool#commonPool()} で並列に照合します。
+     * 一致しない要素がある場合は、最も先頭に近い要素を照合したタスクのメッセージとオブジェクト階層を引き継ぎます。
+     *
+     * @return 全ての要素が一致する場合は true
+     */
+    boolean matchesInParallel(IndexedElements elements) {
+        ParallelMatchingTask task = new ParallelMatchingTask(
+                this, elements, 0, elements.size(), new AtomicInteger(Integer.MAX_VALUE));
+
+        MatchingContext mismatched = ForkJoinPool.commonPool().invoke(task);
+        if (mismatched == null) {
+            return true;
         }
+
+        expectedMessage = mismatched.expectedMessage;
+        mismatchMessage = mismatched.mismatchMessage;
+        fixedObjectHierarchy = mismatched.fixedObjectHierarchy;
+        return false;
     }
 
-    interface InternalMatcher {
-        boolean matches(Object object);
+    /**
+     * 並列に照合する要素の並びです。
+     */
+    interface IndexedElements {
+        int size();
+
+        /**
+         * @param context 照合するタスクの MatchingContext
+         * @param index   要素のインデックス
+         * @return 一致する、または照合の対象外の場合は true
+         */
+        boolean matches(MatchingContext context, int index);
     }
 
-    abstract class InternalMatcherBase implements InternalMatcher {
-        boolean forwardMatching(ObjectPath.Element.Type type, Pair<String, Object> expected, Object actual) {
-            currentPath.push(type.newElement(expected.first));
+    /**
+     * 要素の区間を二分しながら照合するタスクです。
+     * 区間ごとに個別の MatchingContext で照合し、一致しない要素があればその MatchingContext を返します。
+     * 左側の区間の結果を優先するため、返すのは常に最も先頭に近い不一致です。
+     * より先頭に近い不一致が見つかった後は、それより後ろの要素の照合を打ち切ります。
+     *
+     * @author KOMIYA Atsushi
+     */
+    static class ParallelMatchingTask extends RecursiveTask<MatchingContext> {
+        private static final long serialVersionUID = 1L;
+
+        private final MatchingContext parent;
+        private final IndexedElements elements;
+        private final int begin;
+        private final int end;
+
+        /** これまでに見つかった、最も先頭に近い不一致のインデックス */
+        private final AtomicInteger firstMismatch;
+
+        ParallelMatchingTask(
+                MatchingContext parent,
+                IndexedElements elements,
+                int begin,
+                int end,
+                AtomicInteger firstMismatch) {
+
+            this.parent = parent;
+            this.elements = elements;
+            this.begin = begin;
+            this.end = end;
+            this.firstMismatch = firstMismatch;
+        }
+
+        @Override
+        protected MatchingContext compute() {
+            if (firstMismatch.get() < begin) {
+                return null;
+            }
+
+            if (end - begin <= parent.parallelThreshold) {
+                MatchingContext context = new MatchingContext(parent);
+                for (int index = begin; index < end; index++) {
+                    if (firstMismatch.get() < index) {
+                        return null;
+                    }
+
+                    if (!elements.matches(context, index)) {
+                        updateFirstMismatch(index);
+                        return context;
+                    }
+                }
+                return null;
+            }
+
+            int mid = begin + (end - begin) / 2;
+            ParallelMatchingTask right = new ParallelMatchingTask(parent, elements, mid, end, firstMismatch);
+            right.fork();
 
-            InternalMatcher subMatcher = newInternalMatcher(expected.second);
-            boolean result = subMatcher.matches(actual);
+            MatchingContext left = new ParallelMatchingTask(parent, elements, begin, mid, firstMismatch).compute();
+            MatchingContext rightResult = right.join();
 
-            currentPath.pop();
+            return left != null ? left : rightResult;
+        }
 
-            return result;
+        private void updateFirstMismatch(int index) {
+            for (int current; index < (current = firstMismatch.get()); ) {
+                if (firstMismatch.compareAndSet(current, index)) {
+                    return;
+                }
+            }
         }
     }
 
@@ -193,9 +429,9 @@ class MatchingContext {
      *
      * @author KOMIYA Atsushi
      */
-    class NullMatcher extends InternalMatcherBase {
+    class NullMatcher implements InternalMatcher {
         @Override
-        public boolean matches(Object object) {
+        public boolean matches(ComparisonPlan plan, Object expected, Object object) {
             if (object != null) {
                 setExpectedMessage("は null");
                 setMismatchMessage("は null ではありません");
@@ -212,15 +448,9 @@ class MatchingContext {
      *
      * @author KOMIYA Atsushi
      */
-    class EqualsMatcher extends InternalMatcherBase {
-        private Object expectedObject;
-
-        public EqualsMatcher(Object expectedObject) {
-            this.expectedObject = expectedObject;
-        }
-
+    class EqualsMatcher implements InternalMatcher {
         @Override
-        public boolean matches(Object object) {
+        public boolean matches(ComparisonPlan plan, Object expectedObject, Object object) {
             if (object == null) {
                 setExpectedMessage("は %s", expectedObject);
                 setMismatchMessage("は null です");
@@ -241,39 +471,42 @@ class MatchingContext {
 
     /**
      * 期待される値のオブジェクトに対して、プロパティを列挙して参照する InternalMatcher の実装です。
+     * 列挙するプロパティとそのアクセサは、{@link ComparisonPlan} に保持しているものを使います。
      *
      * @author KOMIYA Atsushi
      */
-    class PropertyEnumerationMatcher extends InternalMatcherBase {
-        private final Object expectedObject;
-
-        PropertyEnumerationMatcher(Object expectedObject) {
-            this.expectedObject = expectedObject;
-        }
-
+    class PropertyEnumerationMatcher implements InternalMatcher {
         @Override
-        public boolean matches(Object object) {
+        public boolean matches(ComparisonPlan plan, Object expectedObject, Object object) {
             if (object == null) {
-                setExpectedMessage("は %s オブジェクト %s", expectedMessage.getClass(), expectedMessage);
+                setExpectedMessage("は %s オブジェクト %s", plan.type, expectedObject);
                 setMismatchMessage("は null です");
                 fixObjectHierarchyForMessaging();
                 return false;
             }
 
-            if (!expectedObject.getClass().equals(object.getClass())) {
-                setExpectedMessage("は %s オブジェクト %s", expectedMessage.getClass(), expectedMessage);
-                setMismatchMessage("は %s オブジェクトではありません (%s, %s)", object.getClass(), object);
+            if (plan.type != object.getClass()) {
+                setExpectedMessage("は %s オブジェクト %s", plan.type, expectedObject);
+                setMismatchMessage("は %s オブジェクトではありません (%s, %s)", plan.type, object.getClass(), object);
                 fixObjectHierarchyForMessaging();
                 return false;
             }
 
-            for (PropertyIterator expectedIterator = new PropertyIterator(expectedObject),
-                         actualIterator = new PropertyIterator(object);
-                 expectedIterator.hasNext() && actualIterator.hasNext(); ) {
-                Pair<String, Object> expected = expectedIterator.next();
-                Pair<String, Object> actual = actualIterator.next();
+            ObjectPath.Element[] properties = plan.properties.pathElements;
+            PropertyFieldAccessor.Accessor[] accessors = plan.properties.accessorArray;
+            PropertyFieldAccessor.PrimitiveAccessor[] primitives = plan.properties.primitiveAccessors;
+
+            for (int i = 0; i < properties.length; i++) {
+                if (!needVerification(properties[i])) {
+                    continue;
+                }
 
-                if (!forwardMatching(ObjectPath.Element.Type.OBJECT, expected, actual.second)) {
+                // プリミティブ型のプロパティは、一致しない場合に限りボクシングしてメッセージを組み立てる
+                if (primitives[i] != null && primitives[i].valueEquals(expectedObject, object)) {
+                    continue;
+                }
+
+                if (!forwardMatching(properties[i], accessors[i].get(expectedObject), accessors[i].get(object))) {
                     return false;
                 }
             }
@@ -294,16 +527,12 @@ class MatchingContext {
      *
      * @author KOMIYA Atsushi
      */
-    class ListMatcher extends InternalMatcherBase {
-        private List<Object> expectedList;
-
-        ListMatcher(List<Object> expectedList) {
-            this.expectedList = expectedList;
-        }
-
+    class ListMatcher implements InternalMatcher {
         @SuppressWarnings("unchecked")
         @Override
-        public boolean matches(Object object) {
+        public boolean matches(ComparisonPlan plan, Object expected, Object object) {
+            List<Object> expectedList = (List) expected;
+
             if (object == null) {
                 setExpectedMessage("は List オブジェクト %s", expectedList);
                 setMismatchMessage("は null です");
@@ -327,15 +556,27 @@ class MatchingContext {
                 return false;
             }
 
-            for (ListIterator expectedIterator = new ListIterator(expectedList),
-                         actualIterator = new ListIterator(list);
-                 expectedIterator.hasNext() && actualIterator.hasNext(); ) {
-                Pair<String, Object> expectedValue = expectedIterator.next();
-                Pair<String, Object> actualValue = actualIterator.next();
+            if (needsParallelMatching(list.size())) {
+                final Object[] expectedValues = expectedList.toArray();
+                final Object[] actualValues = list.toArray();
+
+                return matchesInParallel(new IndexedElements() {
+                    @Override
+                    public int size() {
+                        return expectedValues.length;
+                    }
+
+                    @Override
+                    public boolean matches(MatchingContext context, int index) {
+                        return context.matchesElementAt(index, expectedValues[index], actualValues[index]);
+                    }
+                });
+            }
 
-                if (!forwardMatching(
-                        ObjectPath.Element.Type.LIST,
-                        expectedValue, actualValue.second)) {
+            Iterator<Object> actualIterator = list.iterator();
+            int index = 0;
+            for (Object expectedValue : expectedList) {
+                if (!matchesElementAt(index++, expectedValue, actualIterator.next())) {
                     return false;
                 }
             }
@@ -344,17 +585,19 @@ class MatchingContext {
         }
     }
 
-    class ArrayMatcher extends InternalMatcherBase {
-        private final Object expectedArray;
-        private final Class expectedClass;
-
-        ArrayMatcher(Object expectedArray) {
-            this.expectedArray = expectedArray;
-            this.expectedClass = expectedArray.getClass();
-        }
-
+    /**
+     * 期待される値が配列の場合の InternalMatcher の実装です。
+     * <p/>
+     * 要素の型が同じであることを確認した上で、同じインデックスの要素を照合します。
+     * 要素がプリミティブ型の場合は、要素ごとの照合の代わりに {@link #matchesPrimitiveArray(Object, Object, int)} で一括して比較します。
+     *
+     * @author KOMIYA Atsushi
+     */
+    class ArrayMatcher implements InternalMatcher {
         @Override
-        public boolean matches(Object object) {
+        public boolean matches(ComparisonPlan plan, final Object expectedArray, Object object) {
+            Class<?> expectedClass = plan.type;
+
             if (object == null) {
                 setExpectedMessage("は %s の配列", expectedClass.getComponentType().getSimpleName());
                 setMismatchMessage("は null です");
@@ -362,7 +605,7 @@ class MatchingContext {
                 return false;
             }
 
-            Class clazz = object.getClass();
+            Class<?> clazz = object.getClass();
             if (!clazz.isArray()) {
                 setExpectedMessage("は %s の配列", expectedClass.getComponentType().getSimpleName());
                 setMismatchMessage("は配列ではありません (%s, %s)", clazz, object);
@@ -377,16 +620,29 @@ class MatchingContext {
                 return false;
             }
 
-            for (ArrayIterator expectedIterator = new ArrayIterator(expectedArray),
-                         actualIterator = new ArrayIterator(object);
-                 expectedIterator.hasNext() && actualIterator.hasNext(); ) {
+            final int length = Math.min(Array.getLength(expectedArray), Array.getLength(object));
+            if (plan.primitiveArray) {
+                return matchesPrimitiveArray(expectedArray, object, length);
+            }
+
+            if (needsParallelMatching(length)) {
+                final Object actualArray = object;
 
-                Pair<String, Object> expectedValue = expectedIterator.next();
-                Pair<String, Object> actualValue = actualIterator.next();
+                return matchesInParallel(new IndexedElements() {
+                    @Override
+                    public int size() {
+                        return length;
+                    }
 
-                if (!forwardMatching(
-                        ObjectPath.Element.Type.LIST,
-                        expectedValue, actualValue.second)) {
+                    @Override
+                    public boolean matches(MatchingContext context, int index) {
+                        return context.matchesElementAt(index, Array.get(expectedArray, index), Array.get(actualArray, index));
+                    }
+                });
+            }
+
+            for (int index = 0; index < length; index++) {
+                if (!matchesElementAt(index, Array.get(expectedArray, index), Array.get(object, index))) {
                     return false;
                 }
             }
@@ -400,16 +656,12 @@ class MatchingContext {
      *
      * @author KOMIYA Atsushi
      */
-    class MapMatcher extends InternalMatcherBase {
-        private final Map<Object, Object> expectedMap;
-
-        MapMatcher(Map<Object, Object> expectedMap) {
-            this.expectedMap = expectedMap;
-        }
-
+    class MapMatcher implements InternalMatcher {
         @SuppressWarnings("unchecked")
         @Override
-        public boolean matches(Object object) {
+        public boolean matches(ComparisonPlan plan, Object expected, Object object) {
+            Map<Object, Object> expectedMap = (Map) expected;
+
             if (object == null) {
                 setExpectedMessage("は Map オブジェクト %s", expectedMap);
                 setMismatchMessage("は null です");
@@ -424,7 +676,7 @@ class MatchingContext {
                 return false;
             }
 
-            Map<Object, Object> map = (Map) object;
+            final Map<Object, Object> map = (Map) object;
 
             if (expectedMap.size() != map.size()) {
                 setExpectedMessage("はサイズ %s の Map オブジェクト", expectedMap.size());
@@ -433,211 +685,32 @@ class MatchingContext {
                 return false;
             }
 
-            for (MapIterator i = new MapIterator(expectedMap); i.hasNext(); ) {
-                Pair<String, Object> expectedValue = i.next();
-                Object actual = map.get(expectedValue.first);
+            if (needsParallelMatching(expectedMap.size())) {
+                final Map.Entry<?, ?>[] expectedEntries
+                        = expectedMap.entrySet().toArray(new Map.Entry<?, ?>[expectedMap.size()]);
 
-                if (!forwardMatching(ObjectPath.Element.Type.MAP, expectedValue, actual)) {
-                    if (!map.containsKey(expectedValue.first)) {
-                        setMismatchMessage("は存在しません");
+                return matchesInParallel(new IndexedElements() {
+                    @Override
+                    public int size() {
+                        return expectedEntries.length;
                     }
-                    return false;
-                }
-            }
-
-            // TODO actual にあって一方にないものを探す
-
-            return true;
-        }
-    }
-
-    static abstract class IteratorBase implements Iterator<Pair<String, Object>> {
-        Pair<String, Object> nextObject;
-
-        @Override
-        public Pair<String, Object> next() {
-            if (!hasNext()) {
-                throw new NoSuchElementException();
-            }
-
-            Pair<String, Object> result = nextObject;
-            nextObject = null;
-
-            return result;
-        }
-
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
-        }
-    }
-
-    class PropertyIterator extends IteratorBase {
-        private final Object targetObject;
-
-        private final Iterator<Map.Entry<String, PropertyFieldAccessor.Accessor>> accessors;
-
-        PropertyIterator(Object targetObject) {
-            this.targetObject = targetObject;
-            this.accessors
-                    = PropertyFieldAccessor.newInstance(targetObject.getClass())
-                    .newIterable()
-                    .iterator();
-        }
-
-        @Override
-        public boolean hasNext() {
-            if (nextObject != null) {
-                return true;
-            }
-
-            while (accessors.hasNext()) {
-                Map.Entry<String, PropertyFieldAccessor.Accessor> entry = accessors.next();
-                String propertyName = entry.getKey();
-
-                if (needVerification(ObjectPath.Element.Type.OBJECT, propertyName)) {
-                    nextObject = new Pair<>(propertyName, entry.getValue().get(targetObject));
-                    return true;
-                }
-            }
-
-            return false;
-        }
-    }
-
-
-    class ArrayIterator extends IteratorBase {
-        private final int arrayLength;
-        private final Object targetArray;
-
-        private int index;
-
-        ArrayIterator(Object targetArray) {
-            this.arrayLength = Array.getLength(targetArray);
-            this.targetArray = targetArray;
-        }
-
-        @Override
-        public boolean hasNext() {
-            if (nextObject != null) {
-                return true;
-            }
 
-            while (index < arrayLength
-                    && !needVerification(ObjectPath.Element.Type.LIST, String.valueOf(index))) {
-                index++;
-            }
-
-            if (index >= arrayLength) {
-                return false;
-            }
-
-            nextObject = new Pair<>(
-                    String.valueOf(index),
-                    Array.get(targetArray, index));
-            index++;
-
-            return true;
-        }
-    }
-
-    class ListIterator extends IteratorBase {
-        private final Iterator<Object> targetListIterator;
-        private int index;
-
-        ListIterator(List<Object> targetList) {
-            this.targetListIterator = targetList.iterator();
-        }
-
-        @Override
-        public boolean hasNext() {
-            if (nextObject != null) {
-                return true;
-            }
-
-            while (targetListIterator.hasNext()
-                    && !needVerification(ObjectPath.Element.Type.LIST, String.valueOf(index))) {
-                index++;
-                targetListIterator.next();
-            }
-
-            if (!targetListIterator.hasNext()) {
-                return false;
-            }
-
-            nextObject = new Pair<>(
-                    String.valueOf(index),
-                    targetListIterator.next());
-
-            index++;
-
-            return true;
-        }
-    }
-
-
-    class MapIterator extends IteratorBase {
-        private final Iterator<Map.Entry<Object, Object>> entryIterator;
-
-        MapIterator(Map<Object, Object> targetMap) {
-            this.entryIterator = targetMap.entrySet().iterator();
-        }
-
-        @Override
-        public boolean hasNext() {
-            if (nextObject != null) {
-                return true;
-            }
-
-            while (entryIterator.hasNext()) {
-                Map.Entry<Object, Object> entry = entryIterator.next();
-                String key = String.valueOf(entry.getKey());
-
-                if (needVerification(ObjectPath.Element.Type.MAP, key)) {
-                    nextObject = new Pair<>(key, entry.getValue());
-                    return true;
-                }
-            }
-
-            return false;
-        }
-    }
-
-    static class Pair<T1, T2> {
-        public final T1 first;
-        public final T2 second;
-
-        Pair(T1 first, T2 second) {
-            this.first = first;
-            this.second = second;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (obj == null) {
-                return false;
-            }
-
-            if (!(obj instanceof Pair)) {
-                return false;
+                    @Override
+                    public boolean matches(MatchingContext context, int index) {
+                        return context.matchesEntry(expectedEntries[index], map);
+                    }
+                });
             }
 
-            Pair other = (Pair) obj;
-            if (first == null) {
-                if (other.first != null) {
-                    return false;
-                }
-            } else {
-                if (!first.equals(other.first)) {
+            for (Map.Entry<Object, Object> entry : expectedMap.entrySet()) {
+                if (!matchesEntry(entry, map)) {
                     return false;
                 }
             }
 
-            if (second == null) {
-                return other.second == null;
-            }
+            // TODO actual にあって一方にないものを探す
 
-            return second.equals(other.second);
+            return true;
         }
     }
 }
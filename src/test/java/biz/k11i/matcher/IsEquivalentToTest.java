@@ -0,0 +1,242 @@
+package biz.k11i.matcher;
+
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static biz.k11i.matcher.IsEquivalentTo.isEquivalentTo;
+import static biz.k11i.matcher.IsEquivalentTo.pathPattern;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * IsEquivalentTo クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class IsEquivalentToTest {
+    public static class Node {
+        public String name;
+        public int value;
+        public Node child;
+        public List<String> tags = new ArrayList<>();
+        public Map<String, Integer> counts = new LinkedHashMap<>();
+        public int[] values = new int[0];
+    }
+
+    static Node newNode(String name, int value, Node child) {
+        Node node = new Node();
+        node.name = name;
+        node.value = value;
+        node.child = child;
+        return node;
+    }
+
+    static String describe(IsEquivalentTo matcher, Object actual) {
+        StringDescription description = new StringDescription();
+        matcher.describeTo(description);
+        description.appendText(" / ");
+        matcher.describeMismatch(actual, description);
+        return description.toString();
+    }
+
+    @Test
+    public void プロパティを列挙して入れ子のオブジェクトまで一致すること() {
+        Node expected = newNode("a", 1, newNode("b", 2, null));
+        Node actual = newNode("a", 1, newNode("b", 2, null));
+        expected.tags.add("x");
+        actual.tags.add("x");
+        expected.counts.put("k", 3);
+        actual.counts.put("k", 3);
+        expected.values = new int[]{1, 2};
+        actual.values = new int[]{1, 2};
+
+        assertThat(isEquivalentTo(expected).matches(actual), is(true));
+    }
+
+    @Test
+    public void 一致しない要素のパスとメッセージが報告されること() {
+        Node expected = newNode("a", 1, newNode("b", 2, null));
+
+        Node actual = newNode("a", 1, newNode("b", 3, null));
+        IsEquivalentTo matcher = isEquivalentTo(expected);
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describe(matcher, actual), is("object.child.value は 2 / object.child.value は 3 です"));
+
+        actual = newNode("a", 1, newNode("b", 2, null));
+        actual.tags.add("x");
+        matcher = isEquivalentTo(expected);
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describe(matcher, actual), is("object.tags はサイズ 0 の List オブジェクト / object.tags のサイズは 1 です"));
+
+        expected.counts.put("k", 3);
+        actual = newNode("a", 1, newNode("b", 2, null));
+        actual.counts.put("j", 3);
+        matcher = isEquivalentTo(expected);
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describe(matcher, actual), is("object.counts['k'] は 3 / object.counts['k'] は存在しません"));
+
+        expected.counts.clear();
+        expected.values = new int[]{1, 2, 3};
+        actual = newNode("a", 1, newNode("b", 2, null));
+        actual.values = new int[]{1, 5, 3};
+        matcher = isEquivalentTo(expected);
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describe(matcher, actual), is("object.values[1] は 2 / object.values[1] は 5 です"));
+    }
+
+    @Test
+    public void 除外したパスは照合しないこと() {
+        Node expected = newNode("a", 1, newNode("b", 2, null));
+        Node actual = newNode("a", 1, newNode("c", 3, null));
+
+        assertThat(isEquivalentTo(expected).matches(actual), is(false));
+        assertThat(isEquivalentTo(expected)
+                .exclude(pathPattern("object.child.name"), pathPattern("object.child.value"))
+                .matches(actual), is(true));
+    }
+
+    @Test
+    public void 型の異なるオブジェクトやnullは一致しないこと() {
+        Node expected = newNode("a", 1, null);
+
+        IsEquivalentTo matcher = isEquivalentTo(expected);
+        assertThat(matcher.matches(null), is(false));
+        assertThat(describe(matcher, null), endsWith("/ object は null です"));
+
+        matcher = isEquivalentTo(expected);
+        assertThat(matcher.matches("a"), is(false));
+        assertThat(describe(matcher, "a"), containsString("/ object は " + Node.class + " オブジェクトではありません (class java.lang.String, a)"));
+
+        matcher = isEquivalentTo(null);
+        assertThat(matcher.matches(expected), is(false));
+        assertThat(describe(matcher, expected), is("object は null / object は null ではありません"));
+
+        assertThat(isEquivalentTo(Arrays.asList(1, 2)).matches(new int[]{1, 2}), is(false));
+    }
+
+    @Test
+    public void 照合の計画はクラスごとに一度だけ作られること() {
+        ComparisonPlan plan = ComparisonPlan.of(newNode("a", 1, null));
+
+        assertThat(plan, is(sameInstance(ComparisonPlan.of(newNode("b", 2, null)))));
+        assertThat(plan.kind, is(ComparisonPlan.Kind.PROPERTIES));
+
+        assertThat(plan.properties.pathElements.length, is(6));
+        assertThat(plan.properties.pathElements[0].name(), is("name"));
+
+        // プロパティのアクセサは計画に保持しているので、照合中はキャッシュを参照しない
+        long requests = PropertyFieldAccessor.cacheStats().hitCount() + PropertyFieldAccessor.cacheStats().missCount();
+        assertThat(isEquivalentTo(newNode("a", 1, null)).matches(newNode("a", 1, null)), is(true));
+        assertThat(PropertyFieldAccessor.cacheStats().hitCount() + PropertyFieldAccessor.cacheStats().missCount(),
+                is(requests));
+
+        assertThat(ComparisonPlan.of(null).kind, is(ComparisonPlan.Kind.NULL));
+        assertThat(ComparisonPlan.of("a").kind, is(ComparisonPlan.Kind.EQUALS));
+        assertThat(ComparisonPlan.of(new int[0]).kind, is(ComparisonPlan.Kind.ARRAY));
+        assertThat(ComparisonPlan.of(new ArrayList<>()).kind, is(ComparisonPlan.Kind.LIST));
+        assertThat(ComparisonPlan.of(new LinkedHashMap<>()).kind, is(ComparisonPlan.Kind.MAP));
+    }
+
+    static List<Node> newNodes(int size) {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            nodes.add(newNode("n" + i, i, null));
+        }
+        return nodes;
+    }
+
+    @Test
+    public void 並列に照合しても最も先頭に近い不一致を報告すること() {
+        List<Node> expected = newNodes(5000);
+
+        assertThat(isEquivalentTo(expected).parallel(16).matches(newNodes(5000)), is(true));
+
+        for (int repeat = 0; repeat < 20; repeat++) {
+            List<Node> actual = newNodes(5000);
+            actual.get(4321).value = -1;
+            actual.get(1234).name = "x";
+            actual.get(2345).value = -1;
+
+            IsEquivalentTo matcher = isEquivalentTo(expected).parallel(16);
+            assertThat(matcher.matches(actual), is(false));
+            assertThat(describe(matcher, actual), is("object[1234].name は n1234 / object[1234].name は x です"));
+        }
+    }
+
+    @Test
+    public void 並列に照合しても配列とMapの不一致と除外したパスを逐次と同じく扱うこと() {
+        Object[] expectedArray = newNodes(1000).toArray();
+        Object[] actualArray = newNodes(1000).toArray();
+        ((Node) actualArray[999]).value = -1;
+        ((Node) actualArray[500]).value = -1;
+
+        IsEquivalentTo matcher = isEquivalentTo(expectedArray).parallel(10);
+        assertThat(matcher.matches(actualArray), is(false));
+        assertThat(describe(matcher, actualArray), is("object[500].value は 500 / object[500].value は -1 です"));
+
+
+        Map<String, Integer> expectedMap = new LinkedHashMap<>();
+        Map<String, Integer> actualMap = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            expectedMap.put("k" + i, i);
+            actualMap.put("k" + i, i);
+        }
+        actualMap.remove("k700");
+        actualMap.put("extra", 0);
+        actualMap.put("k300", -1);
+
+        matcher = isEquivalentTo(expectedMap).parallel(10);
+        assertThat(matcher.matches(actualMap), is(false));
+        assertThat(describe(matcher, actualMap), is("object['k300'] は 300 / object['k300'] は -1 です"));
+
+        assertThat(isEquivalentTo(expectedMap).parallel(10)
+                .exclude(pathPattern("object['k300']"), pathPattern("object['k700']"))
+                .matches(actualMap), is(true));
+
+        actualMap.put("k300", 300);
+        matcher = isEquivalentTo(expectedMap).parallel(10);
+        assertThat(matcher.matches(actualMap), is(false));
+        assertThat(describe(matcher, actualMap), is("object['k700'] は 700 / object['k700'] は存在しません"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 並列に照合するしきい値に0以下は指定できないこと() {
+        isEquivalentTo(newNodes(1)).parallel(0);
+    }
+
+    @Test
+    public void プリミティブ型の配列は最初に一致しない要素だけを報告すること() {
+        byte[] expected = new byte[1 << 20];
+        byte[] actual = new byte[1 << 20];
+        assertThat(isEquivalentTo(expected).matches(actual), is(true));
+
+        actual[100000] = 1;
+        actual[200000] = 2;
+        IsEquivalentTo matcher = isEquivalentTo(expected);
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describe(matcher, actual), is("object[100000] は 0 / object[100000] は 1 です"));
+
+        // 除外した要素の次から比較を続ける
+        matcher = isEquivalentTo(expected).exclude(pathPattern("object[100000]"));
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(describe(matcher, actual), is("object[200000] は 0 / object[200000] は 2 です"));
+
+        assertThat(isEquivalentTo(expected)
+                .exclude(pathPattern("object[100000]"), pathPattern("object[200000]"))
+                .matches(actual), is(true));
+
+        assertThat(isEquivalentTo(new double[]{1.0, Double.NaN}).matches(new double[]{1.0, Double.NaN}), is(true));
+        assertThat(isEquivalentTo(new double[]{0.0}).matches(new double[]{-0.0}), is(false));
+        assertThat(isEquivalentTo(new char[]{'a', 'b'}).matches(new char[]{'a', 'b'}), is(true));
+
+        matcher = isEquivalentTo(new int[]{1, 2});
+        assertThat(matcher.matches(new long[]{1, 2}), is(false));
+        assertThat(describe(matcher, new long[]{1, 2}), is("object は int の配列 / object は long の配列です"));
+    }
+}
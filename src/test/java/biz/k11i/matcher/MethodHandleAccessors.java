@@ -0,0 +1,354 @@
+package biz.k11i.matcher;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * getter メソッドやフィールドへの {@link PropertyFieldAccessor.Accessor} を、
+ * {@link LambdaMetafactory} や {@link MethodHandle} で生成します。
+ * <p>
+ * 以下の順に生成を試み、いずれも生成できない場合は null を返します。
+ * 呼び出し元はリフレクションによる Accessor をそのまま使ってください。
+ * </p>
+ * <ol>
+ * <li>このパッケージからアクセスできる public な getter メソッド ...
+ * {@link LambdaMetafactory} で getter を直接呼び出すクラスを生成する。JIT コンパイラが getter をインライン展開できる。</li>
+ * <li>その他の getter メソッドとフィールド ... {@link Method#setAccessible(boolean)} した上で {@link MethodHandle} を取得する。
+ * 呼び出しごとのアクセスチェックはなくなる。</li>
+ * </ol>
+ * <p>
+ * プリミティブ型のプロパティには {@link PropertyFieldAccessor.PrimitiveAccessor} を生成し、
+ * 値の比較はボクシングせずに行います。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class MethodHandleAccessors {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private MethodHandleAccessors() {
+    }
+
+    /**
+     * @param method getter メソッド
+     * @return 生成した Accessor。生成できない場合は null
+     */
+    static PropertyFieldAccessor.Accessor forGetter(Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || method.getParameterTypes().length != 0) {
+            return null;
+        }
+
+        MethodHandle getter;
+        try {
+            getter = LOOKUP.unreflect(method);
+
+        } catch (IllegalAccessException e) {
+            // public でないメソッドは、アクセスチェックを無効にして MethodHandle を取得する
+            return forAccessibleHandleOrNull(method);
+        }
+
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (isVisible(declaringClass)) {
+            try {
+                return metafactory(getter, declaringClass);
+
+            } catch (LambdaConversionException | RuntimeException e) {
+                // LambdaMetafactory が使えない場合は、MethodHandle を直接呼び出す
+            }
+        }
+
+        return forHandle(getter);
+    }
+
+    /**
+     * @param field フィールド
+     * @return 生成した Accessor。生成できない場合は null
+     */
+    static PropertyFieldAccessor.Accessor forField(Field field) {
+        MethodHandle getter;
+        try {
+            getter = LOOKUP.unreflectGetter(field);
+
+        } catch (IllegalAccessException e) {
+            try {
+                field.setAccessible(true);
+                getter = LOOKUP.unreflectGetter(field);
+
+            } catch (IllegalAccessException | RuntimeException e2) {
+                return null;
+            }
+        }
+
+        if (Modifier.isStatic(field.getModifiers())) {
+            getter = MethodHandles.dropArguments(getter, 0, Object.class);
+        }
+        return forHandle(getter);
+    }
+
+    private static PropertyFieldAccessor.Accessor forAccessibleHandleOrNull(Method method) {
+        try {
+            method.setAccessible(true);
+            return forHandle(LOOKUP.unreflect(method));
+
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 生成したクラスは、このクラスのクラスローダーで定義されます。
+     * 対象のクラスをこのクラスローダーから参照できる場合に限り {@link LambdaMetafactory} を使います。
+     */
+    private static boolean isVisible(Class<?> clazz) {
+        try {
+            return Class.forName(clazz.getName(), false, MethodHandleAccessors.class.getClassLoader()) == clazz;
+
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PropertyFieldAccessor.Accessor metafactory(MethodHandle getter, Class<?> targetType)
+            throws LambdaConversionException {
+
+        PropertyFieldAccessor.Accessor boxed = (PropertyFieldAccessor.Accessor) lambda(
+                getter, PropertyFieldAccessor.Accessor.class, "get",
+                ACCESSOR_TYPE, MethodType.methodType(Object.class, targetType));
+
+        Class<?> returnType = getter.type().returnType();
+        if (!returnType.isPrimitive()) {
+            return boxed;
+        }
+
+        if (returnType == boolean.class) {
+            return new BooleanAccessor(boxed, (Predicate<Object>) lambda(
+                    getter, Predicate.class, "test",
+                    MethodType.methodType(boolean.class, Object.class),
+                    MethodType.methodType(boolean.class, targetType)));
+        }
+
+        if (returnType == long.class) {
+            return new LongAccessor(boxed, (ToLongFunction<Object>) lambda(
+                    getter, ToLongFunction.class, "applyAsLong",
+                    MethodType.methodType(long.class, Object.class),
+                    MethodType.methodType(long.class, targetType)));
+        }
+
+        if (returnType == double.class || returnType == float.class) {
+            return new DoubleAccessor(boxed, (ToDoubleFunction<Object>) lambda(
+                    getter, ToDoubleFunction.class, "applyAsDouble",
+                    MethodType.methodType(double.class, Object.class),
+                    MethodType.methodType(double.class, targetType)));
+        }
+
+        // int, short, char, byte
+        return new IntAccessor(boxed, (ToIntFunction<Object>) lambda(
+                getter, ToIntFunction.class, "applyAsInt",
+                MethodType.methodType(int.class, Object.class),
+                MethodType.methodType(int.class, targetType)));
+    }
+
+    private static Object lambda(
+            MethodHandle implementation,
+            Class<?> functionalInterface,
+            String methodName,
+            MethodType samMethodType,
+            MethodType instantiatedMethodType) throws LambdaConversionException {
+
+        CallSite site = LambdaMetafactory.metafactory(
+                LOOKUP, methodName, MethodType.methodType(functionalInterface),
+                samMethodType, implementation, instantiatedMethodType);
+
+        try {
+            return site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static PropertyFieldAccessor.Accessor forHandle(MethodHandle getter) {
+        final MethodHandle boxedGetter = getter.asType(ACCESSOR_TYPE);
+        PropertyFieldAccessor.Accessor boxed = new PropertyFieldAccessor.Accessor() {
+            @Override
+            public Object get(Object target) {
+                try {
+                    return boxedGetter.invokeExact(target);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+
+        Class<?> returnType = getter.type().returnType();
+        if (!returnType.isPrimitive()) {
+            return boxed;
+        }
+
+        if (returnType == boolean.class) {
+            final MethodHandle booleanGetter = getter.asType(MethodType.methodType(boolean.class, Object.class));
+            return new BooleanAccessor(boxed, new Predicate<Object>() {
+                @Override
+                public boolean test(Object target) {
+                    try {
+                        return (boolean) booleanGetter.invokeExact(target);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            });
+        }
+
+        if (returnType == long.class) {
+            final MethodHandle longGetter = getter.asType(MethodType.methodType(long.class, Object.class));
+            return new LongAccessor(boxed, new ToLongFunction<Object>() {
+                @Override
+                public long applyAsLong(Object target) {
+                    try {
+                        return (long) longGetter.invokeExact(target);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            });
+        }
+
+        if (returnType == double.class || returnType == float.class) {
+            final MethodHandle doubleGetter = getter.asType(MethodType.methodType(double.class, Object.class));
+            return new DoubleAccessor(boxed, new ToDoubleFunction<Object>() {
+                @Override
+                public double applyAsDouble(Object target) {
+                    try {
+                        return (double) doubleGetter.invokeExact(target);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                }
+            });
+        }
+
+        final MethodHandle intGetter = getter.asType(MethodType.methodType(int.class, Object.class));
+        return new IntAccessor(boxed, new ToIntFunction<Object>() {
+            @Override
+            public int applyAsInt(Object target) {
+                try {
+                    return (int) intGetter.invokeExact(target);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        });
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new RuntimeException("想定外の例外が発生しました", e);
+    }
+
+    /**
+     * int, short, char, byte 型のプロパティの Accessor です。
+     * {@link #get(Object)} は元の型のラッパーオブジェクトを返します。
+     */
+    static final class IntAccessor implements PropertyFieldAccessor.PrimitiveAccessor {
+        private final PropertyFieldAccessor.Accessor boxed;
+        private final ToIntFunction<Object> getter;
+
+        IntAccessor(PropertyFieldAccessor.Accessor boxed, ToIntFunction<Object> getter) {
+            this.boxed = boxed;
+            this.getter = getter;
+        }
+
+        @Override
+        public Object get(Object target) {
+            return boxed.get(target);
+        }
+
+        @Override
+        public boolean valueEquals(Object target1, Object target2) {
+            return getter.applyAsInt(target1) == getter.applyAsInt(target2);
+        }
+    }
+
+    static final class LongAccessor implements PropertyFieldAccessor.PrimitiveAccessor {
+        private final PropertyFieldAccessor.Accessor boxed;
+        private final ToLongFunction<Object> getter;
+
+        LongAccessor(PropertyFieldAccessor.Accessor boxed, ToLongFunction<Object> getter) {
+            this.boxed = boxed;
+            this.getter = getter;
+        }
+
+        @Override
+        public Object get(Object target) {
+            return boxed.get(target);
+        }
+
+        @Override
+        public boolean valueEquals(Object target1, Object target2) {
+            return getter.applyAsLong(target1) == getter.applyAsLong(target2);
+        }
+    }
+
+    /**
+     * double, float 型のプロパティの Accessor です。
+     * {@link Double#equals(Object)} / {@link Float#equals(Object)} と同じく、NaN 同士は等しく、0.0 と -0.0 は等しくないものとします。
+     */
+    static final class DoubleAccessor implements PropertyFieldAccessor.PrimitiveAccessor {
+        private final PropertyFieldAccessor.Accessor boxed;
+        private final ToDoubleFunction<Object> getter;
+
+        DoubleAccessor(PropertyFieldAccessor.Accessor boxed, ToDoubleFunction<Object> getter) {
+            this.boxed = boxed;
+            this.getter = getter;
+        }
+
+        @Override
+        public Object get(Object target) {
+            return boxed.get(target);
+        }
+
+        @Override
+        public boolean valueEquals(Object target1, Object target2) {
+            return Double.doubleToLongBits(getter.applyAsDouble(target1))
+                    == Double.doubleToLongBits(getter.applyAsDouble(target2));
+        }
+    }
+
+    static final class BooleanAccessor implements PropertyFieldAccessor.PrimitiveAccessor {
+        private final PropertyFieldAccessor.Accessor boxed;
+        private final Predicate<Object> getter;
+
+        BooleanAccessor(PropertyFieldAccessor.Accessor boxed, Predicate<Object> getter) {
+            this.boxed = boxed;
+            this.getter = getter;
+        }
+
+        @Override
+        public Object get(Object target) {
+            return boxed.get(target);
+        }
+
+        @Override
+        public boolean valueEquals(Object target1, Object target2) {
+            return getter.test(target1) == getter.test(target2);
+        }
+    }
+}
@@ -40,16 +40,46 @@ public class ObjectPath {
         }
 
         final Type type;
-        final String name;
+        private final String name;
 
         private Element(Type type, String name) {
             this.type = type;
             this.name = name;
         }
 
+        String name() {
+            return name;
+        }
+
         @Override
         public String toString() {
-            return type.stringifyWith(name);
+            return type.stringifyWith(name());
+        }
+    }
+
+    /**
+     * List / 配列のインデックスを表すパス要素です。
+     * <p>
+     * 要素ごとにオブジェクトを生成しないよう、インデックスを書き換えて使い回します。
+     * 名前の文字列は、除外するパスとの照合やメッセージの組み立てで参照されたときに初めて生成します。
+     * 書き換えた後は以前のインデックスを表さないため、オブジェクト階層を保持し続ける場合は文字列にしておく必要があります。
+     * </p>
+     */
+    static class IndexElement extends Element {
+        private int index;
+
+        IndexElement() {
+            super(Type.LIST, null);
+        }
+
+        IndexElement at(int index) {
+            this.index = index;
+            return this;
+        }
+
+        @Override
+        String name() {
+            return String.valueOf(index);
         }
     }
 
@@ -67,6 +97,13 @@ public class ObjectPath {
         return pathElements;
     }
 
+    /**
+     * @return パス要素の数
+     */
+    int depth() {
+        return pathElements.size();
+    }
+
     public void push(Element element) {
         pathElements.add(element);
     }
@@ -115,7 +115,7 @@ public class PathPattern {
                 return true;
             }
 
-            return dequotedName.equals(objectPathElem.name);
+            return dequotedName.equals(objectPathElem.name());
         }
 
         int length() {
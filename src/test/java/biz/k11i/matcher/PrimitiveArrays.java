@@ -0,0 +1,210 @@
+package biz.k11i.matcher;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+/**
+ * プリミティブ型の配列同士を一括で比較し、最初に一致しない要素のインデックスを求めます。
+ * <p>
+ * Java 9 以降の実行環境では {@code Arrays.mismatch} を {@link MethodHandle} 経由で呼び出します。
+ * {@code Arrays.mismatch} は JIT コンパイラの組み込み関数として、複数の要素をまとめて (ベクトル命令で) 比較します。
+ * Java 8 の実行環境では、型ごとのループで比較します。
+ * </p>
+ * <p>
+ * float / double の要素は {@link Float#equals(Object)} / {@link Double#equals(Object)} と同じく、
+ * NaN 同士は等しく、0.0 と -0.0 は等しくないものとして比較します。
+ * </p>
+ *
+ * @author KOMIYA Atsushi
+ */
+final class PrimitiveArrays {
+    private static final MethodHandle BOOLEAN_MISMATCH = findMismatch(boolean[].class);
+    private static final MethodHandle BYTE_MISMATCH = findMismatch(byte[].class);
+    private static final MethodHandle CHAR_MISMATCH = findMismatch(char[].class);
+    private static final MethodHandle SHORT_MISMATCH = findMismatch(short[].class);
+    private static final MethodHandle INT_MISMATCH = findMismatch(int[].class);
+    private static final MethodHandle LONG_MISMATCH = findMismatch(long[].class);
+    private static final MethodHandle FLOAT_MISMATCH = findMismatch(float[].class);
+    private static final MethodHandle DOUBLE_MISMATCH = findMismatch(double[].class);
+
+    private PrimitiveArrays() {
+    }
+
+    /**
+     * {@code Arrays.mismatch(a, aFromIndex, aToIndex, b, bFromIndex, bToIndex)} を探します。
+     *
+     * @return 見つからない場合は null
+     */
+    private static MethodHandle findMismatch(Class<?> arrayType) {
+        try {
+            return MethodHandles.publicLookup().findStatic(Arrays.class, "mismatch",
+                    MethodType.methodType(int.class, arrayType, int.class, int.class, arrayType, int.class, int.class));
+
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Java 9 以降の {@code Arrays.mismatch} で比較する場合は true
+     */
+    static boolean isBulkMismatchAvailable() {
+        return INT_MISMATCH != null;
+    }
+
+    /**
+     * 同じプリミティブ型の二つの配列の、[fromIndex, toIndex) の区間で最初に一致しない要素のインデックスを返します。
+     *
+     * @param a         一方の配列
+     * @param b         もう一方の配列。a と同じ型で、長さは toIndex 以上
+     * @param fromIndex 区間の先頭
+     * @param toIndex   区間の末尾 (この位置を含まない)
+     * @return 最初に一致しない要素のインデックス。全て一致する場合は -1
+     */
+    static int mismatch(Object a, Object b, int fromIndex, int toIndex) {
+        try {
+            if (a instanceof int[]) {
+                return mismatch((int[]) a, (int[]) b, fromIndex, toIndex);
+            }
+            if (a instanceof byte[]) {
+                return mismatch((byte[]) a, (byte[]) b, fromIndex, toIndex);
+            }
+            if (a instanceof long[]) {
+                return mismatch((long[]) a, (long[]) b, fromIndex, toIndex);
+            }
+            if (a instanceof double[]) {
+                return mismatch((double[]) a, (double[]) b, fromIndex, toIndex);
+            }
+            if (a instanceof char[]) {
+                return mismatch((char[]) a, (char[]) b, fromIndex, toIndex);
+            }
+            if (a instanceof float[]) {
+                return mismatch((float[]) a, (float[]) b, fromIndex, toIndex);
+            }
+            if (a instanceof short[]) {
+                return mismatch((short[]) a, (short[]) b, fromIndex, toIndex);
+            }
+            if (a instanceof boolean[]) {
+                return mismatch((boolean[]) a, (boolean[]) b, fromIndex, toIndex);
+            }
+
+        } catch (RuntimeException | Error e) {
+            throw e;
+
+        } catch (Throwable e) {
+            throw new RuntimeException("想定外の例外が発生しました", e);
+        }
+
+        throw new IllegalArgumentException("プリミティブ型の配列ではありません: " + a.getClass());
+    }
+
+    private static int offset(int relativeIndex, int fromIndex) {
+        return relativeIndex < 0 ? -1 : fromIndex + relativeIndex;
+    }
+
+    private static int mismatch(int[] a, int[] b, int fromIndex, int toIndex) throws Throwable {
+        if (INT_MISMATCH != null) {
+            return offset((int) INT_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mismatch(byte[] a, byte[] b, int fromIndex, int toIndex) throws Throwable {
+        if (BYTE_MISMATCH != null) {
+            return offset((int) BYTE_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mismatch(long[] a, long[] b, int fromIndex, int toIndex) throws Throwable {
+        if (LONG_MISMATCH != null) {
+            return offset((int) LONG_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mismatch(double[] a, double[] b, int fromIndex, int toIndex) throws Throwable {
+        if (DOUBLE_MISMATCH != null) {
+            return offset((int) DOUBLE_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mismatch(char[] a, char[] b, int fromIndex, int toIndex) throws Throwable {
+        if (CHAR_MISMATCH != null) {
+            return offset((int) CHAR_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mismatch(float[] a, float[] b, int fromIndex, int toIndex) throws Throwable {
+        if (FLOAT_MISMATCH != null) {
+            return offset((int) FLOAT_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mismatch(short[] a, short[] b, int fromIndex, int toIndex) throws Throwable {
+        if (SHORT_MISMATCH != null) {
+            return offset((int) SHORT_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int mismatch(boolean[] a, boolean[] b, int fromIndex, int toIndex) throws Throwable {
+        if (BOOLEAN_MISMATCH != null) {
+            return offset((int) BOOLEAN_MISMATCH.invokeExact(a, fromIndex, toIndex, b, fromIndex, toIndex), fromIndex);
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
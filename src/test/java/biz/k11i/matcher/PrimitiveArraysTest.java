@@ -0,0 +1,102 @@
+package biz.k11i.matcher;
+
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * PrimitiveArrays クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class PrimitiveArraysTest {
+    /**
+     * 要素をボクシングして equals で比較する、素朴な実装です。
+     */
+    static int naiveMismatch(Object a, Object b, int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (!Array.get(a, i).equals(Array.get(b, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void 全てのプリミティブ型で素朴な実装と同じインデックスを返すこと() {
+        Class<?>[] componentTypes = {
+                boolean.class, byte.class, char.class, short.class,
+                int.class, long.class, float.class, double.class
+        };
+        Random random = new Random(1);
+
+        for (Class<?> componentType : componentTypes) {
+            for (int repeat = 0; repeat < 200; repeat++) {
+                int length = random.nextInt(300);
+                Object a = Array.newInstance(componentType, length);
+                Object b = Array.newInstance(componentType, length);
+
+                // 一致しない要素を 0 から 2 個置く
+                int mismatches = random.nextInt(3);
+                for (int j = 0; j < mismatches && length > 0; j++) {
+                    int index = random.nextInt(length);
+                    Array.set(a, index, valueOf(componentType, random.nextInt(3)));
+                    Array.set(b, index, valueOf(componentType, random.nextInt(3)));
+                }
+
+                int fromIndex = length == 0 ? 0 : random.nextInt(length);
+                assertThat(componentType + " " + repeat,
+                        PrimitiveArrays.mismatch(a, b, fromIndex, length),
+                        is(naiveMismatch(a, b, fromIndex, length)));
+            }
+        }
+    }
+
+    @Test
+    public void Java9以降ではArraysのmismatchで比較すること() {
+        boolean java9OrLater = !System.getProperty("java.specification.version").startsWith("1.");
+        assertThat(PrimitiveArrays.isBulkMismatchAvailable(), is(java9OrLater));
+    }
+
+    @Test
+    public void 浮動小数点数はラッパークラスのequalsと同じ規則で比較すること() {
+        assertThat(PrimitiveArrays.mismatch(new double[]{Double.NaN}, new double[]{Double.NaN}, 0, 1), is(-1));
+        assertThat(PrimitiveArrays.mismatch(new double[]{0.0}, new double[]{-0.0}, 0, 1), is(0));
+        assertThat(PrimitiveArrays.mismatch(new float[]{Float.NaN}, new float[]{Float.NaN}, 0, 1), is(-1));
+        assertThat(PrimitiveArrays.mismatch(new float[]{0.0f}, new float[]{-0.0f}, 0, 1), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void プリミティブ型の配列でない場合は例外を投げること() {
+        PrimitiveArrays.mismatch(new Object[0], new Object[0], 0, 0);
+    }
+
+    private static Object valueOf(Class<?> componentType, int value) {
+        if (componentType == boolean.class) {
+            return value % 2 == 0;
+        }
+        if (componentType == byte.class) {
+            return (byte) value;
+        }
+        if (componentType == char.class) {
+            return (char) value;
+        }
+        if (componentType == short.class) {
+            return (short) value;
+        }
+        if (componentType == int.class) {
+            return value;
+        }
+        if (componentType == long.class) {
+            return (long) value;
+        }
+        if (componentType == float.class) {
+            return (float) value;
+        }
+        return (double) value;
+    }
+}
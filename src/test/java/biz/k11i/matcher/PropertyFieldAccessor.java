@@ -1,9 +1,11 @@
 package biz.k11i.matcher;
 
 import java.beans.IntrospectionException;
+import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -16,6 +18,15 @@ import java.util.Map;
  * public なフィールドについては直接アクセスします。
  * </p>
  * <p>
+ * 各 Accessor は {@link MethodHandleAccessors} で生成し、getter メソッドの呼び出しやフィールドの参照に
+ * リフレクションを使わないようにしています。生成できない場合に限り、リフレクションで値を取得します。
+ * </p>
+ * <p>
+ * {@link #newInstance(Class)} で生成したオブジェクトはクラスごとにキャッシュし、複数のスレッドから同時に利用できます。
+ * キャッシュのエントリ数の上限は {@link #setCacheMaximumSize(int)} で変更でき、
+ * ヒット率などは {@link #cacheStats()} で確認できます。
+ * </p>
+ * <p>
  * フィールド宣言をもとにプロパティアクセスを試みる関係上、対応するフィールドがなく
  * getter / setter メソッドだけが定義されているプロパティは現状の実装では
  * 対応できていません。
@@ -28,6 +39,19 @@ public class PropertyFieldAccessor {
         Object get(Object target);
     }
 
+    /**
+     * プリミティブ型のプロパティ / フィールドの Accessor です。
+     * 二つのオブジェクトの値を、ボクシングせずに比較できます。
+     */
+    public static interface PrimitiveAccessor extends Accessor {
+        /**
+         * @param target1 一方のオブジェクト
+         * @param target2 もう一方のオブジェクト
+         * @return 二つのオブジェクトの値が、ラッパークラスの equals で等しいと判定される場合は true
+         */
+        boolean valueEquals(Object target1, Object target2);
+    }
+
     static class PropertyAccessor implements Accessor {
         private final PropertyDescriptor descriptor;
 
@@ -35,6 +59,10 @@ public class PropertyFieldAccessor {
             this.descriptor = descriptor;
         }
 
+        Method readMethod() {
+            return descriptor.getReadMethod();
+        }
+
         @Override
         public Object get(Object target) {
             try {
@@ -63,6 +91,10 @@ public class PropertyFieldAccessor {
             this.field = field;
         }
 
+        Field field() {
+            return field;
+        }
+
         static Accessor tryNewOrNull(Field field) {
             if (Modifier.isPublic(field.getModifiers())) {
                 return new PublicFieldAccessor(field);
@@ -81,48 +113,188 @@ public class PropertyFieldAccessor {
         }
     }
 
-    /** 一度生成した PropertyFieldAccessor オブジェクトは LRU キャッシュで保持します */
-    private static Map<String, PropertyFieldAccessor> cache = new LinkedHashMap<String, PropertyFieldAccessor>() {
+    /**
+     * {@link PropertyFieldAccessor#cacheStats()} で返す、キャッシュの統計情報です。
+     */
+    public static final class CacheStats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int size;
+        private final int maximumSize;
+
+        CacheStats(long hitCount, long missCount, long evictionCount, int size, int maximumSize) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.maximumSize = maximumSize;
+        }
+
+        /**
+         * @return キャッシュにあった回数
+         */
+        public long hitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return キャッシュになく、PropertyFieldAccessor オブジェクトを生成した回数
+         */
+        public long missCount() {
+            return missCount;
+        }
+
+        /**
+         * @return エントリ数の上限を超えたために削除したエントリの数
+         */
+        public long evictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return 現在のエントリ数
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return エントリ数の上限
+         */
+        public int maximumSize() {
+            return maximumSize;
+        }
+
+        /**
+         * @return キャッシュにあった割合。一度も参照していない場合は 1.0
+         */
+        public double hitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
         @Override
-        protected boolean removeEldestEntry(Map.Entry<String, PropertyFieldAccessor> eldest) {
-            return size() > 256;
+        public String toString() {
+            return "CacheStats{hitCount=" + hitCount
+                    + ", missCount=" + missCount
+                    + ", evictionCount=" + evictionCount
+                    + ", size=" + size
+                    + ", maximumSize=" + maximumSize + "}";
         }
-    };
+    }
+
+    /** キャッシュのエントリ数の上限のデフォルト値 */
+    public static final int DEFAULT_CACHE_MAXIMUM_SIZE = 256;
+
+    /** 一度生成した PropertyFieldAccessor オブジェクトは、クラスごとに LRU キャッシュで保持します */
+    private static final AccessorCache cache = new AccessorCache(DEFAULT_CACHE_MAXIMUM_SIZE);
 
     /** */
     private final Map<String, Accessor> accessors;
 
+    /** 照合時に使う、プロパティのパス要素。accessorArray と同じ順序 */
+    final ObjectPath.Element[] pathElements;
+    final Accessor[] accessorArray;
+
+    /** accessorArray のうち、プリミティブ型のプロパティの Accessor。それ以外の要素は null */
+    final PrimitiveAccessor[] primitiveAccessors;
+
     PropertyFieldAccessor(Map<String, Accessor> accessors) {
         this.accessors = accessors;
-    }
+        this.pathElements = new ObjectPath.Element[accessors.size()];
+        this.accessorArray = new Accessor[accessors.size()];
+        this.primitiveAccessors = new PrimitiveAccessor[accessors.size()];
 
-    public static PropertyFieldAccessor newInstance(Class clazz) {
-        if (cache.containsKey(clazz.getName())) {
-            return cache.get(clazz.getName());
+        int i = 0;
+        for (Map.Entry<String, Accessor> entry : accessors.entrySet()) {
+            pathElements[i] = ObjectPath.Element.Type.OBJECT.newElement(entry.getKey());
+            accessorArray[i] = entry.getValue();
+            if (entry.getValue() instanceof PrimitiveAccessor) {
+                primitiveAccessors[i] = (PrimitiveAccessor) entry.getValue();
+            }
+            i++;
         }
+    }
 
-        Map<String, Accessor> accessors = prepareAccessors(clazz);
-        PropertyFieldAccessor accessor = new PropertyFieldAccessor(accessors);
+    /**
+     * 指定されたクラスの PropertyFieldAccessor オブジェクトを返します。
+     * 複数のスレッドから同時に呼び出せます。同じクラスに対しては、キャッシュから削除されるまで同じオブジェクトを返します。
+     *
+     * @param clazz 対象のクラス
+     * @return PropertyFieldAccessor オブジェクト
+     */
+    public static PropertyFieldAccessor newInstance(Class clazz) {
+        return cache.get(clazz);
+    }
 
-        cache.put(clazz.getName(), accessor);
+    /**
+     * キャッシュのエントリ数の上限を変更します。現在のエントリ数が上限を超えている場合は、直ちに削除します。
+     *
+     * @param maximumSize エントリ数の上限 (1 以上)
+     */
+    public static void setCacheMaximumSize(int maximumSize) {
+        cache.setMaximumSize(maximumSize);
+    }
 
-        return accessor;
+    /**
+     * @return キャッシュの統計情報
+     */
+    public static CacheStats cacheStats() {
+        return cache.stats();
     }
 
     static Map<String, Accessor> prepareAccessors(Class clazz) {
-        Map<String, Accessor> accessors = new LinkedHashMap<>();
+        Map<String, Accessor> accessors = prepareReflectiveAccessors(clazz);
+
+        for (Map.Entry<String, Accessor> entry : accessors.entrySet()) {
+            Accessor reflective = entry.getValue();
+
+            Accessor generated;
+            if (reflective instanceof PropertyAccessor) {
+                generated = MethodHandleAccessors.forGetter(((PropertyAccessor) reflective).readMethod());
+            } else {
+                generated = MethodHandleAccessors.forField(((PublicFieldAccessor) reflective).field());
+            }
 
-        for (Field field : clazz.getDeclaredFields()) {
-            Accessor accessor = PropertyAccessor.tryNewOrNull(field, clazz);
-            if (accessor == null) {
-                accessor = PublicFieldAccessor.tryNewOrNull(field);
+            if (generated != null) {
+                entry.setValue(generated);
             }
+        }
+
+        return accessors;
+    }
+
+    /**
+     * リフレクションで値を取得する Accessor を用意します。
+     * <p>
+     * {@link PropertyDescriptor} の生成時に JavaBeans の API がクラスの情報をキャッシュし、クラスを強参照で保持し続けるため、
+     * 用意し終えたら {@link Introspector#flushFromCaches(Class)} で破棄します。
+     * 破棄しないと、クラスローダーごとアンロードされなくなります。
+     * </p>
+     *
+     * @param clazz 対象のクラス
+     * @return フィールド名と Accessor
+     */
+    static Map<String, Accessor> prepareReflectiveAccessors(Class clazz) {
+        Map<String, Accessor> accessors = new LinkedHashMap<>();
+
+        try {
+            for (Field field : clazz.getDeclaredFields()) {
+                Accessor accessor = PropertyAccessor.tryNewOrNull(field, clazz);
+                if (accessor == null) {
+                    accessor = PublicFieldAccessor.tryNewOrNull(field);
+                }
+
+                if (accessor == null) {
+                    continue;
+                }
 
-            if (accessor == null) {
-                continue;
+                accessors.put(field.getName(), accessor);
             }
 
-            accessors.put(field.getName(), accessor);
+        } finally {
+            Introspector.flushFromCaches(clazz);
         }
 
         return accessors;
@@ -0,0 +1,162 @@
+package biz.k11i.matcher;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * PropertyFieldAccessor クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class PropertyFieldAccessorTest {
+    public static class Bean {
+        private String name;
+        private int count;
+        private char initial;
+        private double ratio;
+        private float weight;
+        private long total;
+        private boolean active;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public char getInitial() {
+            return initial;
+        }
+
+        public void setInitial(char initial) {
+            this.initial = initial;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        public float getWeight() {
+            return weight;
+        }
+
+        public void setWeight(float weight) {
+            this.weight = weight;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+    }
+
+    static class PackagePrivateFields {
+        public byte code;
+        public String label;
+    }
+
+    static Bean newBean(String name, int count, char initial, double ratio) {
+        Bean bean = new Bean();
+        bean.setName(name);
+        bean.setCount(count);
+        bean.setInitial(initial);
+        bean.setRatio(ratio);
+        bean.setWeight(1.5f);
+        bean.setTotal(1L << 40);
+        bean.setActive(true);
+        return bean;
+    }
+
+    @Test
+    public void 生成したAccessorがリフレクションと同じ値を返すこと() {
+        Bean bean = newBean("hello", 3, 'h', 0.5);
+
+        Map<String, PropertyFieldAccessor.Accessor> reflective = PropertyFieldAccessor.prepareReflectiveAccessors(Bean.class);
+        Map<String, PropertyFieldAccessor.Accessor> generated = PropertyFieldAccessor.prepareAccessors(Bean.class);
+
+        assertThat(generated.keySet(), contains(reflective.keySet().toArray()));
+        for (Map.Entry<String, PropertyFieldAccessor.Accessor> entry : generated.entrySet()) {
+            assertThat(entry.getValue(), is(not(instanceOf(PropertyFieldAccessor.PropertyAccessor.class))));
+            assertThat(entry.getKey(), entry.getValue().get(bean), is(reflective.get(entry.getKey()).get(bean)));
+        }
+
+        // public なクラスの getter は LambdaMetafactory で生成したクラスから呼び出す
+        assertThat(generated.get("name").getClass().isSynthetic(), is(true));
+
+        assertThat(generated.get("initial").get(bean), is((Object) 'h'));
+        assertThat(generated.get("weight").get(bean), is((Object) 1.5f));
+    }
+
+    @Test
+    public void プリミティブ型のプロパティはラッパークラスのequalsと同じ規則で比較すること() {
+        Map<String, PropertyFieldAccessor.Accessor> accessors = PropertyFieldAccessor.prepareAccessors(Bean.class);
+
+        assertThat(accessors.get("name"), is(not(instanceOf(PropertyFieldAccessor.PrimitiveAccessor.class))));
+        PropertyFieldAccessor.PrimitiveAccessor count = (PropertyFieldAccessor.PrimitiveAccessor) accessors.get("count");
+        PropertyFieldAccessor.PrimitiveAccessor ratio = (PropertyFieldAccessor.PrimitiveAccessor) accessors.get("ratio");
+        PropertyFieldAccessor.PrimitiveAccessor active = (PropertyFieldAccessor.PrimitiveAccessor) accessors.get("active");
+
+        assertThat(count.valueEquals(newBean("a", 3, 'a', 0), newBean("b", 3, 'b', 0)), is(true));
+        assertThat(count.valueEquals(newBean("a", 3, 'a', 0), newBean("a", 4, 'a', 0)), is(false));
+
+        assertThat(ratio.valueEquals(newBean("a", 0, 'a', Double.NaN), newBean("a", 0, 'a', Double.NaN)), is(true));
+        assertThat(ratio.valueEquals(newBean("a", 0, 'a', 0.0), newBean("a", 0, 'a', -0.0)), is(false));
+
+        Bean inactive = newBean("a", 0, 'a', 0);
+        inactive.setActive(false);
+        assertThat(active.valueEquals(newBean("a", 0, 'a', 0), inactive), is(false));
+    }
+
+    @Test
+    public void パッケージプライベートなクラスのpublicフィールドも参照できること() {
+        PackagePrivateFields fields = new PackagePrivateFields();
+        fields.code = 7;
+        fields.label = "seven";
+
+        Map<String, PropertyFieldAccessor.Accessor> accessors = PropertyFieldAccessor.prepareAccessors(PackagePrivateFields.class);
+
+        assertThat(accessors.get("code").get(fields), is((Object) (byte) 7));
+        assertThat(accessors.get("label").get(fields), is((Object) "seven"));
+        assertThat(((PropertyFieldAccessor.PrimitiveAccessor) accessors.get("code"))
+                .valueEquals(fields, new PackagePrivateFields()), is(false));
+    }
+
+    @Test
+    public void プリミティブ型のプロパティが一致しない場合もメッセージには元の型の値を出力すること() {
+        Bean expected = newBean("hello", 3, 'h', 0.5);
+        Bean actual = newBean("hello", 3, 'j', 0.5);
+
+        IsEquivalentTo matcher = IsEquivalentTo.isEquivalentTo(expected);
+        assertThat(matcher.matches(actual), is(false));
+        assertThat(IsEquivalentToTest.describe(matcher, actual), is("object.initial は h / object.initial は j です"));
+    }
+}
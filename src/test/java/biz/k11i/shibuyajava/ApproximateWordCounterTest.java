@@ -0,0 +1,194 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * ApproximateWordCounter クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class ApproximateWordCounterTest {
+    /**
+     * 出現頻度がおおよそ Zipf 分布に従う文章を生成します。
+     */
+    static String zipfText(long seed, int words, int vocabulary) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            int rank = (int) Math.pow(vocabulary, random.nextDouble());
+            sb.append("w").append(rank).append(' ');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void 語彙数が追跡する単語の数以下なら正確に数えること() {
+        String text = "Hello world WORLD foo bar foo";
+        ApproximateWordCount wordCount = new ApproximateWordCounter(0.01, 0.01, 10)
+                .feed(text)
+                .finish();
+
+        WordCount expected = WordCount.countWords(text);
+        assertThat(wordCount.wordCounts, is(expected.wordCounts));
+        assertThat(wordCount.top3Words, is(expected.top3Words));
+        assertThat(wordCount.tokenCount, is(6L));
+        assertThat(wordCount.wordErrors.get("world"), is(0));
+    }
+
+    @Test
+    public void 推定値が誤差の範囲に収まること() {
+        String text = zipfText(1, 200000, 50000);
+        Map<String, Integer> exact = WordCount.countWords(text).wordCounts;
+
+        ApproximateWordCount wordCount = new ApproximateWordCounter(0.001, 0.01, 100)
+                .feed(text)
+                .finish();
+
+        assertThat(wordCount.tokenCount, is(200000L));
+        assertThat(wordCount.confidence, is(closeTo(0.99, 1e-9)));
+        assertThat(wordCount.wordCounts.size(), is(100));
+
+        for (Map.Entry<String, Integer> entry : wordCount.wordCounts.entrySet()) {
+            int trueCount = exact.get(entry.getKey());
+            assertThat(entry.getValue(), is(greaterThanOrEqualTo(trueCount)));
+            assertThat(entry.getValue() - wordCount.wordErrors.get(entry.getKey()), is(lessThanOrEqualTo(trueCount)));
+        }
+
+        int exceeded = 0;
+        for (Map.Entry<String, Integer> entry : exact.entrySet()) {
+            long estimate = wordCount.estimateCount(entry.getKey());
+            assertThat(estimate, is(greaterThanOrEqualTo((long) entry.getValue())));
+            if (estimate > entry.getValue() + wordCount.errorBound) {
+                exceeded++;
+            }
+        }
+        assertThat(exceeded, is(lessThanOrEqualTo(exact.size() / 100)));
+
+        assertThat(wordCount.top3Words, is(WordCount.countWords(text).top3Words));
+    }
+
+    @Test
+    public void 語彙数が追跡する単語の数以下なら合算と減算も正確であること() {
+        ApproximateWordCounter counter = new ApproximateWordCounter(0.01, 0.01, 10);
+        ApproximateWordCount wordCount = counter.feed("Hello world").finish();
+        ApproximateWordCount other = counter.feed("foo world").finish();
+
+        wordCount.merge(other);
+        WordCount expected = WordCount.countWords("Hello world foo world");
+        assertThat(wordCount.wordCounts, is(expected.wordCounts));
+        assertThat(wordCount.top3Words, is(expected.top3Words));
+        assertThat(wordCount.tokenCount, is(4L));
+        assertThat(wordCount.estimateCount("world"), is(2L));
+
+        wordCount.merge(WordCount.countWords("bar world"));
+        assertThat(wordCount.wordCounts, is(WordCount.countWords("Hello world foo world bar world").wordCounts));
+        assertThat(wordCount.estimateCount("bar"), is(1L));
+
+        wordCount.subtract(other);
+        assertThat(wordCount.wordCounts, is(WordCount.countWords("Hello world bar world").wordCounts));
+        assertThat(wordCount.tokenCount, is(4L));
+        assertThat(wordCount.estimateCount("foo"), is(0L));
+    }
+
+    @Test
+    public void 合算した推定値が誤差の範囲に収まること() {
+        String text1 = zipfText(1, 100000, 50000);
+        String text2 = zipfText(2, 100000, 50000);
+        Map<String, Integer> exact = WordCount.countWords(text1 + " " + text2).wordCounts;
+
+        ApproximateWordCounter counter = new ApproximateWordCounter(0.001, 0.01, 100);
+        ApproximateWordCount wordCount = counter.feed(text1).finish();
+        wordCount.merge(counter.feed(text2).finish());
+
+        assertThat(wordCount.tokenCount, is(200000L));
+        assertThat(wordCount.wordCounts.size(), is(100));
+
+        for (Map.Entry<String, Integer> entry : wordCount.wordCounts.entrySet()) {
+            int trueCount = exact.get(entry.getKey());
+            assertThat(entry.getValue(), is(greaterThanOrEqualTo(trueCount)));
+            assertThat(entry.getValue() - wordCount.wordErrors.get(entry.getKey()), is(lessThanOrEqualTo(trueCount)));
+        }
+        for (Map.Entry<String, Integer> entry : exact.entrySet()) {
+            assertThat(wordCount.estimateCount(entry.getKey()), is(greaterThanOrEqualTo((long) entry.getValue())));
+        }
+        assertThat(wordCount.top3Words, is(WordCount.countWords(text1 + " " + text2).top3Words));
+    }
+
+    @Test
+    public void intの範囲を超える推定値を飽和させること() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("hello ");
+        }
+        ApproximateWordCount wordCount = new ApproximateWordCounter(0.01, 0.01, 10)
+                .feed(sb)
+                .feed("world")
+                .finish();
+
+        // 自身との合算を繰り返し、出現頻度を 1000 × 2^22 まで増やす
+        for (int i = 0; i < 22; i++) {
+            wordCount.merge(wordCount);
+        }
+
+        assertThat(wordCount.estimateCount("hello"), is(1000L << 22));
+        assertThat(wordCount.wordCounts.get("hello"), is(Integer.MAX_VALUE));
+        assertThat(wordCount.wordErrors.get("hello"), is(Integer.MAX_VALUE));
+        assertThat(wordCount.wordCounts.get("world"), is(1 << 22));
+        assertThat(wordCount.wordErrors.get("world"), is(0));
+        assertThat(wordCount.tokenCount, is(1001L << 22));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 幅の異なる結果は合算できないこと() {
+        new ApproximateWordCounter(0.01, 0.01, 10)
+                .feed("hello")
+                .finish()
+                .merge(new ApproximateWordCounter(0.001, 0.01, 10).feed("hello").finish());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 出現頻度が負になる減算() {
+        new ApproximateWordCounter(0.01, 0.01, 10)
+                .feed("hello")
+                .finish()
+                .subtract(WordCount.countWords("hello hello"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void epsilonが範囲外() {
+        new ApproximateWordCounter(0, 0.01, 10);
+    }
+
+    @Test
+    public void ハッシュ値が一致する単語同士を区別すること() {
+        assertThat("aan".hashCode(), is("ac0".hashCode()));
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("aan ");
+        }
+        ApproximateWordCount wordCount = new ApproximateWordCounter(0.001, 0.01, 1)
+                .feed(sb)
+                .feed("x")
+                .finish();
+
+        assertThat(wordCount.estimateCount("aan"), is(1000L));
+        assertThat(wordCount.estimateCount("ac0"), is(lessThan(10L)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void epsilonが小さすぎてカウンタ表を確保できない() {
+        new ApproximateWordCounter(1e-9, 0.01, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 幅と深さの積が配列の長さの上限を超える() {
+        new ApproximateWordCounter(1e-8, 1e-10, 10);
+    }
+}
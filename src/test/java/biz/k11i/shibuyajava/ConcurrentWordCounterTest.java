@@ -0,0 +1,74 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * ConcurrentWordCounter クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class ConcurrentWordCounterTest {
+    @Test
+    public void 複数のスレッドから加算した結果が逐次処理と同じになること() throws InterruptedException {
+        final ConcurrentWordCounter counter = new ConcurrentWordCounter();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            final String text = "Hello world WORLD " + i % 7 + " foo" + i % 3;
+            sb.append(text).append(' ');
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    counter.add(text);
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+
+        WordCount expected = WordCount.countWords(sb.toString());
+        WordCount actual = counter.snapshot();
+
+        assertThat(actual.wordCounts, is(expected.wordCounts));
+        assertThat(actual.top3Words, is(expected.top3Words));
+        assertThat(actual.text, is(nullValue()));
+    }
+
+    @Test
+    public void スナップショットには加算途中の状態が含まれないこと() throws InterruptedException {
+        final ConcurrentWordCounter counter = new ConcurrentWordCounter();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        for (int i = 0; i < 4; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 20000; j++) {
+                        counter.add("a b c d e f g h");
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        do {
+            WordCount snapshot = counter.snapshot();
+            Integer count = snapshot.wordCounts.get("a");
+            for (String word : new String[]{"b", "c", "d", "e", "f", "g", "h"}) {
+                assertThat(snapshot.wordCounts.get(word), is(count));
+            }
+        } while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS));
+
+        assertThat(counter.snapshot().wordCounts.get("h"), is(80000));
+    }
+}
@@ -0,0 +1,128 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * ExternalWordCounter クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class ExternalWordCounterTest {
+    private static final String TEXT = "  Hello wORLD\tworld\nΟΔΟΣ  οδος hello 表示 表 ｈｅｌｌｏ 🍣 ｡ help helper helpers";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static void verify(String text, ExternalWordCount actual, int k) {
+        WordCount expected = WordCount.countWords(text, k);
+
+        assertThat(actual.size(), is(expected.wordCounts.size()));
+        assertThat(actual.file().toWordCount().wordCounts, is(expected.wordCounts));
+        assertThat(actual.topWords(), is(expected.topWords));
+
+        long tokens = 0;
+        for (int count : expected.wordCounts.values()) {
+            tokens += count;
+        }
+        assertThat(actual.tokens(), is(tokens));
+    }
+
+    @Test
+    public void 語彙がメモリ上のテーブルに収まる場合() throws IOException {
+        Path output = temporaryFolder.getRoot().toPath().resolve("result.wcnt");
+        ExternalWordCount actual = ExternalWordCount.countWords(new StringReader(TEXT), output, 1000);
+
+        verify(TEXT, actual, 3);
+        assertThat(actual.spilledRuns(), is(1));
+        assertThat(actual.file().countOf("hello"), is(2));
+        assertThat(temporaryFolder.getRoot().list(), is(arrayContaining("result.wcnt")));
+    }
+
+    @Test
+    public void 語彙の上限を超えるとランを書き出してマージすること() throws IOException {
+        File work = temporaryFolder.newFolder();
+        String text = WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(5, 100000, true);
+
+        ExternalWordCount actual = new ExternalWordCounter(work.toPath(), 5000)
+                .topK(10)
+                .feed(text)
+                .finish(temporaryFolder.getRoot().toPath().resolve("result.wcnt"));
+
+        verify(text, actual, 10);
+        assertThat(actual.spilledRuns(), is(greaterThan(1)));
+        assertThat(work.list(), is(emptyArray()));
+    }
+
+    @Test
+    public void ランが多い場合は段階的にマージすること() throws IOException {
+        File work = temporaryFolder.newFolder();
+        String text = WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(6, 20000, false);
+
+        ExternalWordCount actual = new ExternalWordCounter(work.toPath(), 50)
+                .feed(new StringReader(text))
+                .finish(temporaryFolder.getRoot().toPath().resolve("result.wcnt"));
+
+        verify(text, actual, 3);
+        assertThat(actual.spilledRuns(), is(greaterThan(ExternalWordCounter.MAX_FAN_IN * 2)));
+        assertThat(work.list(), is(emptyArray()));
+    }
+
+    @Test
+    public void 中間のマージに失敗しても一時ファイルを残さないこと() throws IOException {
+        File work = temporaryFolder.newFolder();
+        String text = WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(6, 20000, false);
+
+        ExternalWordCounter counter = new ExternalWordCounter(work.toPath(), 50).feed(new StringReader(text));
+        File[] runs = work.listFiles();
+        assertThat(runs.length, is(greaterThan(ExternalWordCounter.MAX_FAN_IN)));
+
+        // 全てのランを途中で切り詰め、読み込み中に EOFException が発生するようにする
+        for (File run : runs) {
+            try (FileChannel channel = FileChannel.open(run.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(1);
+            }
+        }
+
+        try {
+            counter.finish(temporaryFolder.getRoot().toPath().resolve("result.wcnt"));
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+        assertThat(work.list(), is(emptyArray()));
+    }
+
+    @Test
+    public void finishの後は新たな文章を数えること() throws IOException {
+        ExternalWordCounter counter = new ExternalWordCounter(temporaryFolder.newFolder().toPath(), 2);
+        counter.feed("a b c a").finish(temporaryFolder.newFile().toPath());
+
+        ExternalWordCount actual = counter.feed("c d").finish(temporaryFolder.newFile().toPath());
+        verify("c d", actual, 3);
+    }
+
+    @Test
+    public void 語彙数の上限は1以上であること() {
+        try {
+            new ExternalWordCounter(temporaryFolder.getRoot().toPath(), 0);
+            fail();
+
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
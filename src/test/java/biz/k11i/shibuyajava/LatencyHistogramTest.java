@@ -0,0 +1,53 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * LatencyHistogram クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void バケットの上限が値以上で誤差が小さいこと() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(value));
+
+            assertThat(upperBound, is(greaterThanOrEqualTo(value)));
+            assertThat((double) (upperBound - value), is(lessThanOrEqualTo(value / 8.0)));
+        }
+
+        assertThat(LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void パーセンタイルを求められること() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.percentile(50), is(0L));
+
+        long[] values = new long[10000];
+        Random random = new Random(2);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + random.nextInt(1000000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertThat(histogram.count(), is((long) values.length));
+        for (double percentile : new double[]{0, 50, 90, 99, 99.9, 100}) {
+            long exact = values[Math.max(0, (int) Math.ceil(percentile / 100 * values.length) - 1)];
+            long approximate = histogram.percentile(percentile);
+
+            assertThat(approximate, is(greaterThanOrEqualTo(exact)));
+            assertThat((double) approximate, is(lessThanOrEqualTo(exact * 1.125)));
+        }
+    }
+}
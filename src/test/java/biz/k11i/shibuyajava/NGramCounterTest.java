@@ -0,0 +1,168 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * NGramCounter クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class NGramCounterTest {
+    private static String randomText(long seed, int words) {
+        String[] vocabulary = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "New", "YORK"};
+        String[] separators = {" ", "  ", "\t", "\n", "\r\n"};
+        Random random = new Random(seed);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append(vocabulary[(int) Math.abs(random.nextGaussian() * 3) % vocabulary.length]);
+            sb.append(separators[random.nextInt(separators.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 単語を連結した文字列で n-gram を数える、素朴な実装です。
+     */
+    private static Map<String, Integer> naiveNGramCounts(String text, int order) {
+        String[] words = text.split("\\s+");
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; i + order <= words.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < order; j++) {
+                if (j > 0) {
+                    sb.append(' ');
+                }
+                sb.append(words[i + j].toLowerCase());
+            }
+
+            String nGram = sb.toString();
+            Integer count = result.get(nGram);
+            result.put(nGram, count == null ? 1 : count + 1);
+        }
+        return result;
+    }
+
+    private static List<String> naiveTopNGrams(Map<String, Integer> nGramCounts, int k) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(nGramCounts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+                int c = o2.getValue().compareTo(o1.getValue());
+                return c != 0 ? c : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < k && i < entries.size(); i++) {
+            result.add(entries.get(i).getKey());
+        }
+        return result;
+    }
+
+    @Test
+    public void 一度の走査で各長さのNGramを数えられること() {
+        String text = randomText(1, 100000);
+        NGramCounts counts = NGramCounts.countNGrams(text, NGramCounter.MAX_ORDER);
+
+        assertThat(counts.maxOrder(), is(5));
+        for (int order = 1; order <= 5; order++) {
+            Map<String, Integer> expected = naiveNGramCounts(text, order);
+
+            assertThat(counts.size(order), is(expected.size()));
+            assertThat(counts.nGramCounts(order), is(expected));
+            assertThat(counts.topNGrams(order, 10), is(naiveTopNGrams(expected, 10)));
+
+            for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+                assertThat(counts.countOf(entry.getKey().split(" ")), is(entry.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void 単語の出現頻度はcountWordsと一致すること() {
+        String text = "  Hello wORLD\tworld\nΟΔΟΣ  οδος hello 表示 表 ｈｅｌｌｏ";
+        NGramCounts counts = NGramCounts.countNGrams(text, 2);
+
+        assertThat(counts.nGramCounts(1), is(WordCount.countWords(text).wordCounts));
+        assertThat(counts.topNGrams(1, 3), is(WordCount.countWords(text).top3Words));
+        assertThat(counts.countOf("hello", "world"), is(1));
+        assertThat(counts.countOf("ὀδος", "hello"), is(0));
+        assertThat(counts.countOf("world", "οδος"), is(1));
+    }
+
+    @Test
+    public void feedの境界をまたぐNGramも数えること() throws IOException {
+        NGramCounts counts = new NGramCounter(3)
+                .feed("New Yo")
+                .feed("rk is in new ")
+                .feed(new StringReader("york city"))
+                .finish();
+
+        assertThat(counts.countOf("new", "york"), is(2));
+        assertThat(counts.countOf("york", "is", "in"), is(1));
+        assertThat(counts.countOf("in", "new", "york"), is(1));
+        assertThat(counts.countOf("new", "york", "city"), is(1));
+        assertThat(counts.topNGrams(2, 2), is(contains("new york", "in new")));
+        assertThat(counts.topNGrams(3, 0), is(empty()));
+    }
+
+    @Test
+    public void finishの後は新たな文章を数えること() {
+        NGramCounter counter = new NGramCounter(2);
+        counter.feed("a b c");
+        assertThat(counter.finish().size(2), is(2));
+
+        NGramCounts counts = counter.feed("c d").finish();
+        assertThat(counts.size(1), is(2));
+        assertThat(counts.countOf("b", "c"), is(0));
+        assertThat(counts.countOf("c", "d"), is(1));
+    }
+
+    @Test
+    public void 正規化の方法を指定できること() {
+        NGramCounts counts = new NGramCounter(2)
+                .normalizer(WordNormalizer.DEFAULT.stripPunctuation(true).stopWords(Collections.singleton("the")))
+                .feed("The fox, the dog. THE fox")
+                .finish();
+
+        assertThat(counts.countOf("fox", "dog"), is(1));
+        assertThat(counts.countOf("dog", "fox"), is(1));
+        assertThat(counts.countOf("the"), is(0));
+    }
+
+    @Test
+    public void 範囲外の長さは指定できないこと() {
+        for (int maxOrder : new int[]{0, 6}) {
+            try {
+                new NGramCounter(maxOrder);
+                fail();
+
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        try {
+            NGramCounts.countNGrams("a b c", 2).countOf("a", "b", "c");
+            fail();
+
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
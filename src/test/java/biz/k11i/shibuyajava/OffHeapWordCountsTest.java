@@ -0,0 +1,154 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * OffHeapWordCounts クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class OffHeapWordCountsTest {
+    private static final String TEXT = "  Hello wORLD\tworld\nΟΔΟΣ  οδος hello 表示 表 ｈｅｌｌｏ 🍣 ｡ help helper helpers x";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static void verify(String text, OffHeapWordCounts actual) {
+        WordCount expected = WordCount.countWords(text);
+
+        assertThat(actual.size(), is(expected.wordCounts.size()));
+        assertThat(actual.wordCounts(), is(expected.wordCounts));
+        assertThat(actual.top3Words(), is(expected.top3Words));
+        assertThat(actual.topWords(20), is(WordCount.countWords(text, 20).topWords));
+
+        for (Map.Entry<String, Integer> entry : expected.wordCounts.entrySet()) {
+            assertThat(entry.getKey(), actual.countOf(entry.getKey()), is(entry.getValue()));
+        }
+    }
+
+    @Test
+    public void ダイレクトバッファ上でワードカウントできること() throws IOException {
+        OffHeapWordCounts actual = OffHeapWordCounts.countWords(new StringReader(TEXT));
+        verify(TEXT, actual);
+
+        assertThat(actual.countOf("absent"), is(0));
+        assertThat(actual.wordCounts().containsKey("world"), is(true));
+        assertThat(actual.wordCounts().get("absent"), is(nullValue()));
+        assertThat(actual.offHeapBytes(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void 大きな語彙でもワードカウントできること() throws IOException {
+        String text = WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(3, 300000, true);
+        verify(text, OffHeapWordCounts.countWords(new StringReader(text)));
+    }
+
+    @Test
+    public void メモリマップした一時ファイル上でワードカウントできること() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        String text = WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(4, 100000, false);
+
+        verify(text, OffHeapWordCounts.countWords(new StringReader(text), directory.toPath()));
+        assertThat(directory.list(), is(emptyArray()));
+    }
+
+    @Test
+    public void 同じ出現頻度の単語はStringの順に並ぶこと() throws IOException {
+        // UTF-8 のバイト列の順では U+FF41 (ａ) が 🍣 (U+1F363) より前になるが、UTF-16 では後になる
+        String text = "ａ 🍣  b 𝒜 ｡";
+        verify(text, OffHeapWordCounts.countWords(new StringReader(text)));
+        assertThat(OffHeapWordCounts.countWords(new StringReader(text)).topWords(6),
+                is(WordCount.countWords(text, 6).topWords));
+    }
+
+    @Test
+    public void 上位の単語を出現頻度とともに取得できること() throws IOException {
+        OffHeapWordCounts actual = OffHeapWordCounts.countWords(new StringReader("b a c b a b"));
+
+        assertThat(actual.topEntries(2).toString(), is("[b=3, a=2]"));
+        assertThat(actual.topEntries(0), is(empty()));
+    }
+
+    @Test
+    public void 全ての単語をWordCountに変換できること() throws IOException {
+        WordCount actual = OffHeapWordCounts.countWords(new StringReader(TEXT)).toWordCount();
+        WordCount expected = WordCount.countWords(TEXT);
+
+        assertThat(actual.wordCounts, is(expected.wordCounts));
+        assertThat(actual.top3Words, is(expected.top3Words));
+    }
+
+    @Test
+    public void 複数のスレッドから同時に参照できること() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            for (int j = 0; j <= i % 3; j++) {
+                sb.append('w').append(i).append(' ');
+            }
+        }
+        final OffHeapWordCounts actual = OffHeapWordCounts.countWords(new StringReader(sb.toString()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t * 2500;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        Map<String, Integer> wordCounts = actual.wordCounts();
+                        int errors = 0;
+                        for (int repeat = 0; repeat < 5; repeat++) {
+                            for (int k = 0; k < 20000; k++) {
+                                int i = (k + offset) % 20000;
+                                String word = "w" + i;
+                                if (actual.countOf(word) != i % 3 + 1
+                                        || wordCounts.get(word) != i % 3 + 1
+                                        || !wordCounts.containsKey(word)) {
+                                    errors++;
+                                }
+                            }
+                        }
+                        return errors;
+                    }
+                }));
+            }
+
+            for (Future<Integer> future : futures) {
+                assertThat(future.get(), is(0));
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void 変更はできないこと() throws IOException {
+        Map<String, Integer> wordCounts = OffHeapWordCounts.countWords(new StringReader(TEXT)).wordCounts();
+        try {
+            wordCounts.put("hello", 1);
+            fail();
+
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * WordCountFile クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordCountFileTest {
+    private static final String TEXT = "  Hello wORLD\tworld\nΟΔΟΣ  οδος hello 表示 表 ｈｅｌｌｏ 🍣 ｡ help helper helpers";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static byte[] toBytes(WordCount wordCount) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WordCountFile.write(wordCount, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static WordCount fromBytes(byte[] bytes) throws IOException {
+        return WordCountFile.read(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void チャネル経由で書き出して読み込めること() throws IOException {
+        WordCount expected = WordCount.countWords(TEXT);
+        WordCount actual = fromBytes(toBytes(expected));
+
+        assertThat(actual.wordCounts, is(expected.wordCounts));
+        assertThat(actual.top3Words, is(expected.top3Words));
+        assertThat(actual.elapsedMillis, is(expected.elapsedMillis));
+        assertThat(actual.text, is(nullValue()));
+    }
+
+    @Test
+    public void 大きな語彙でも読み書きできること() throws IOException {
+        WordCount expected = WordCount.countWords(
+                WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(1, 100000, false));
+
+        Path path = temporaryFolder.newFile().toPath();
+        WordCountFile.write(expected, path);
+        assertThat(fromBytes(Files.readAllBytes(path)).wordCounts, is(expected.wordCounts));
+
+        WordCountFile file = WordCountFile.open(path);
+        assertThat(file.size(), is(expected.wordCounts.size()));
+        for (Map.Entry<String, Integer> entry : expected.wordCounts.entrySet()) {
+            assertThat(entry.getKey(), file.countOf(entry.getKey()), is(entry.getValue()));
+        }
+        assertThat(file.toWordCount().wordCounts, is(expected.wordCounts));
+    }
+
+    @Test
+    public void メモリマップしたファイルから単語を検索できること() throws IOException {
+        WordCount expected = WordCount.countWords(TEXT);
+        Path path = temporaryFolder.newFile().toPath();
+        WordCountFile.write(expected, path);
+
+        WordCountFile file = WordCountFile.open(path);
+        assertThat(file.size(), is(expected.wordCounts.size()));
+        assertThat(file.elapsedMillis(), is(expected.elapsedMillis));
+
+        for (Map.Entry<String, Integer> entry : expected.wordCounts.entrySet()) {
+            assertThat(entry.getKey(), file.countOf(entry.getKey()), is(entry.getValue()));
+        }
+
+        for (String absent : new String[]{"", "a", "hel", "hella", "helpersz", "zzz", "表示する", "￿"}) {
+            if (!expected.wordCounts.containsKey(absent)) {
+                assertThat(absent, file.countOf(absent), is(0));
+            }
+        }
+    }
+
+    @Test
+    public void 空のワードカウント結果() throws IOException {
+        WordCount empty = new WordCount();
+        empty.wordCounts = WordCount.countWords("").wordCounts;
+        empty.wordCounts.clear();
+
+        Path path = temporaryFolder.newFile().toPath();
+        WordCountFile.write(empty, path);
+
+        assertThat(fromBytes(Files.readAllBytes(path)).wordCounts.isEmpty(), is(true));
+        assertThat(WordCountFile.open(path).countOf("hello"), is(0));
+    }
+
+    @Test
+    public void 同じチャネルに続けて書き出した結果を順に読み込めること() throws IOException {
+        WordCount first = WordCount.countWords(TEXT);
+        WordCount second = WordCount.countWords(
+                WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(2, 20000, false));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel outChannel = Channels.newChannel(out);
+        WordCountFile.write(first, outChannel);
+        WordCountFile.write(second, outChannel);
+        out.write("trailing".getBytes(StandardCharsets.UTF_8));
+
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(WordCountFile.read(channel).wordCounts, is(first.wordCounts));
+        assertThat(WordCountFile.read(channel).wordCounts, is(second.wordCounts));
+
+        ByteBuffer rest = ByteBuffer.allocate(16);
+        channel.read(rest);
+        assertThat(new String(rest.array(), 0, rest.position(), StandardCharsets.UTF_8), is("trailing"));
+    }
+
+    @Test
+    public void トレーラが壊れている場合は読み込めないこと() throws IOException {
+        byte[] bytes = toBytes(WordCount.countWords(TEXT));
+        bytes[bytes.length - 1]++;
+
+        try {
+            fromBytes(bytes);
+            fail();
+
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("トレーラ"));
+        }
+    }
+
+    @Test
+    public void intの範囲を超える出現頻度は書き出せないこと() throws IOException {
+        Path path = temporaryFolder.newFile().toPath();
+        try (WordCountFile.SortedWriter writer = new WordCountFile.SortedWriter(path, temporaryFolder.getRoot().toPath())) {
+            byte[] word = "hello".getBytes(StandardCharsets.UTF_8);
+            writer.add(word, word.length, Integer.MAX_VALUE + 1L);
+            fail();
+
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("int の範囲"));
+        }
+    }
+
+    @Test
+    public void 形式が正しくないファイルは読み込めないこと() throws IOException {
+        Path path = temporaryFolder.newFile().toPath();
+        Files.write(path, "hello world, this is not a word count file".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            WordCountFile.open(path);
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            fromBytes(Files.readAllBytes(path));
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * WordCountMap クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordCountMapTest {
+    @Test
+    public void 文字配列からの加算と文字列からの加算が同じエントリに反映されること() {
+        WordCountMap map = new WordCountMap();
+        char[] chars = "hello".toCharArray();
+
+        map.increment(chars, chars.length, "hello".hashCode());
+        map.increment("hello");
+        map.add("hello", 3);
+
+        assertThat(map.size(), is(1));
+        assertThat(map.countOf("hello"), is(5));
+        assertThat(map.get("hello"), is(5));
+        assertThat(map.get("world"), is(nullValue()));
+    }
+
+    @Test
+    public void 拡張と削除を繰り返してもHashMapと同じ内容になること() {
+        WordCountMap map = new WordCountMap();
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 100000; i++) {
+            String word = "w" + random.nextInt(5000);
+
+            if (random.nextInt(4) == 0) {
+                assertThat(map.remove(word), is(expected.remove(word)));
+
+            } else {
+                Integer count = expected.get(word);
+                expected.put(word, count == null ? 1 : count + 1);
+                map.increment(word);
+            }
+        }
+
+        assertThat(map.size(), is(expected.size()));
+        assertThat(map, is(equalTo(expected)));
+        assertThat(expected, is(equalTo((Map<String, Integer>) map)));
+    }
+
+    @Test
+    public void 反復しながら削除しても全てのエントリを一度ずつ返すこと() {
+        Random random = new Random(1);
+
+        // 小さなテーブルを多数試し、探索が配列の末尾から先頭に折り返す場合も含める
+        for (int trial = 0; trial < 2000; trial++) {
+            WordCountMap map = new WordCountMap();
+            Map<String, Integer> expected = new HashMap<>();
+            int words = 1 + random.nextInt(100);
+            for (int i = 0; i < words; i++) {
+                String word = "w" + random.nextInt(1000);
+                map.put(word, i);
+                expected.put(word, i);
+            }
+
+            Map<String, Integer> original = new HashMap<>(expected);
+            Map<String, Integer> visited = new HashMap<>();
+            Iterator<Map.Entry<String, Integer>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Integer> entry = iterator.next();
+                assertThat(visited.put(entry.getKey(), entry.getValue()), is(nullValue()));
+
+                if (random.nextBoolean()) {
+                    iterator.remove();
+                    expected.remove(entry.getKey());
+                }
+            }
+
+            assertThat(visited, is(equalTo(original)));
+            assertThat(map, is(equalTo(expected)));
+            assertThat(map.size(), is(expected.size()));
+        }
+    }
+
+    @Test
+    public void キーやエントリの集合から削除できること() {
+        WordCountMap map = new WordCountMap();
+        for (int i = 0; i < 100; i++) {
+            map.put("w" + i, i);
+        }
+
+        map.keySet().remove("w0");
+        map.keySet().removeAll(Arrays.asList("w1", "w2"));
+        map.entrySet().removeIf(new Predicate<Map.Entry<String, Integer>>() {
+            @Override
+            public boolean test(Map.Entry<String, Integer> entry) {
+                return entry.getValue() % 2 == 0;
+            }
+        });
+        map.keySet().retainAll(Arrays.asList("w1", "w3", "w5", "w6", "w7"));
+
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("w3", 3);
+        expected.put("w5", 5);
+        expected.put("w7", 7);
+        assertThat(map, is(equalTo(expected)));
+    }
+
+    @Test
+    public void putで出現頻度を上書きできること() {
+        WordCountMap map = new WordCountMap();
+
+        assertThat(map.put("hello", 3), is(nullValue()));
+        assertThat(map.put("hello", 7), is(3));
+        assertThat(map.containsKey("hello"), is(true));
+        assertThat(map.containsKey("world"), is(false));
+
+        map.clear();
+        assertThat(map.isEmpty(), is(true));
+        assertThat(map.containsKey("hello"), is(false));
+    }
+}
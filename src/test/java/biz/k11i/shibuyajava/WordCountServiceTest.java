@@ -0,0 +1,244 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * WordCountService クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordCountServiceTest {
+    /**
+     * "blocker" という文章を受け取ったワーカーを、release が開くまで止めておくサービスを生成します。
+     */
+    private static WordCountService blockingService(int queueCapacity, WordCountService.OverflowPolicy overflowPolicy,
+                                                    final CountDownLatch release) {
+        return new WordCountService(queueCapacity, overflowPolicy, 1, new WordCountService.CountFunction() {
+            @Override
+            public WordCount count(WordCounter counter, String text) {
+                if ("blocker".equals(text)) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return counter.count(text);
+            }
+        });
+    }
+
+    /**
+     * ワーカーが "blocker" を取り出して止まるまで待ちます。
+     */
+    private static void blockWorker(WordCountService service) throws InterruptedException {
+        service.submit("blocker");
+        while (service.queueDepth() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void ワードカウント結果を非同期に受け取れること() throws InterruptedException {
+        try (WordCountService service = new WordCountService(16, WordCountService.OverflowPolicy.BLOCK, 2)) {
+            List<CompletableFuture<WordCount>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(service.submit("Hello world " + (i % 10)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                WordCount expected = WordCount.countWords("Hello world " + (i % 10));
+                WordCount actual = futures.get(i).join();
+
+                assertThat(actual.wordCounts, is(expected.wordCounts));
+                assertThat(actual.top3Words, is(expected.top3Words));
+                assertThat(actual.text, is(expected.text));
+            }
+
+            assertThat(service.completedCount(), is(1000L));
+            assertThat(service.rejectedCount(), is(0L));
+            assertThat(service.latencyNanos(50), is(greaterThan(0L)));
+            assertThat(service.latencyNanos(99), is(greaterThanOrEqualTo(service.latencyNanos(50))));
+        }
+    }
+
+    @Test
+    public void キューが一杯のときに新しい要求を拒否できること() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        try (WordCountService service = blockingService(2, WordCountService.OverflowPolicy.REJECT, latch)) {
+            blockWorker(service);
+
+            CompletableFuture<WordCount> first = service.submit("first");
+            CompletableFuture<WordCount> second = service.submit("second");
+            CompletableFuture<WordCount> third = service.submit("third");
+            assertThat(service.queueDepth(), is(2));
+
+            assertRejected(third);
+            assertThat(service.rejectedCount(), is(1L));
+
+            latch.countDown();
+            assertThat(first.join().wordCounts, hasEntry("first", 1));
+            assertThat(second.join().wordCounts, hasEntry("second", 1));
+        }
+    }
+
+    @Test
+    public void キューが一杯のときに最も古い要求を取り除けること() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        try (WordCountService service = blockingService(2, WordCountService.OverflowPolicy.SHED_OLDEST, latch)) {
+            blockWorker(service);
+
+            CompletableFuture<WordCount> first = service.submit("first");
+            CompletableFuture<WordCount> second = service.submit("second");
+            CompletableFuture<WordCount> third = service.submit("third");
+
+            assertRejected(first);
+            assertThat(service.rejectedCount(), is(1L));
+
+            latch.countDown();
+            assertThat(second.join().wordCounts, hasEntry("second", 1));
+            assertThat(third.join().wordCounts, hasEntry("third", 1));
+        }
+    }
+
+    @Test
+    public void キューに空きができるまで待たせられること() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        try (final WordCountService service = blockingService(1, WordCountService.OverflowPolicy.BLOCK, latch)) {
+            blockWorker(service);
+            service.submit("first");
+
+            final List<CompletableFuture<WordCount>> submitted = new ArrayList<>();
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        submitted.add(service.submit("second"));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            producer.start();
+
+            producer.join(200);
+            assertThat(producer.isAlive(), is(true));
+
+            latch.countDown();
+            producer.join(TimeUnit.SECONDS.toMillis(10));
+            assertThat(producer.isAlive(), is(false));
+            assertThat(submitted.get(0).join().wordCounts, hasEntry("second", 1));
+        }
+    }
+
+    @Test
+    public void 停止後の要求は拒否されること() throws InterruptedException {
+        WordCountService service = new WordCountService(4, WordCountService.OverflowPolicy.REJECT, 1);
+        CompletableFuture<WordCount> before = service.submit("before");
+        service.close();
+
+        assertThat(before.join().wordCounts, hasEntry("before", 1));
+        assertRejected(service.submit("after"));
+    }
+
+    @Test
+    public void ワーカーでErrorが発生しても次の要求を処理すること() throws InterruptedException {
+        final AssertionError error = new AssertionError("boom");
+        try (WordCountService service = new WordCountService(4, WordCountService.OverflowPolicy.BLOCK, 1,
+                new WordCountService.CountFunction() {
+                    @Override
+                    public WordCount count(WordCounter counter, String text) {
+                        if ("boom".equals(text)) {
+                            throw error;
+                        }
+                        return counter.count(text);
+                    }
+                })) {
+
+            CompletableFuture<WordCount> failed = service.submit("boom");
+            CompletableFuture<WordCount> next = service.submit("next");
+
+            try {
+                failed.join();
+                fail();
+
+            } catch (CompletionException e) {
+                assertThat(e.getCause(), is(sameInstance((Throwable) error)));
+            }
+            assertThat(next.join().wordCounts, hasEntry("next", 1));
+        }
+    }
+
+    @Test
+    public void 空きを待っている要求も停止後に完了すること() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final WordCountService service = blockingService(1, WordCountService.OverflowPolicy.BLOCK, latch);
+        blockWorker(service);
+        service.submit("first");
+
+        final List<CompletableFuture<WordCount>> submitted = new ArrayList<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    submitted.add(service.submit("second"));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertThat(producer.isAlive(), is(true));
+
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                service.close();
+            }
+        });
+        closer.start();
+        latch.countDown();
+
+        closer.join(TimeUnit.SECONDS.toMillis(10));
+        assertThat(closer.isAlive(), is(false));
+        producer.join(TimeUnit.SECONDS.toMillis(10));
+        assertThat(submitted.get(0).isDone(), is(true));
+    }
+
+    @Test
+    public void 停止を待っている間に割り込まれると残りの要求を拒否して割り込み状態を戻すこと() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        WordCountService service = blockingService(2, WordCountService.OverflowPolicy.BLOCK, latch);
+        blockWorker(service);
+        CompletableFuture<WordCount> first = service.submit("first");
+
+        Thread.currentThread().interrupt();
+        service.close();
+
+        assertThat(Thread.interrupted(), is(true));
+        assertRejected(first);
+    }
+
+    private static void assertRejected(CompletableFuture<WordCount> future) {
+        try {
+            future.join();
+            fail();
+
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+        }
+    }
+}
@@ -2,19 +2,38 @@ package biz.k11i.shibuyajava;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.yaml.snakeyaml.Yaml;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import static biz.k11i.matcher.IsEquivalentTo.isEquivalentTo;
 import static biz.k11i.matcher.IsEquivalentTo.pathPattern;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
 
 /**
  * WordCount クラスに対するテストケースです。
@@ -246,4 +265,484 @@ public class WordCountTest {
         }
     }
 
+    // -----
+
+    public static class 正規表現で分割した場合と同じ結果になること {
+        private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+        /**
+         * 正規表現による分割と {@link String#toLowerCase()} で単語を数えます。
+         *
+         * @param text ワードカウント対象の文章
+         * @return 各単語の出現頻度
+         */
+        static Map<String, Integer> countWordsWithRegex(String text) {
+            Map<String, Integer> wordCounts = new HashMap<>();
+            for (String word : WHITESPACES.split(text)) {
+                word = word.toLowerCase();
+
+                Integer count = wordCounts.get(word);
+                wordCounts.put(word, count == null ? 1 : count + 1);
+            }
+            return wordCounts;
+        }
+
+        static void verify(String text) {
+            assertThat(WordCount.countWords(text).wordCounts, is(countWordsWithRegex(text)));
+        }
+
+        @Test
+        public void 空文字列() {
+            verify("");
+        }
+
+        @Test
+        public void ホワイトスペースのみ() {
+            verify(" \t\r\n");
+        }
+
+        @Test
+        public void ホワイトスペースで始まる文章() {
+            verify("  Hello world");
+            verify("\nHello\n\nworld\n");
+        }
+
+        @Test
+        public void 大文字小文字が混在する文章() {
+            verify("Hello HELLO hello hElLo world World");
+        }
+
+        @Test
+        public void 正規表現のホワイトスペースに含まれない空白文字() {
+            verify("a\u000Bb\fc\u001Cd\u00A0e\u3000f");
+        }
+
+        @Test
+        public void ASCII以外の文字を含む文章() {
+            verify("ΟΔΟΣ οδος Straße STRASSE İstanbul ｈｅｌｌｏ ＨＥＬＬＯ");
+        }
+
+        @Test
+        public void トルコ語ロケール() {
+            Locale defaultLocale = Locale.getDefault();
+            try {
+                Locale.setDefault(new Locale("tr", "TR"));
+                verify("TITLE title Istanbul ISTANBUL");
+
+            } finally {
+                Locale.setDefault(defaultLocale);
+            }
+        }
+
+        @Test
+        public void 長い単語() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                sb.append((char) ('A' + i % 26));
+            }
+            verify(sb + " " + sb.toString().toLowerCase() + " x");
+        }
+    }
+
+
+    // -----
+
+    public static class 並列処理でも逐次処理と同じ結果になること {
+        static String randomText(long seed, int words, boolean leadingWhitespace) {
+            Random random = new Random(seed);
+            String[] separators = {" ", "  ", "\t", "\n", "\r\n"};
+
+            StringBuilder sb = new StringBuilder();
+            if (leadingWhitespace) {
+                sb.append("   ");
+            }
+            for (int i = 0; i < words; i++) {
+                int length = 1 + random.nextInt(8);
+                for (int j = 0; j < length; j++) {
+                    char ch = (char) ('a' + random.nextInt(4));
+                    sb.append(random.nextInt(5) == 0 ? Character.toUpperCase(ch) : ch);
+                }
+                sb.append(separators[random.nextInt(separators.length)]);
+            }
+            return sb.toString();
+        }
+
+        static void verify(String text, int parallelism) {
+            WordCount expected = WordCount.countWords(text);
+            WordCount actual = WordCount.countWordsParallel(text, parallelism);
+
+            assertThat(actual.wordCounts, is(expected.wordCounts));
+            assertThat(actual.top3Words, is(expected.top3Words));
+        }
+
+        @Test
+        public void 大きな文章() {
+            verify(randomText(1, 200000, false), 4);
+        }
+
+        @Test
+        public void ホワイトスペースで始まる大きな文章() {
+            verify(randomText(2, 200000, true), 3);
+        }
+
+        @Test
+        public void 先頭の区間がホワイトスペースのみの文章() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 500000; i++) {
+                sb.append(' ');
+            }
+            verify(sb + randomText(3, 1000, false), 8);
+        }
+
+        @Test
+        public void ホワイトスペースを含まない大きな文章() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 300000; i++) {
+                sb.append('x');
+            }
+            verify(sb.toString(), 4);
+        }
+
+        @Test
+        public void 小さな文章() {
+            verify("Hello world WORLD", 4);
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void 並列度が0() {
+            WordCount.countWordsParallel("Hello world", 0);
+        }
+    }
+
+
+    // -----
+
+    public static class テキストファイルのワードカウント {
+        private static final String TEXT = "  Hello wORLD\tworld\nΟΔΟΣ  οδος Straße hello \u3000 ｈｅｌｌｏ ";
+
+        @Rule
+        public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+        Path write(String text, Charset charset) throws IOException {
+            File file = temporaryFolder.newFile();
+            Files.write(file.toPath(), text.getBytes(charset));
+            return file.toPath();
+        }
+
+        @Test
+        public void UTF8のファイルを領域に分けてメモリマップしても結果が同じであること() throws IOException {
+            Path path = write(TEXT, StandardCharsets.UTF_8);
+            Map<String, Integer> expected = WordCount.countWords(TEXT).wordCounts;
+
+            for (int regionSize = 1; regionSize <= 16; regionSize++) {
+                WordCount wordCount = WordCount.countWordsInMappedFile(path, StandardCharsets.UTF_8, regionSize);
+                assertThat(wordCount.wordCounts, is(expected));
+            }
+
+            assertThat(WordCount.countWords(path).wordCounts, is(expected));
+        }
+
+        @Test
+        public void ISO_8859_1のファイル() throws IOException {
+            String text = "Ærø ÆRØ ærø Über über";
+            Path path = write(text, StandardCharsets.ISO_8859_1);
+
+            WordCount wordCount = WordCount.countWords(path, StandardCharsets.ISO_8859_1);
+            assertThat(wordCount.wordCounts, is(WordCount.countWords(text).wordCounts));
+            assertThat(wordCount.text, is(nullValue()));
+        }
+
+        @Test
+        public void バイト列を直接走査できない文字コードのファイル() throws IOException {
+            String text = "ＡＢＣ ａｂｃ 表示 ソ Hello HELLO";
+            Charset charset = Charset.forName("Shift_JIS");
+            Path path = write(text, charset);
+
+            assertThat(WordCount.countWords(path, charset).wordCounts, is(WordCount.countWords(text).wordCounts));
+        }
+
+        @Test
+        public void 空のファイル() throws IOException {
+            Path path = write("", StandardCharsets.UTF_8);
+            assertThat(WordCount.countWords(path).wordCounts, is(WordCount.countWords("").wordCounts));
+        }
+
+        @Test
+        public void トルコ語ロケール() throws IOException {
+            Path path = write(TEXT, StandardCharsets.UTF_8);
+
+            Locale defaultLocale = Locale.getDefault();
+            try {
+                Locale.setDefault(new Locale("tr", "TR"));
+                assertThat(WordCount.countWords(path).wordCounts, is(WordCount.countWords(TEXT).wordCounts));
+
+            } finally {
+                Locale.setDefault(defaultLocale);
+            }
+        }
+    }
+
+
+    // -----
+
+    public static class 上位k個の単語 {
+        /**
+         * 全ての単語を整列して上位 k 個の単語を求めます。
+         */
+        static List<String> sortAndTake(Map<String, Integer> wordCounts, int k) {
+            List<Map.Entry<String, Integer>> entries = new ArrayList<>(wordCounts.entrySet());
+            Collections.sort(entries, WordCount.RANKING);
+
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < k && i < entries.size(); i++) {
+                result.add(entries.get(i).getKey());
+            }
+            return result;
+        }
+
+        @Test
+        public void 全体を整列した場合と同じ順序になること() {
+            String text = 並列処理でも逐次処理と同じ結果になること.randomText(4, 20000, false);
+
+            for (int k : new int[]{0, 1, 2, 3, 10, 100, 1000, 100000}) {
+                WordCount wordCount = WordCount.countWords(text, k);
+                List<String> expected = sortAndTake(wordCount.wordCounts, k);
+
+                assertThat(wordCount.topWords, is(expected));
+                assertThat(wordCount.top3Words, is(sortAndTake(wordCount.wordCounts, 3)));
+                assertThat(WordCount.selectTopWords(new HashMap<>(wordCount.wordCounts), k), is(expected));
+            }
+        }
+
+        @Test
+        public void 出現頻度が同じ場合は単語の昇順になること() {
+            WordCount wordCount = WordCount.countWords("d c b a c d b a e", 4);
+            assertThat(wordCount.topWords, contains("a", "b", "c", "d"));
+            assertThat(wordCount.top3Words, contains("a", "b", "c"));
+        }
+
+        @Test
+        public void kを指定しなければtopWordsは設定されないこと() {
+            assertThat(WordCount.countWords("Hello world WORLD").topWords, is(nullValue()));
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void kが負の値() {
+            WordCount.countWords("Hello world", -1);
+        }
+    }
+
+
+    // -----
+
+    public static class ワードカウント結果の合算と減算 {
+        static String batch(int i) {
+            return 並列処理でも逐次処理と同じ結果になること.randomText(100 + i, 500, false);
+        }
+
+        static void verify(WordCount actual, WordCount expected) {
+            assertThat(actual.wordCounts, is(expected.wordCounts));
+            assertThat(actual.top3Words, is(expected.top3Words));
+        }
+
+        @Test
+        public void 合算すると連結した文章のワードカウントと同じになること() {
+            WordCount wordCount = WordCount.countWords(batch(0))
+                    .merge(WordCount.countWords(batch(1)));
+
+            verify(wordCount, WordCount.countWords(batch(0) + " " + batch(1)));
+            assertThat(wordCount.text, is(nullValue()));
+        }
+
+        @Test
+        public void スライディングウィンドウで再計算した結果と同じになること() {
+            int windowSize = 5;
+            WordCount window = new WordCount();
+
+            for (int i = 0; i < 20; i++) {
+                window.merge(WordCount.countWords(batch(i)));
+                if (i >= windowSize) {
+                    window.subtract(WordCount.countWords(batch(i - windowSize)));
+                }
+
+                StringBuilder sb = new StringBuilder();
+                for (int j = Math.max(0, i - windowSize + 1); j <= i; j++) {
+                    sb.append(batch(j)).append(' ');
+                }
+                verify(window, WordCount.countWords(sb.toString()));
+            }
+        }
+
+        @Test
+        public void topWordsも更新されること() {
+            WordCount wordCount = WordCount.countWords("a b c d e", 5)
+                    .merge(WordCount.countWords("e e d"))
+                    .subtract(WordCount.countWords("a"));
+
+            assertThat(wordCount.topWords, contains("e", "d", "b", "c"));
+            assertThat(wordCount.top3Words, contains("e", "d", "b"));
+            assertThat(wordCount.wordCounts.containsKey("a"), is(false));
+        }
+
+        @Test
+        public void YAMLから読み込んだ結果にも合算できること() {
+            WordCount wordCount = loadFromYaml(WordCount.class, "WordCount_HelloWorld.yml")
+                    .merge(WordCount.countWords("hello hello foo"));
+
+            assertThat(wordCount.wordCounts, hasEntry("hello", 3));
+            assertThat(wordCount.wordCounts, hasEntry("world", 2));
+            assertThat(wordCount.top3Words, contains("hello", "world", "foo"));
+        }
+
+        @Test
+        public void 出現頻度が負になる減算はできないこと() {
+            WordCount wordCount = WordCount.countWords("hello world");
+
+            try {
+                wordCount.subtract(WordCount.countWords("hello hello"));
+                fail();
+
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            verify(wordCount, WordCount.countWords("hello world"));
+        }
+
+        @Test
+        public void 複数のスレッドから同時に合算できること() throws InterruptedException {
+            final WordCount total = new WordCount();
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 64; i++) {
+                final String text = batch(i);
+                sb.append(text).append(' ');
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        total.merge(WordCount.countWords(text));
+                    }
+                });
+            }
+
+            executor.shutdown();
+            assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), is(true));
+
+            verify(total, WordCount.countWords(sb.toString()));
+        }
+    }
+
+    public static class 処理時間と処理量の計測 {
+        private final List<WordCountMetrics> notified = new ArrayList<>();
+
+        private final WordCountMetrics.Listener listener = new WordCountMetrics.Listener() {
+            @Override
+            public void onCompleted(WordCountMetrics metrics) {
+                notified.add(metrics);
+            }
+        };
+
+        @Test
+        public void ワードカウントが完了するたびにリスナに通知されること() {
+            WordCount.countWords("hello world hello", listener);
+            new WordCounter().metricsListener(listener).count("a b c");
+
+            assertThat(notified, hasSize(2));
+
+            WordCountMetrics metrics = notified.get(0);
+            assertThat(metrics.tokens, is(3L));
+            assertThat(metrics.distinctWords, is(2));
+            assertThat(metrics.charsProcessed, is(17L));
+            assertThat(metrics.bytesProcessed, is(0L));
+            assertThat(metrics.scanNanos, is(greaterThanOrEqualTo(0L)));
+            assertThat(metrics.internNanos, is(greaterThanOrEqualTo(0L)));
+            assertThat(metrics.topKNanos, is(greaterThanOrEqualTo(0L)));
+            assertThat(metrics.totalNanos, is(metrics.scanNanos + metrics.internNanos + metrics.topKNanos));
+
+            assertThat(notified.get(1).tokens, is(3L));
+        }
+
+        @Test
+        public void 逐次的に与えた文字数が合計されること() {
+            new WordCounter()
+                    .metricsListener(listener)
+                    .feed("hello ")
+                    .feed("world".toCharArray(), 0, 5)
+                    .finish();
+
+            assertThat(notified, hasSize(1));
+            assertThat(notified.get(0).charsProcessed, is(11L));
+            assertThat(notified.get(0).tokens, is(2L));
+        }
+
+        @Test
+        public void リスナを指定しなければ通知されないこと() {
+            WordCount.countWords("hello world");
+            new WordCounter().feed("hello world").finish();
+            new WordCounter().metricsListener(listener).metricsListener(null).count("hello world");
+
+            assertThat(notified, is(empty()));
+        }
+
+        @Test
+        public void 他のワードカウントのリスナには通知されないこと() {
+            final List<WordCountMetrics> others = new ArrayList<>();
+            WordCounter other = new WordCounter().metricsListener(new WordCountMetrics.Listener() {
+                @Override
+                public void onCompleted(WordCountMetrics metrics) {
+                    others.add(metrics);
+                }
+            });
+
+            WordCount.countWords("hello world", listener);
+            other.count("a b c d");
+
+            assertThat(notified, hasSize(1));
+            assertThat(notified.get(0).tokens, is(2L));
+            assertThat(others, hasSize(1));
+            assertThat(others.get(0).tokens, is(4L));
+        }
+    }
+
+    public static class 複数の文書のワードカウント {
+        private static List<String> documents() {
+            List<String> documents = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                documents.add(並列処理でも逐次処理と同じ結果になること.randomText(i, i % 20, i % 3 == 0));
+            }
+            return documents;
+        }
+
+        @Test
+        public void 各文書のワードカウント結果が個別に数えた場合と同じになること() {
+            List<String> documents = documents();
+            List<WordCount> results = WordCount.countAll(documents);
+
+            assertThat(results, hasSize(documents.size()));
+            for (int i = 0; i < documents.size(); i++) {
+                WordCount expected = WordCount.countWords(documents.get(i));
+                assertThat(results.get(i).wordCounts, is(expected.wordCounts));
+                assertThat(results.get(i).top3Words, is(expected.top3Words));
+                assertThat(results.get(i).text, is(expected.text));
+            }
+        }
+
+        @Test
+        public void 全ての文書の出現頻度を合算できること() {
+            List<String> documents = documents();
+
+            WordCount expected = new WordCount();
+            for (String document : documents) {
+                expected.merge(WordCount.countWords(document));
+            }
+
+            WordCount aggregate = new WordCount();
+            WordCount.countAll(documents, aggregate);
+
+            assertThat(aggregate.wordCounts, is(expected.wordCounts));
+            assertThat(aggregate.top3Words, is(expected.top3Words));
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * WordCounter クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordCounterTest {
+    private static final String TEXT = "  Hello wORLD\tworld\nΟΔΟΣ  οδος hello ";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void どの位置で分割して渡しても結果が同じであること() {
+        WordCount expected = WordCount.countWords(TEXT);
+
+        for (int i = 0; i <= TEXT.length(); i++) {
+            for (int j = i; j <= TEXT.length(); j++) {
+                WordCount actual = new WordCounter()
+                        .feed(TEXT.substring(0, i))
+                        .feed(TEXT.substring(i, j))
+                        .feed(TEXT.substring(j))
+                        .finish();
+
+                assertThat(actual.wordCounts, is(expected.wordCounts));
+                assertThat(actual.top3Words, is(expected.top3Words));
+            }
+        }
+    }
+
+    @Test
+    public void 何も渡さなければ空文字列を一つ数えること() {
+        assertThat(new WordCounter().finish().wordCounts, is(WordCount.countWords("").wordCounts));
+    }
+
+    @Test
+    public void 文章はデフォルトでは保持しないこと() {
+        WordCount wordCount = new WordCounter().feed(TEXT).finish();
+        assertThat(wordCount.text, is(nullValue()));
+    }
+
+    @Test
+    public void 指定すれば文章を保持すること() {
+        WordCount wordCount = new WordCounter()
+                .retainText(true)
+                .feed(TEXT.substring(0, 10))
+                .feed(TEXT.toCharArray(), 10, TEXT.length())
+                .finish();
+
+        assertThat(wordCount.text, is(TEXT));
+    }
+
+    @Test
+    public void finishの後は新たな文章を数えられること() {
+        WordCounter counter = new WordCounter();
+        counter.feed("Hello world WORLD").finish();
+
+        WordCount wordCount = counter.feed("foo").finish();
+        assertThat(wordCount.wordCounts, is(WordCount.countWords("foo").wordCounts));
+    }
+
+    @Test
+    public void Readerから読み込んでワードカウントできること() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append(TEXT);
+        }
+        String text = sb.toString();
+
+        WordCount wordCount = WordCount.countWords(new StringReader(text));
+        assertThat(wordCount.wordCounts, is(WordCount.countWords(text).wordCounts));
+        assertThat(wordCount.text, is(nullValue()));
+    }
+
+    @Test
+    public void ファイルから読み込んでワードカウントできること() throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), TEXT.getBytes(StandardCharsets.UTF_8));
+
+        WordCount wordCount = WordCount.countWords(file.toPath());
+        assertThat(wordCount.wordCounts, is(WordCount.countWords(TEXT).wordCounts));
+    }
+
+    @Test
+    public void 文書ごとにテーブルを再利用してワードカウントできること() {
+        WordCounter counter = new WordCounter().retainText(true);
+        counter.feed("unfinished ");
+
+        String[] documents = {TEXT, "", "  ", "Hello HELLO", " leading", TEXT.toUpperCase(), "a b c d e f g h"};
+        for (String document : documents) {
+            WordCount expected = WordCount.countWords(document);
+            WordCount actual = counter.count(document);
+
+            assertThat(document, actual.wordCounts, is(expected.wordCounts));
+            assertThat(document, actual.top3Words, is(expected.top3Words));
+            assertThat(actual.text, is(sameInstance(document)));
+        }
+
+        // feed で受け取り途中の文章には影響しない
+        assertThat(counter.finish().wordCounts, is(WordCount.countWords("unfinished ").wordCounts));
+    }
+
+    @Test
+    public void 大きな文書の後でも正しくワードカウントできること() {
+        WordCounter counter = new WordCounter();
+
+        String large = WordCountTest.並列処理でも逐次処理と同じ結果になること.randomText(1, 20000, false);
+        assertThat(counter.count(large).wordCounts, is(WordCount.countWords(large).wordCounts));
+        assertThat(counter.count("hello world").wordCounts, is(WordCount.countWords("hello world").wordCounts));
+    }
+
+    @Test
+    public void 文書ごとにデフォルトロケールを参照すること() {
+        WordCounter counter = new WordCounter();
+        assertThat(counter.count("TITLE").wordCounts.keySet(), contains("title"));
+
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertThat(counter.count("TITLE").wordCounts.keySet(), contains("TITLE".toLowerCase()));
+
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * WordFrequencies クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordFrequenciesTest {
+    private static final String TEXT = "  Hello wORLD\tworld\nΟΔΟΣ  οδος hello a b c c c ";
+
+    @Test
+    public void WordCountと同じ出現頻度になること() throws IOException {
+        WordCount expected = WordCount.countWords(TEXT);
+        WordFrequencies actual = WordFrequencies.countWords(TEXT);
+
+        assertThat(actual.wordCounts(), is(expected.wordCounts));
+        assertThat(actual.size(), is(expected.wordCounts.size()));
+        assertThat(WordFrequencies.countWords(new StringReader(TEXT)).wordCounts(), is(expected.wordCounts));
+
+        for (Map.Entry<String, Integer> entry : expected.wordCounts.entrySet()) {
+            assertThat(actual.countOf(entry.getKey()), is(entry.getValue()));
+            assertThat(actual.contains(entry.getKey()), is(true));
+        }
+        assertThat(actual.countOf("nothing"), is(0));
+        assertThat(actual.contains("nothing"), is(false));
+    }
+
+    @Test
+    public void 上位の単語を必要になったときに選ぶこと() {
+        WordFrequencies wordFrequencies = WordFrequencies.countWords(TEXT);
+
+        assertThat(wordFrequencies.top3Words(), is(WordCount.countWords(TEXT).top3Words));
+        assertThat(wordFrequencies.topWords(1), contains("c"));
+        assertThat(wordFrequencies.topWords(5), is(WordCount.countWords(TEXT, 5).topWords));
+        assertThat(wordFrequencies.topWords(100), hasSize(wordFrequencies.size()));
+        assertThat(wordFrequencies.topWords(0), is(empty()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void 出現頻度は変更できないこと() {
+        WordFrequencies.countWords(TEXT).wordCounts().put("hello", 100);
+    }
+
+    @Test
+    public void WordCountに変換できること() {
+        WordFrequencies wordFrequencies = WordFrequencies.countWords(TEXT);
+        WordCount wordCount = wordFrequencies.toWordCount();
+
+        assertThat(wordCount.wordCounts, is(WordCount.countWords(TEXT).wordCounts));
+        assertThat(wordCount.top3Words, is(WordCount.countWords(TEXT).top3Words));
+        assertThat(wordCount.text, is(nullValue()));
+
+        // 変換後の結果を更新しても元の結果には影響しない
+        wordCount.merge(WordCount.countWords("hello"));
+        assertThat(wordFrequencies.countOf("hello"), is(2));
+    }
+}
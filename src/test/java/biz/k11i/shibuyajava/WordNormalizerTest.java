@@ -0,0 +1,147 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * WordNormalizer クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordNormalizerTest {
+    private static final String TEXT = "  The API, the api! \"Hello\" -- WORLD's ＡＰＩ Ｈｅｌｌｏ。 İstanbul ISTANBUL ";
+
+    private static Map<String, Integer> countWordsByRegex(String text, WordNormalizer normalizer) {
+        Map<String, Integer> wordCounts = new HashMap<>();
+        String[] words = Pattern.compile("\\s+").split(text);
+        for (int i = 0; i < words.length; i++) {
+            // 先頭の空文字列は分割によって生じたものなので数え、正規化によって空になった単語は数えない
+            String word = normalizer.normalize(words[i]);
+            if ((word.isEmpty() && !words[i].isEmpty()) || normalizer.isStopWord(word)) {
+                continue;
+            }
+
+            Integer count = wordCounts.get(word);
+            wordCounts.put(word, count == null ? 1 : count + 1);
+        }
+        return wordCounts;
+    }
+
+    @Test
+    public void デフォルトの正規化は従来のワードカウントと同じ結果になること() {
+        assertThat(WordCount.countWords(TEXT, WordNormalizer.DEFAULT).wordCounts,
+                is(WordCount.countWords(TEXT).wordCounts));
+    }
+
+    @Test
+    public void 各単語に正規化を適用した結果と同じになること() {
+        WordNormalizer base = WordNormalizer.DEFAULT;
+        WordNormalizer[] normalizers = {
+                base.caseFolding(WordNormalizer.CaseFolding.LOCALE_INDEPENDENT),
+                base.caseFolding(WordNormalizer.CaseFolding.NONE),
+                base.nfkc(true),
+                base.stripPunctuation(true),
+                base.stopWords(Arrays.asList("the", "API")),
+                base.caseFolding(WordNormalizer.CaseFolding.LOCALE_INDEPENDENT)
+                        .nfkc(true)
+                        .stripPunctuation(true)
+                        .stopWords(Arrays.asList("the", "a")),
+        };
+
+        for (WordNormalizer normalizer : normalizers) {
+            assertThat(normalizer.toString(), WordCount.countWords(TEXT, normalizer).wordCounts,
+                    is(countWordsByRegex(TEXT, normalizer)));
+        }
+    }
+
+    @Test
+    public void 約物の後に結合文字が続いてもNFKC正規化の後で約物を取り除くこと() {
+        String text = "A_\u0301 x-\u0301y e.\u0308 ,\u0301 \u0301";
+        WordNormalizer normalizer = WordNormalizer.DEFAULT
+                .caseFolding(WordNormalizer.CaseFolding.NONE)
+                .nfkc(true)
+                .stripPunctuation(true);
+
+        assertThat(normalizer.normalize("A_\u0301"), is("A\u0301"));
+        assertThat(WordCount.countWords(text, normalizer).wordCounts, is(countWordsByRegex(text, normalizer)));
+        assertThat(WordCount.countWords(text, normalizer).wordCounts, hasKey("A\u0301"));
+        assertThat(WordCount.countWords(text, normalizer).wordCounts, not(hasKey("\u00c1")));
+
+        WordNormalizer folding = normalizer.caseFolding(WordNormalizer.CaseFolding.LOCALE_INDEPENDENT);
+        assertThat(WordCount.countWords(text, folding).wordCounts, is(countWordsByRegex(text, folding)));
+    }
+
+    @Test
+    public void 後続の単語が約物だけでも先頭の空文字列を数えること() {
+        WordNormalizer normalizer = WordNormalizer.DEFAULT.stripPunctuation(true);
+
+        String[] texts = {" a", " ,", " , ", "\t!? a", "  ", ",", ", a"};
+        for (String text : texts) {
+            assertThat(text, WordCount.countWords(text, normalizer).wordCounts, is(countWordsByRegex(text, normalizer)));
+        }
+        assertThat(WordCount.countWords(" ,", normalizer).wordCounts.get(""), is(1));
+
+        // 文章を分割して渡しても同じ結果になる
+        assertThat(new WordCounter().normalizer(normalizer).feed(" ").feed(",").finish().wordCounts.get(""), is(1));
+    }
+
+    @Test
+    public void 全ての正規化を組み合わせた場合() {
+        WordNormalizer normalizer = WordNormalizer.DEFAULT
+                .caseFolding(WordNormalizer.CaseFolding.LOCALE_INDEPENDENT)
+                .nfkc(true)
+                .stripPunctuation(true)
+                .stopWords(Arrays.asList("a", "The"));
+
+        WordCount wordCount = WordCount.countWords("The ＡＰＩ, the api! a -- (Ｈｅｌｌｏ)", normalizer);
+
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("api", 2);
+        expected.put("hello", 1);
+        assertThat(wordCount.wordCounts, is(expected));
+    }
+
+    @Test
+    public void ロケールに依存しない小文字化() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+
+            WordCount byDefaultLocale = WordCount.countWords("TITLE title");
+            assertThat(byDefaultLocale.wordCounts.keySet(), containsInAnyOrder("tıtle", "title"));
+
+            WordCount localeIndependent = WordCount.countWords("TITLE title",
+                    WordNormalizer.DEFAULT.caseFolding(WordNormalizer.CaseFolding.LOCALE_INDEPENDENT));
+            assertThat(localeIndependent.wordCounts, hasEntry("title", 2));
+
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void 逐次的に渡しても同じ正規化が適用されること() {
+        WordNormalizer normalizer = WordNormalizer.DEFAULT
+                .stripPunctuation(true)
+                .stopWords(Arrays.asList("the"));
+
+        WordCount expected = WordCount.countWords(TEXT, normalizer);
+        for (int i = 0; i <= TEXT.length(); i++) {
+            WordCount actual = new WordCounter()
+                    .normalizer(normalizer)
+                    .feed(TEXT.substring(0, i))
+                    .feed(TEXT.substring(i))
+                    .finish();
+
+            assertThat(actual.wordCounts, is(expected.wordCounts));
+        }
+    }
+}
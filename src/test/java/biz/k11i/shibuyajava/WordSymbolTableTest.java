@@ -0,0 +1,84 @@
+package biz.k11i.shibuyajava;
+
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * WordSymbolTable クラスに対するテストケースです。
+ *
+ * @author KOMIYA Atsushi
+ */
+public class WordSymbolTableTest {
+    @Test
+    public void 同じ内容の単語には同じオブジェクトを返すこと() {
+        WordSymbolTable symbolTable = new WordSymbolTable(16);
+
+        String hello = symbolTable.intern(new String("hello"));
+        assertThat(symbolTable.intern(new String("hello")), is(sameInstance(hello)));
+        assertThat(symbolTable.intern(new String("world")), is(not(sameInstance(hello))));
+    }
+
+    @Test
+    public void 容量を超える単語は追い出されること() {
+        WordSymbolTable symbolTable = new WordSymbolTable(4);
+        assertThat(symbolTable.capacity(), is(4));
+
+        String first = symbolTable.intern(new String("word0"));
+        for (int i = 1; i < 100; i++) {
+            symbolTable.intern("word" + i);
+        }
+
+        String interned = symbolTable.intern(new String("word0"));
+        assertThat(interned, is(first));
+        assertThat(interned, is(not(sameInstance(first))));
+    }
+
+    @Test
+    public void 同じWordCounterのワードカウント結果の間で単語を共有すること() {
+        WordCounter counter = new WordCounter().symbolTable(new WordSymbolTable(1024));
+
+        WordCount wordCount1 = counter.feed("Hello world hello").finish();
+        WordCount wordCount2 = counter.feed("WORLD hello").finish();
+        WordCount wordCount3 = counter.count("hello hello again");
+
+        assertThat(distinctKeys(wordCount1, wordCount2, wordCount3), is(3));
+        assertThat(wordCount1.wordCounts, is(WordCount.countWords("hello world hello").wordCounts));
+        assertThat(wordCount3.top3Words.get(0), is(sameInstance(wordCount1.top3Words.get(0))));
+    }
+
+    @Test
+    public void 記号表を指定しなければ異なるWordCounterの間で単語を共有しないこと() {
+        WordCounter counter1 = new WordCounter();
+        WordCounter counter2 = new WordCounter();
+
+        // 記号表を指定しなくても、count は WordCounter ごとの記号表で文書をまたいで単語を共有する
+        WordCount wordCount1 = counter1.count("hello world");
+        WordCount wordCount2 = counter1.count("world hello");
+        assertThat(distinctKeys(wordCount1, wordCount2), is(2));
+
+        WordCount wordCount3 = counter2.count("hello world");
+        assertThat(distinctKeys(wordCount1, wordCount3), is(4));
+
+        assertThat(distinctKeys(new WordCounter().feed("hello").finish(), WordCount.countWords("hello")), is(2));
+    }
+
+    private static int distinctKeys(WordCount... wordCounts) {
+        Map<String, Boolean> keys = new IdentityHashMap<>();
+        for (WordCount wordCount : wordCounts) {
+            for (String word : wordCount.wordCounts.keySet()) {
+                keys.put(word, true);
+            }
+        }
+        return keys.size();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 容量が小さすぎる場合は例外() {
+        new WordSymbolTable(1);
+    }
+}